@@ -0,0 +1,49 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.models.IModel;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Model used by the benchmarks. It carries a single string payload of a configurable size.
+ */
+public class BenchmarkModel implements IModel {
+
+    private String payload;
+
+    /**
+     * Empty constructor used by the {@link com.google.gson.Gson} framework.
+     */
+    public BenchmarkModel() {}
+
+    /**
+     * Constructs a BenchmarkModel with a payload.
+     * @param payload the payload to carry.
+     */
+    public BenchmarkModel(String payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * @return the payload of this model.
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Creates a model with a random alphanumeric payload of the given size, so the serialized JSON is roughly
+     * {@code size} bytes long.
+     * @param size the payload size in characters.
+     * @return the new model.
+     */
+    public static BenchmarkModel ofSize(int size){
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[size];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+
+        return new BenchmarkModel(new String(chars));
+    }
+}
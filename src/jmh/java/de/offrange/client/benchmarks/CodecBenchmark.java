@@ -0,0 +1,113 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.BufferPool;
+import de.offrange.client.codec.CborCodec;
+import de.offrange.client.codec.Codec;
+import de.offrange.client.codec.JsonCodec;
+import de.offrange.client.gson.ByteArrayTypeAdapter;
+import de.offrange.client.models.HandshakeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding with every {@link Codec}, for a text payload and for a {@code byte[]} payload,
+ * which JSON has to write as Base64.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"64", "1024", "16384", "262144"})
+    private int payloadSize;
+
+    @Param({JsonCodec.NAME, CborCodec.NAME})
+    private String codecName;
+
+    private Codec codec;
+    private BufferPool bufferPool;
+
+    private BenchmarkModel textModel;
+    private HandshakeModel binaryModel;
+    private byte[] encodedText;
+    private byte[] encodedBinary;
+
+    @Setup
+    public void setup() throws IOException {
+        Gson gson = new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+        codec = CborCodec.NAME.equals(codecName) ? new CborCodec(gson) : new JsonCodec(gson);
+        bufferPool = new BufferPool(false);
+
+        textModel = BenchmarkModel.ofSize(payloadSize);
+        byte[] key = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(key);
+        binaryModel = new HandshakeModel();
+        binaryModel.setAesKey(key);
+
+        encodedText = encode(textModel);
+        encodedBinary = encode(binaryModel);
+    }
+
+    private byte[] encode(Object model) throws IOException {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        codec.encode(model, out);
+        ByteBuffer buffer = out.getBuffer().flip();
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        bufferPool.release(buffer);
+        return encoded;
+    }
+
+    @Benchmark
+    public int encodeText() throws IOException {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        codec.encode(textModel, out);
+        int size = out.size();
+        out.release();
+        return size;
+    }
+
+    @Benchmark
+    public BenchmarkModel decodeText() throws IOException {
+        return codec.decode(ByteBuffer.wrap(encodedText), BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public int encodeBinary() throws IOException {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        codec.encode(binaryModel, out);
+        int size = out.size();
+        out.release();
+        return size;
+    }
+
+    @Benchmark
+    public HandshakeModel decodeBinary() throws IOException {
+        return codec.decode(ByteBuffer.wrap(encodedBinary), HandshakeModel.class);
+    }
+}
@@ -0,0 +1,96 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.BufferPool;
+import de.offrange.client.compression.Compressor;
+import de.offrange.client.compression.DeflateCompression;
+import de.offrange.client.gson.ByteArrayTypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-frame compression of {@code TcpClient} with a reused {@link Compressor} at different
+ * {@link DeflateCompression} levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"1024", "16384", "262144"})
+    private int payloadSize;
+
+    @Param({"1", "6"})
+    private int level;
+
+    private BufferPool bufferPool;
+    private Compressor compressor;
+
+    private byte[] plain;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        Gson gson = new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+
+        bufferPool = new BufferPool(false);
+        compressor = new DeflateCompression(level).newCompressor();
+
+        plain = gson.toJson(BenchmarkModel.ofSize(payloadSize)).getBytes(StandardCharsets.UTF_8);
+
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        compressor.compress(ByteBuffer.wrap(plain), out);
+        ByteBuffer buffer = out.getBuffer().flip();
+        compressed = new byte[buffer.remaining()];
+        buffer.get(compressed);
+        bufferPool.release(buffer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        compressor.close();
+    }
+
+    @Benchmark
+    public int compress() {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        compressor.compress(ByteBuffer.wrap(plain), out);
+        int size = out.size();
+        out.release();
+        return size;
+    }
+
+    @Benchmark
+    public int decompress() throws IOException {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, 0);
+        compressor.decompress(ByteBuffer.wrap(compressed), out, Integer.MAX_VALUE);
+        int size = out.size();
+        out.release();
+        return size;
+    }
+}
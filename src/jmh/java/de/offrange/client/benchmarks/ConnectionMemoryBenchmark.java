@@ -0,0 +1,154 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.ThreadFactories;
+import de.offrange.client.tcp.TcpClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the memory per connection of {@link TcpClient}s in blocking mode whose reading and writing threads
+ * are platform threads or virtual threads. Every client connects to a server that accepts the connection but never
+ * answers, so each reading thread stays blocked in its first read and each writing thread waits for frames.
+ * <br>
+ * The {@code heapBytesPerConnection} and {@code rssBytesPerConnection} counters report the growth of the used heap
+ * and of the resident set size (Linux only) divided by the number of connections. On runtimes without virtual
+ * threads, {@code VIRTUAL} falls back to platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ConnectionMemoryBenchmark {
+
+    @Param({"1000"})
+    private int connections;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ThreadMode threadMode;
+
+    private ServerSocketChannel server;
+    private final List<SocketChannel> accepted = new CopyOnWriteArrayList<>();
+    private final List<TcpClient<BenchmarkModel>> clients = new ArrayList<>();
+
+    private ThreadFactory threadFactory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), connections);
+
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (server.isOpen())
+                    accepted.add(server.accept());
+            } catch (IOException ignored) {}
+        }, "idle-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        threadFactory = threadMode == ThreadMode.VIRTUAL
+                ? ThreadFactories.virtual("benchmark-client")
+                : ThreadFactories.platform("benchmark-client", true);
+    }
+
+    @TearDown(Level.Invocation)
+    public void disconnect() throws IOException {
+        for (TcpClient<BenchmarkModel> client : clients)
+            client.disconnect();
+        clients.clear();
+
+        for (SocketChannel channel : accepted)
+            channel.close();
+        accepted.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public void connect(Memory memory) throws IOException, InterruptedException {
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+
+        InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        for (int i = 0; i < connections; i++){
+            TcpClient<BenchmarkModel> client = new TcpClient<>(address.getHostString(), address.getPort(), BenchmarkModel.class);
+            client.setThreadFactory(threadFactory);
+            client.startAndConnect();
+            clients.add(client);
+        }
+
+        memory.heapBytesPerConnection = (usedHeap() - heapBefore) / connections;
+        memory.rssBytesPerConnection = rssBefore < 0 ? -1 : (residentSetSize() - rssBefore) / connections;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long residentSetSize(){
+        Path status = Paths.get("/proc/self/status");
+        if(!Files.isReadable(status))
+            return -1;
+
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)){
+                if(line.startsWith("VmRSS:"))
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return -1;
+    }
+
+    /**
+     * The thread kind used for the reading and writing threads.
+     */
+    public enum ThreadMode{
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * Counters reporting the memory growth per connection of the last invocation.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory{
+        public long heapBytesPerConnection;
+        public long rssBytesPerConnection;
+    }
+}
@@ -0,0 +1,79 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.listeners.DiscoveryHandler;
+import de.offrange.client.udp.DiscoveredEndpoint;
+import de.offrange.client.udp.DiscoveryClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one discovery against several in-process responders that share a port, so every request and every
+ * retransmission is answered by all of them. Run with {@code -prof gc} to see the allocations per discovery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoveryBenchmark {
+
+    @Param({"1", "16", "64"})
+    private int responderCount;
+
+    private final List<DiscoveryResponder> responders = new ArrayList<>();
+    private final Semaphore finished = new Semaphore(0);
+    private DiscoveryClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        DiscoveryResponder first = new DiscoveryResponder("benchmark-0", 10_000);
+        responders.add(first);
+        for (int i = 1; i < responderCount; i++)
+            responders.add(new DiscoveryResponder("benchmark-" + i, 10_000 + i, first.getPort()));
+
+        for (DiscoveryResponder responder : responders)
+            responder.start();
+
+        client = new DiscoveryClient(first.getPort());
+        client.setDiscoveryTime(2000);
+        client.setDiscoveryHandler(new DiscoveryHandler() {
+            @Override
+            public void onDiscovered(DiscoveredEndpoint endpoint) {}
+
+            @Override
+            public void onFinish(List<DiscoveredEndpoint> endpoints) {
+                finished.release();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (DiscoveryResponder responder : responders)
+            responder.close();
+    }
+
+    @Benchmark
+    public void discover() throws InterruptedException {
+        client.startDiscovering();
+        finished.acquire();
+    }
+}
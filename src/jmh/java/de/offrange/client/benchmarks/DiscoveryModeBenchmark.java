@@ -0,0 +1,107 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.listeners.DiscoveryHandler;
+import de.offrange.client.udp.DiscoveredEndpoint;
+import de.offrange.client.udp.DiscoveryClient;
+import de.offrange.client.udp.DiscoveryMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one discovery in every {@link DiscoveryMode} against in-process responders that share a port and have
+ * joined the multicast group on every interface. The client sends through every interface that is up, the loopback
+ * interface included, so a multi-homed host is covered by every mode that sends per interface. A discovery that
+ * misses a responder fails the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoveryModeBenchmark {
+
+    private static final int RESPONDER_COUNT = 2;
+
+    @Param({"BROADCAST", "SUBNET_BROADCAST", "MULTICAST"})
+    private DiscoveryMode discoveryMode;
+
+    private final List<DiscoveryResponder> responders = new ArrayList<>();
+    private final Semaphore finished = new Semaphore(0);
+    private volatile List<DiscoveredEndpoint> discovered;
+    private DiscoveryClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<NetworkInterface> interfaces = new ArrayList<>();
+        for (NetworkInterface networkInterface : NetworkInterface.networkInterfaces().toList()){
+            if(networkInterface.isUp())
+                interfaces.add(networkInterface);
+        }
+
+        DiscoveryResponder first = new DiscoveryResponder("benchmark-0", 10_000);
+        responders.add(first);
+        for (int i = 1; i < RESPONDER_COUNT; i++)
+            responders.add(new DiscoveryResponder("benchmark-" + i, 10_000 + i, first.getPort()));
+
+        InetAddress group = InetAddress.getByName(DiscoveryClient.DEFAULT_MULTICAST_GROUP);
+        for (DiscoveryResponder responder : responders){
+            for (NetworkInterface networkInterface : interfaces){
+                if(networkInterface.supportsMulticast() && networkInterface.inetAddresses().anyMatch(Inet4Address.class::isInstance))
+                    responder.joinGroup(group, networkInterface);
+            }
+
+            responder.start();
+        }
+
+        client = new DiscoveryClient(first.getPort());
+        client.setDiscoveryMode(discoveryMode);
+        client.setNetworkInterfaces(interfaces);
+        client.setDiscoveryTime(2000);
+        client.setDiscoveryHandler(new DiscoveryHandler() {
+            @Override
+            public void onDiscovered(DiscoveredEndpoint endpoint) {}
+
+            @Override
+            public void onFinish(List<DiscoveredEndpoint> endpoints) {
+                discovered = endpoints;
+                finished.release();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (DiscoveryResponder responder : responders)
+            responder.close();
+    }
+
+    @Benchmark
+    public void discover() throws InterruptedException {
+        client.startDiscovering();
+        finished.acquire();
+
+        if(discovered.size() < RESPONDER_COUNT)
+            throw new IllegalStateException(discoveryMode + " discovered " + discovered.size() + " of " + RESPONDER_COUNT + " responders");
+    }
+}
@@ -0,0 +1,130 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * In-process stand-in for the UDP side of a server. It listens on every local address, so it receives unicast,
+ * limited and subnet-directed broadcast requests, and optionally joins a multicast group. Every request is answered
+ * with a response that carries the name and the address of the server, and the request id if the request had one.
+ */
+public class DiscoveryResponder implements Closeable {
+
+    private final DatagramChannel channel;
+    private final String name;
+    private final int servicePort;
+
+    private volatile boolean running;
+
+    /**
+     * Constructs a DiscoveryResponder bound to an ephemeral port.
+     * @param name the name of the server in the responses.
+     * @param servicePort the TCP port of the server in the responses.
+     * @throws IOException if the channel cannot be bound.
+     */
+    public DiscoveryResponder(String name, int servicePort) throws IOException {
+        this(name, servicePort, 0);
+    }
+
+    /**
+     * Constructs a DiscoveryResponder. Several responders can share one port.
+     * @param name the name of the server in the responses.
+     * @param servicePort the TCP port of the server in the responses.
+     * @param port the UDP port to listen on, 0 for an ephemeral port.
+     * @throws IOException if the channel cannot be bound.
+     */
+    public DiscoveryResponder(String name, int servicePort, int port) throws IOException {
+        this.name = name;
+        this.servicePort = servicePort;
+
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Joins a multicast group, so requests sent to the group are answered.
+     * @param group the IPv4 multicast address.
+     * @param networkInterface the interface to join the group on.
+     * @throws IOException if the group cannot be joined.
+     */
+    public void joinGroup(InetAddress group, NetworkInterface networkInterface) throws IOException {
+        channel.join(group, networkInterface);
+    }
+
+    /**
+     * @return the UDP port the responder listens on.
+     */
+    public int getPort() {
+        return ((InetSocketAddress) channel.socket().getLocalSocketAddress()).getPort();
+    }
+
+    /**
+     * Starts answering requests on a background thread.
+     */
+    public void start(){
+        running = true;
+        Thread responder = new Thread(this::respondLoop, "discovery-responder");
+        responder.setDaemon(true);
+        responder.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        channel.close();
+    }
+
+    private void respondLoop(){
+        ByteBuffer buffer = ByteBuffer.allocate(65_535);
+        while (running){
+            try {
+                SocketAddress sender = channel.receive(buffer.clear());
+                JsonObject request = parse(buffer.flip());
+                if(request == null || "RESPONSE".equals(string(request.get("type"))))
+                    continue;
+
+                JsonObject address = new JsonObject();
+                address.addProperty("ip", InetAddress.getLoopbackAddress().getHostAddress());
+                address.addProperty("port", servicePort);
+                JsonObject response = new JsonObject();
+                response.addProperty("type", "RESPONSE");
+                response.addProperty("name", name);
+                response.add("address", address);
+                if(request.has("request_id"))
+                    response.add("request_id", request.get("request_id"));
+
+                channel.send(ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.UTF_8)), sender);
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static JsonObject parse(ByteBuffer datagram){
+        try {
+            JsonElement element = JsonParser.parseString(StandardCharsets.UTF_8.decode(datagram).toString());
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private static String string(JsonElement element){
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+}
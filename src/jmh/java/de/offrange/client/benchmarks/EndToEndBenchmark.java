@@ -0,0 +1,150 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.listeners.ReceiveHandler;
+import de.offrange.client.tcp.TcpClient;
+import de.offrange.client.tcp.TransportMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks a full round trip through {@link TcpClient}: {@code send} on the caller thread, the echo by the
+ * {@link LoopbackServer} and {@code receive} plus dispatch on the client's reading thread, in both transport modes.
+ * An error of the client or the server fails the iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"64", "1024", "16384", "262144", "1048576"})
+    private int payloadSize;
+
+    @Param({"ECB", "GCM"})
+    private RsaAesCryptography.AesMode aesMode;
+
+    @Param({"BLOCKING", "NIO"})
+    private TransportMode transportMode;
+
+    private LoopbackServer server;
+    private TcpClient<BenchmarkModel> client;
+    private BenchmarkModel model;
+
+    private final BlockingQueue<BenchmarkModel> received = new LinkedBlockingQueue<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LoopbackServer();
+        server.start();
+
+        model = BenchmarkModel.ofSize(payloadSize);
+        client = connect(server, aesMode, transportMode, received, failure);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkFailure() {
+        checkFailure(server, failure);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public BenchmarkModel roundTrip() throws InterruptedException {
+        client.send(model);
+        BenchmarkModel echo = received.poll(10, TimeUnit.SECONDS);
+        if(echo == null){
+            checkFailure(server, failure);
+            throw new IllegalStateException("the loopback server did not echo within 10 seconds");
+        }
+
+        return echo;
+    }
+
+    /**
+     * Connects a new client to the server and waits until the code check has passed.
+     * @param server the server to connect to.
+     * @param aesMode the AES mode the session should use.
+     * @param transportMode the transport mode of the client.
+     * @param received the queue every received model is put into.
+     * @param failure receives the first error of the client while it is running.
+     * @return the connected client.
+     * @throws Exception if the connection or the handshake fails.
+     */
+    static TcpClient<BenchmarkModel> connect(LoopbackServer server, RsaAesCryptography.AesMode aesMode,
+                                             TransportMode transportMode, BlockingQueue<BenchmarkModel> received,
+                                             AtomicReference<Exception> failure) throws Exception {
+        CountDownLatch codeChecked = new CountDownLatch(1);
+
+        TcpClient<BenchmarkModel> client = new TcpClient<>(server.getHost(), server.getPort(), BenchmarkModel.class);
+        client.setAesGcmEnabled(aesMode == RsaAesCryptography.AesMode.GCM);
+        client.setTransportMode(transportMode);
+        client.setErrorOccurredHandler((c, exception, type) -> {
+            if(client.isRunning())
+                failure.compareAndSet(null, exception);
+        });
+        client.setReceiveHandler(new ReceiveHandler<>() {
+            @Override
+            public void onDataReceived(BenchmarkModel model) {
+                received.add(model);
+            }
+
+            @Override
+            public void onCodeEvaluationReceived(boolean correct, TcpClient<BenchmarkModel> tcpClient) {
+                codeChecked.countDown();
+            }
+        });
+        client.startAndConnect();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!client.isHandshakeDone()){
+            if(System.nanoTime() > deadline)
+                throw new IllegalStateException("handshake with the loopback server timed out");
+            Thread.sleep(1);
+        }
+
+        client.sendCode("benchmark");
+        if(!codeChecked.await(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("code check with the loopback server timed out");
+
+        return client;
+    }
+
+    /**
+     * Fails the iteration if the server or the client failed.
+     * @param server the server the client is connected to.
+     * @param failure the failure passed to {@link #connect(LoopbackServer, RsaAesCryptography.AesMode, TransportMode,
+     * BlockingQueue, AtomicReference)}.
+     * @throws IllegalStateException if the server or the client failed.
+     */
+    static void checkFailure(LoopbackServer server, AtomicReference<Exception> failure){
+        server.checkFailure();
+        if(failure.get() != null)
+            throw new IllegalStateException("the client failed", failure.get());
+    }
+}
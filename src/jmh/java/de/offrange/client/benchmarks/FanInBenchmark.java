@@ -0,0 +1,104 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.tcp.TcpClient;
+import de.offrange.client.tcp.TransportMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks many threads sending through one {@link TcpClient}. Every thread either waits for each frame to be
+ * written, or queues a burst of frames before waiting, which lets the single writer coalesce them into few socket
+ * writes. The frames echoed by the {@link LoopbackServer} are discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class FanInBenchmark {
+
+    private static final int BURST = 16;
+
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    @Param({"ECB", "GCM"})
+    private RsaAesCryptography.AesMode aesMode;
+
+    @Param({"BLOCKING", "NIO"})
+    private TransportMode transportMode;
+
+    private LoopbackServer server;
+    private TcpClient<BenchmarkModel> client;
+    private BenchmarkModel model;
+
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LoopbackServer();
+        server.start();
+
+        model = BenchmarkModel.ofSize(payloadSize);
+        client = EndToEndBenchmark.connect(server, aesMode, transportMode, new DiscardingQueue(), failure);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkFailure() {
+        EndToEndBenchmark.checkFailure(server, failure);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public void sendAsync() {
+        client.sendAsync(model).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void sendAsyncBurst() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++)
+            futures[i] = client.sendAsync(model);
+
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Queue that drops every model added to it.
+     */
+    private static class DiscardingQueue extends LinkedBlockingQueue<BenchmarkModel> {
+
+        @Override
+        public boolean add(BenchmarkModel model) {
+            return true;
+        }
+    }
+}
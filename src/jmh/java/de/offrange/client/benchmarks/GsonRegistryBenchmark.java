@@ -0,0 +1,48 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.Gson;
+import de.offrange.client.gson.GsonRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the first message of a short-lived client: with a new {@link Gson} per client, as every client used to
+ * build, the reflective adapters are rebuilt every time, with the shared {@link GsonRegistry} they are cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonRegistryBenchmark {
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        json = GsonRegistry.getDefault().getGson().toJson(BenchmarkModel.ofSize(64));
+        GsonRegistry.getDefault().warmUp(BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public BenchmarkModel newGsonPerClient() {
+        Gson gson = GsonRegistry.newBuilder().create();
+        return gson.fromJson(json, BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public BenchmarkModel sharedRegistry() {
+        return GsonRegistry.getDefault().getGson().fromJson(json, BenchmarkModel.class);
+    }
+}
@@ -0,0 +1,98 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.gson.GsonRegistry;
+import de.offrange.client.listeners.ReceiveHandler;
+import de.offrange.client.tcp.TcpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks a full handshake and code check against a {@link LoopbackServer} that advertises either the basic
+ * capabilities or every capability, codec and compression, so the largest handshake the client can send is covered.
+ * A handshake that fails fails the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @Param({"false", "true"})
+    private boolean advertiseEverything;
+
+    @Param({"json", "cbor"})
+    private String codec;
+
+    private LoopbackServer server;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LoopbackServer(0, advertiseEverything);
+        server.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public void handshake() throws Exception {
+        TcpClient<BenchmarkModel> client = new TcpClient<>(server.getHost(), server.getPort(), BenchmarkModel.class);
+        if(codec.equals("cbor"))
+            client.setCodec(GsonRegistry.getDefault().getCborCodec());
+
+        // A failed handshake never completes waitForHandshake, so the error interrupts the waiting thread.
+        Thread caller = Thread.currentThread();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Semaphore codeChecked = new Semaphore(0);
+        client.setErrorOccurredHandler((c, e, type) -> {
+            if(failure.compareAndSet(null, e))
+                caller.interrupt();
+        });
+        client.setReceiveHandler(new ReceiveHandler<>() {
+            @Override
+            public void onDataReceived(BenchmarkModel model) {}
+
+            @Override
+            public void onCodeEvaluationReceived(boolean correct, TcpClient<BenchmarkModel> tcpClient) {
+                codeChecked.release();
+            }
+        });
+
+        try {
+            client.startAndConnect();
+            client.waitForHandshake();
+            client.sendCode("benchmark");
+            if(!codeChecked.tryAcquire(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("code check with the loopback server timed out");
+        } catch (InterruptedException e) {
+            if(failure.get() == null)
+                throw e;
+        } finally {
+            client.disconnect();
+            Thread.interrupted();
+        }
+
+        if(failure.get() != null)
+            throw new IllegalStateException("handshake with the loopback server failed", failure.get());
+    }
+}
@@ -0,0 +1,299 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import de.offrange.client.RsaAesCryptography;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process stand-in for the server side of the protocol, listening on the loopback interface.
+ * It sends the RSA key information and advertises AES-GCM, envelopes and pings, accepts the encrypted AES key and the
+ * selected capabilities, accepts every code and then echoes every frame back to the client, decrypted and encrypted again with the negotiated mode.
+ * Echoed envelopes keep their correlation id, so they answer the request they came from, and pings are answered with
+ * a pong.
+ * <br>
+ * Optionally it advertises everything the client supports, i.e. session resumption, CBOR and deflate as well, so
+ * the handshake carries every selection. Session tickets are never issued.
+ * <br>
+ * An optional response delay simulates a link with a higher round-trip time: every echo is written the delay after
+ * its frame was read, while the following frames are already being read.
+ * <br>
+ * A connection that fails while the server is running is closed and its error is kept, see {@link #checkFailure()}.
+ */
+public class LoopbackServer implements Closeable {
+
+    private static final byte[] PING_PREFIX = "{\"ping\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PONG_PREFIX = "{\"pong\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CBOR_PING_PREFIX = {(byte) 0xBF, 0x64, 'p', 'i', 'n', 'g'};
+    private static final byte[] CBOR_PONG_PREFIX = {(byte) 0xBF, 0x64, 'p', 'o', 'n', 'g'};
+    private static final byte[] CBOR_CODE_CORRECT = {(byte) 0xBF, 0x6F, 'i', 's', '_', 'c', 'o', 'd', 'e', '_', 'c', 'o',
+            'r', 'r', 'e', 'c', 't', (byte) 0xF5, (byte) 0xFF};
+
+    private final KeyPair keyPair;
+    private final ServerSocket serverSocket;
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    private final long responseDelay;
+    private final boolean advertiseEverything;
+
+    private volatile boolean running;
+
+    /**
+     * Constructs a LoopbackServer bound to an ephemeral port on the loopback interface that echoes immediately.
+     * @throws IOException if the server socket cannot be bound.
+     * @throws GeneralSecurityException if the RSA key pair cannot be generated.
+     */
+    public LoopbackServer() throws IOException, GeneralSecurityException {
+        this(0);
+    }
+
+    /**
+     * Constructs a LoopbackServer bound to an ephemeral port on the loopback interface.
+     * @param responseDelay the delay in milliseconds before a frame is echoed.
+     * @throws IOException if the server socket cannot be bound.
+     * @throws GeneralSecurityException if the RSA key pair cannot be generated.
+     */
+    public LoopbackServer(long responseDelay) throws IOException, GeneralSecurityException {
+        this(responseDelay, false);
+    }
+
+    /**
+     * Constructs a LoopbackServer bound to an ephemeral port on the loopback interface.
+     * @param responseDelay the delay in milliseconds before a frame is echoed.
+     * @param advertiseEverything true to advertise session resumption, CBOR and deflate as well.
+     * @throws IOException if the server socket cannot be bound.
+     * @throws GeneralSecurityException if the RSA key pair cannot be generated.
+     */
+    public LoopbackServer(long responseDelay, boolean advertiseEverything) throws IOException, GeneralSecurityException {
+        this.responseDelay = responseDelay;
+        this.advertiseEverything = advertiseEverything;
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the host address the server listens on.
+     */
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start(){
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "loopback-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Throws if a connection failed while the server was running, so a benchmark does not measure a broken echo.
+     * @throws IllegalStateException with the first error of a connection as its cause.
+     */
+    public void checkFailure(){
+        Exception cause = failure.get();
+        if(cause != null)
+            throw new IllegalStateException("a connection of the loopback server failed", cause);
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket connection : connections)
+            connection.close();
+    }
+
+    private void acceptLoop(){
+        while (running){
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+
+                Thread handler = new Thread(() -> serve(socket), "loopback-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket){
+        try (socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            JsonObject rsaKey = new JsonObject();
+            rsaKey.addProperty("exponent", Base64.getEncoder().encodeToString(publicKey.getPublicExponent().toByteArray()));
+            rsaKey.addProperty("modulus", Base64.getEncoder().encodeToString(publicKey.getModulus().toByteArray()));
+            JsonArray capabilities = new JsonArray();
+            capabilities.add("aes_gcm");
+            capabilities.add("envelope");
+            capabilities.add("ping");
+            JsonObject hello = new JsonObject();
+            hello.add("rsa_key_information", rsaKey);
+            hello.add("capabilities", capabilities);
+            if(advertiseEverything){
+                capabilities.add("session_resumption");
+                JsonArray codecs = new JsonArray();
+                codecs.add("cbor");
+                JsonArray compressions = new JsonArray();
+                compressions.add("deflate");
+                hello.add("codecs", codecs);
+                hello.add("compressions", compressions);
+            }
+            writeFrame(out, hello.toString().getBytes(StandardCharsets.UTF_8));
+
+            Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-512AndMGF1Padding");
+            rsa.init(Cipher.DECRYPT_MODE, keyPair.getPrivate(), new OAEPParameterSpec("SHA-512", "MGF1",
+                    MGF1ParameterSpec.SHA512, PSource.PSpecified.DEFAULT));
+            JsonObject keyModel = parse(rsa.doFinal(readFrame(in)));
+            SecretKey aesKey = new SecretKeySpec(Base64.getDecoder().decode(keyModel.get("aes_key").getAsString()), "AES");
+
+            // The selected capabilities follow in the first AES frame, since the server listed some.
+            JsonObject selection = parse(new RsaAesCryptography(aesKey).decrypt(readFrame(in)));
+            boolean gcm = false;
+            if(selection.has("capabilities")){
+                for (JsonElement capability : selection.getAsJsonArray("capabilities"))
+                    gcm |= capability.getAsString().equals("aes_gcm");
+            }
+
+            // With a compression, the plaintext of every frame starts with a flag byte.
+            int offset = selection.has("compressions") && selection.getAsJsonArray("compressions").size() > 0 ? 1 : 0;
+
+            RsaAesCryptography aes = new RsaAesCryptography(aesKey, gcm ? RsaAesCryptography.AesMode.GCM : RsaAesCryptography.AesMode.ECB,
+                    RsaAesCryptography.Role.SERVER);
+            aes.decrypt(readFrame(in));
+            boolean cbor = selection.has("codecs") && selection.getAsJsonArray("codecs").contains(new JsonPrimitive("cbor"));
+            byte[] codeCorrect = cbor ? CBOR_CODE_CORRECT : "{\"is_code_correct\":true}".getBytes(StandardCharsets.UTF_8);
+            if(offset == 1){
+                byte[] flagged = new byte[codeCorrect.length + 1];
+                System.arraycopy(codeCorrect, 0, flagged, 1, codeCorrect.length);
+                codeCorrect = flagged;
+            }
+            writeFrame(out, aes.encrypt(codeCorrect));
+
+            if(responseDelay <= 0){
+                while (running)
+                    writeFrame(out, aes.encrypt(answer(aes.decrypt(readFrame(in)), offset)));
+                return;
+            }
+
+            ScheduledExecutorService delayedWriter = Executors.newSingleThreadScheduledExecutor();
+            try {
+                while (running){
+                    byte[] echo = aes.encrypt(answer(aes.decrypt(readFrame(in)), offset));
+                    delayedWriter.schedule(() -> writeDelayed(socket, out, echo), responseDelay, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                delayedWriter.shutdownNow();
+            }
+        } catch (EOFException ignored) {
+        } catch (IOException | GeneralSecurityException e) {
+            if(running)
+                failure.compareAndSet(null, e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void writeDelayed(Socket socket, DataOutputStream out, byte[] frame){
+        try {
+            writeFrame(out, frame);
+        } catch (IOException e) {
+            if(running)
+                failure.compareAndSet(null, e);
+
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Echoes a frame, except for a ping envelope, which is answered with a pong carrying the same timestamp.
+     * @param offset the position the encoded model starts at in the plaintext.
+     */
+    private static byte[] answer(byte[] frame, int offset){
+        if(startsWith(frame, offset, PING_PREFIX))
+            System.arraycopy(PONG_PREFIX, 0, frame, offset, PONG_PREFIX.length);
+        else if(startsWith(frame, offset, CBOR_PING_PREFIX))
+            System.arraycopy(CBOR_PONG_PREFIX, 0, frame, offset, CBOR_PONG_PREFIX.length);
+
+        return frame;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix){
+        if(data.length - offset < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++){
+            if(data[offset + i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static JsonObject parse(byte[] json){
+        return JsonParser.parseString(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        return frame;
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+}
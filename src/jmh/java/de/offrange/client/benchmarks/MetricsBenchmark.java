@@ -0,0 +1,44 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.metrics.ClientMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the metrics recorded for every frame: counting the bytes of a received frame and recording its decrypt
+ * time, into a per-client instance that is aggregated into {@link ClientMetrics#getGlobal()}. Run with one and with
+ * several threads to see the cost of contention, the GC profiler should report no allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private final ClientMetrics metrics = new ClientMetrics();
+
+    @Benchmark
+    public void recordFrame(){
+        metrics.recordReceived(1024);
+        metrics.recordDecrypt(System.nanoTime() & 0xFFFF);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordFrameContended(){
+        metrics.recordReceived(1024);
+        metrics.recordDecrypt(System.nanoTime() & 0xFFFF);
+    }
+}
@@ -0,0 +1,102 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.listeners.ReceiveHandler;
+import de.offrange.client.tcp.DecodeOrdering;
+import de.offrange.client.tcp.TcpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the receive rate of one connection for a burst of echoed models: decoded by the reading thread, or
+ * decoded by a worker pool with strict or no ordering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelDecodeBenchmark {
+
+    private static final int BURST = 256;
+
+    @Param({"1024", "16384", "262144"})
+    private int payloadSize;
+
+    @Param({"READER", "STRICT", "UNORDERED"})
+    private String decoding;
+
+    private LoopbackServer server;
+    private TcpClient<BenchmarkModel> client;
+    private ExecutorService decodeExecutor;
+    private BenchmarkModel model;
+
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LoopbackServer();
+        server.start();
+        model = BenchmarkModel.ofSize(payloadSize);
+
+        client = new TcpClient<>(server.getHost(), server.getPort(), BenchmarkModel.class);
+        if(!decoding.equals("READER")){
+            decodeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            client.setDecodeExecutor(decodeExecutor);
+            client.setDecodeOrdering(DecodeOrdering.valueOf(decoding));
+        }
+
+        Semaphore codeChecked = new Semaphore(0);
+        client.setReceiveHandler(new ReceiveHandler<>() {
+            @Override
+            public void onDataReceived(BenchmarkModel model) {
+                received.release();
+            }
+
+            @Override
+            public void onCodeEvaluationReceived(boolean correct, TcpClient<BenchmarkModel> tcpClient) {
+                codeChecked.release();
+            }
+        });
+        client.startAndConnect();
+        client.waitForHandshake();
+        client.sendCode("benchmark");
+        if(!codeChecked.tryAcquire(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("code check with the loopback server timed out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+        if(decodeExecutor != null)
+            decodeExecutor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        for (int i = 0; i < BURST; i++)
+            client.send(model);
+
+        received.acquire(BURST);
+    }
+}
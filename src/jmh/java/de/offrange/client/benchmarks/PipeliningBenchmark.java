@@ -0,0 +1,95 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.tcp.TcpClient;
+import de.offrange.client.tcp.TransportMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares {@link TcpClient#request(de.offrange.client.models.IModel)} calls that wait for each response before the
+ * next request with calls that keep {@value #DEPTH} requests in flight. The {@link LoopbackServer} delays every
+ * response by {@code latency} milliseconds to simulate the round-trip time of a slower link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeliningBenchmark {
+
+    private static final int DEPTH = 16;
+
+    @Param({"0", "5"})
+    private long latency;
+
+    @Param({"1024"})
+    private int payloadSize;
+
+    @Param({"BLOCKING", "NIO"})
+    private TransportMode transportMode;
+
+    private LoopbackServer server;
+    private TcpClient<BenchmarkModel> client;
+    private BenchmarkModel model;
+
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LoopbackServer(latency);
+        server.start();
+
+        model = BenchmarkModel.ofSize(payloadSize);
+        client = EndToEndBenchmark.connect(server, RsaAesCryptography.AesMode.GCM, transportMode, new LinkedBlockingQueue<>(), failure);
+        if(!client.isEnvelopeNegotiated())
+            throw new IllegalStateException("the loopback server did not negotiate envelopes");
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkFailure() {
+        EndToEndBenchmark.checkFailure(server, failure);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPTH)
+    public void sequential() {
+        for (int i = 0; i < DEPTH; i++)
+            client.request(model).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPTH)
+    public void pipelined() {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[DEPTH];
+        for (int i = 0; i < DEPTH; i++)
+            responses[i] = client.request(model);
+
+        CompletableFuture.allOf(responses).join();
+    }
+}
@@ -0,0 +1,65 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.gson.GsonRegistry;
+import de.offrange.client.models.HandshakeModel;
+import de.offrange.client.tcp.PublicKeyCache;
+import de.offrange.client.udp.endpoint.EndpointAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks getting the RSA public key of a server during the handshake: rebuilding it from the received key
+ * information, as every handshake used to, and looking it up by fingerprint in a {@link PublicKeyCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicKeyCacheBenchmark {
+
+    private HandshakeModel.RSAKey keyInformation;
+    private PublicKeyCache publicKeyCache;
+    private EndpointAddress endpoint;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        RSAPublicKey publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+
+        String json = "{\"modulus\":\"" + Base64.getEncoder().encodeToString(publicKey.getModulus().toByteArray())
+                + "\",\"exponent\":\"" + Base64.getEncoder().encodeToString(publicKey.getPublicExponent().toByteArray()) + "\"}";
+        keyInformation = GsonRegistry.getDefault().getGson().fromJson(json, HandshakeModel.RSAKey.class);
+
+        publicKeyCache = new PublicKeyCache(PublicKeyCache.DEFAULT_MAX_ENTRIES, PublicKeyCache.DEFAULT_TIME_TO_LIVE);
+        endpoint = new EndpointAddress("127.0.0.1", 5000);
+        publicKeyCache.getPublicKey(endpoint, keyInformation);
+    }
+
+    @Benchmark
+    public PublicKey rebuild() throws GeneralSecurityException {
+        return keyInformation.toPublicKey();
+    }
+
+    @Benchmark
+    public PublicKey cached() throws GeneralSecurityException {
+        return publicKeyCache.getPublicKey(endpoint, keyInformation);
+    }
+}
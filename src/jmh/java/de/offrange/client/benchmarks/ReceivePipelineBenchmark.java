@@ -0,0 +1,165 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import de.offrange.client.BufferPool;
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.gson.ByteArrayTypeAdapter;
+import de.offrange.client.gson.Utf8BufferReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every stage of {@code TcpClient.receive()} separately: the length-prefixed frame read, the AES
+ * decryption (static and session-bound), the {@code String} conversion and Gson deserialization. The pooled
+ * variants read and decrypt in place in a buffer of a {@link BufferPool} and parse it with a {@link Utf8BufferReader}
+ * like {@code TcpClient} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceivePipelineBenchmark {
+
+    @Param({"64", "1024", "16384", "262144", "1048576"})
+    private int payloadSize;
+
+    @Param({"ECB", "GCM"})
+    private RsaAesCryptography.AesMode aesMode;
+
+    private Gson gson;
+    private BufferPool bufferPool;
+    private SecretKey aesKey;
+    private RsaAesCryptography cryptography;
+    private RsaAesCryptography receiver;
+
+    private byte[] frame;
+    private byte[] encrypted;
+    private byte[] staticEncrypted;
+    private byte[] decrypted;
+    private String json;
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        gson = new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+        bufferPool = new BufferPool(false);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        aesKey = keyGenerator.generateKey();
+        cryptography = new RsaAesCryptography(aesKey, aesMode);
+        receiver = new RsaAesCryptography(aesKey, aesMode, RsaAesCryptography.Role.SERVER);
+
+        json = gson.toJson(BenchmarkModel.ofSize(payloadSize));
+        decrypted = json.getBytes();
+        encrypted = cryptography.encrypt(decrypted);
+        staticEncrypted = RsaAesCryptography.encrypt(decrypted, aesKey);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(encrypted.length + 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(encrypted.length);
+        out.write(encrypted);
+        frame = bytes.toByteArray();
+    }
+
+    /**
+     * In {@link RsaAesCryptography.AesMode#GCM}, a receiver rejects a message it has already decrypted as a replay,
+     * so every invocation gets a new receiver.
+     */
+    @Setup(Level.Invocation)
+    public void newReceiver() throws KeyException {
+        if(aesMode == RsaAesCryptography.AesMode.GCM)
+            receiver = new RsaAesCryptography(aesKey, aesMode, RsaAesCryptography.Role.SERVER);
+    }
+
+    @Benchmark
+    public byte[] readFrame() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte[] received = new byte[in.readInt()];
+        in.readFully(received);
+        return received;
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws GeneralSecurityException {
+        return RsaAesCryptography.decryptAes(staticEncrypted, aesKey);
+    }
+
+    @Benchmark
+    public byte[] decryptSession() throws GeneralSecurityException {
+        return receiver.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String toText(){
+        return new String(decrypted);
+    }
+
+    @Benchmark
+    public BenchmarkModel deserialize(){
+        return gson.fromJson(json, BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public BenchmarkModel pipeline() throws IOException, GeneralSecurityException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte[] received = new byte[in.readInt()];
+        in.readFully(received);
+        return gson.fromJson(new String(receiver.decrypt(received)), BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public int readFramePooled() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        ByteBuffer received = bufferPool.acquire(in.readInt());
+        in.readFully(received.array(), received.arrayOffset(), received.remaining());
+        int length = received.remaining();
+        bufferPool.release(received);
+        return length;
+    }
+
+    @Benchmark
+    public BenchmarkModel pipelinePooled() throws IOException, GeneralSecurityException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        ByteBuffer received = bufferPool.acquire(in.readInt());
+        try {
+            in.readFully(received.array(), received.arrayOffset(), received.remaining());
+
+            ByteBuffer decrypted = received.slice();
+            receiver.decrypt(received, decrypted);
+            decrypted.flip();
+            return gson.fromJson(new Utf8BufferReader(decrypted), BenchmarkModel.class);
+        } finally {
+            bufferPool.release(received);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.offrange.client.benchmarks;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.gson.ByteArrayTypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every stage of {@code TcpClient.send(IModel, Key)} separately: Gson serialization, the
+ * {@code getBytes()} conversion, the AES encryption (static and session-bound) and the length-prefixed frame write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendPipelineBenchmark {
+
+    @Param({"64", "1024", "16384", "262144", "1048576"})
+    private int payloadSize;
+
+    @Param({"ECB", "GCM"})
+    private RsaAesCryptography.AesMode aesMode;
+
+    private Gson gson;
+    private SecretKey aesKey;
+    private RsaAesCryptography cryptography;
+    private DataOutputStream outputStream;
+
+    private BenchmarkModel model;
+    private String json;
+    private byte[] plain;
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        gson = new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        aesKey = keyGenerator.generateKey();
+        cryptography = new RsaAesCryptography(aesKey, aesMode);
+
+        outputStream = new DataOutputStream(OutputStream.nullOutputStream());
+
+        model = BenchmarkModel.ofSize(payloadSize);
+        json = gson.toJson(model);
+        plain = json.getBytes();
+        encrypted = RsaAesCryptography.encrypt(plain, aesKey);
+    }
+
+    @Benchmark
+    public String serialize(){
+        return gson.toJson(model);
+    }
+
+    @Benchmark
+    public byte[] toBytes(){
+        return json.getBytes();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws GeneralSecurityException {
+        return RsaAesCryptography.encrypt(plain, aesKey);
+    }
+
+    @Benchmark
+    public byte[] encryptSession() throws GeneralSecurityException {
+        return cryptography.encrypt(plain);
+    }
+
+    @Benchmark
+    public void writeFrame() throws IOException {
+        outputStream.writeInt(encrypted.length);
+        outputStream.write(encrypted);
+    }
+
+    @Benchmark
+    public void pipeline() throws GeneralSecurityException, IOException {
+        byte[] data = cryptography.encrypt(gson.toJson(model).getBytes());
+        outputStream.writeInt(data.length);
+        outputStream.write(data);
+    }
+}
@@ -0,0 +1,65 @@
+package de.offrange.client.benchmarks;
+
+import de.offrange.client.RsaAesCryptography;
+import de.offrange.client.tcp.SessionTicket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the key exchange of the client side of a handshake: a full handshake encrypts a new AES key with the
+ * RSA key of the server, a resumed one derives the key from a {@link SessionTicket} and a nonce.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionResumptionBenchmark {
+
+    private PublicKey publicKey;
+    private KeyGenerator keyGenerator;
+    private SessionTicket ticket;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        publicKey = keyPair.getPublic();
+
+        keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        ticket = new SessionTicket(new byte[64], keyGenerator.generateKey(), TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Benchmark
+    public byte[] fullHandshake() throws GeneralSecurityException {
+        SecretKey aesKey = keyGenerator.generateKey();
+        return new RsaAesCryptography(publicKey).encrypt(aesKey.getEncoded());
+    }
+
+    @Benchmark
+    public SecretKey resumedHandshake() throws GeneralSecurityException {
+        byte[] nonce = new byte[16];
+        ThreadLocalRandom.current().nextBytes(nonce);
+        return ticket.deriveKey(nonce);
+    }
+}
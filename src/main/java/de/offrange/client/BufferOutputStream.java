@@ -0,0 +1,139 @@
+package de.offrange.client;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that extends {@link OutputStream}. It writes into a buffer of a {@link BufferPool}, so encoded data can be
+ * collected without allocating a new array per message.
+ * <br>
+ * Writing starts at an offset that leaves room for a header in front of the data. If the buffer is full, a larger
+ * buffer is taken from the pool and the old one is given back. Once the data is complete, the caller takes the buffer
+ * with {@link #getBuffer()} and must give it back to the pool, or calls {@link #release()} to discard it.
+ * This class is not thread-safe.
+ */
+public class BufferOutputStream extends OutputStream {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 512;
+
+    private final BufferPool bufferPool;
+    private final int offset;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Constructs a BufferOutputStream instance with the {@link #DEFAULT_INITIAL_CAPACITY}.
+     * @param bufferPool the pool the buffer is taken from.
+     * @param offset the number of bytes to leave free in front of the data.
+     */
+    public BufferOutputStream(BufferPool bufferPool, int offset) {
+        this(bufferPool, offset, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a BufferOutputStream instance.
+     * @param bufferPool the pool the buffer is taken from.
+     * @param offset the number of bytes to leave free in front of the data.
+     * @param initialCapacity the number of bytes the first buffer holds, including the offset.
+     */
+    public BufferOutputStream(BufferPool bufferPool, int offset, int initialCapacity) {
+        if(offset < 0)
+            throw new IllegalArgumentException("offset must not be negative");
+
+        this.bufferPool = Objects.requireNonNull(bufferPool);
+        this.offset = offset;
+
+        buffer = bufferPool.acquire(Math.max(offset, initialCapacity));
+        buffer.limit(buffer.capacity()).position(offset);
+    }
+
+    /**
+     * @return the number of bytes in front of the data.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    public int size() {
+        return checkOpen().position() - offset;
+    }
+
+    /**
+     * Makes sure the buffer holds at least {@code capacity} bytes, e.g. to encode the data in place afterwards.
+     * @param capacity the number of bytes needed, including the offset.
+     */
+    public void ensureCapacity(int capacity) {
+        checkOpen();
+        if(capacity <= buffer.capacity())
+            return;
+
+        ByteBuffer grown = bufferPool.acquire(Math.max(capacity, buffer.capacity() * 2));
+        grown.limit(grown.capacity());
+        grown.put(buffer.flip());
+        bufferPool.release(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Makes sure at least {@code length} more bytes can be written and returns the buffer to write them to directly.
+     * The returned buffer is only valid until the next call of a method of this stream.
+     * @param length the number of bytes that are about to be written.
+     * @return the current buffer, positioned at the end of the data.
+     */
+    public ByteBuffer ensureRemaining(int length) {
+        checkOpen();
+        if(buffer.remaining() < length)
+            ensureCapacity(buffer.position() + length);
+
+        return buffer;
+    }
+
+    /**
+     * Hands the buffer over to the caller. Its position is set to the end of the data and its limit to its capacity.
+     * The stream cannot be used afterwards.
+     * @return the buffer holding the data from {@link #getOffset()} to its position. It must be given back to the
+     * {@link BufferPool} once it is no longer used.
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer result = checkOpen();
+        buffer = null;
+        return result;
+    }
+
+    /**
+     * Gives the buffer back to the {@link BufferPool} if it was not handed over by {@link #getBuffer()}.
+     * The stream cannot be used afterwards.
+     */
+    public void release() {
+        bufferPool.release(buffer);
+        buffer = null;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(1).put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureRemaining(len).put(b, off, len);
+    }
+
+    /**
+     * Does not give the buffer back, use {@link #getBuffer()} or {@link #release()} for that.
+     */
+    @Override
+    public void close() {}
+
+    private ByteBuffer checkOpen(){
+        if(buffer == null)
+            throw new IllegalStateException("the buffer was already handed over");
+
+        return buffer;
+    }
+}
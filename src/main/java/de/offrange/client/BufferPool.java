@@ -0,0 +1,148 @@
+package de.offrange.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Class that hands out reusable {@link ByteBuffer}s, so frames can be read, encrypted and decrypted without
+ * allocating a new buffer per message.
+ * <br>
+ * Buffers are grouped into size classes that are powers of two, from {@link #getMinSize()} up to
+ * {@link #getMaxPooledSize()}. {@link #acquire(int)} returns a buffer of the smallest class that fits the requested
+ * size, with its limit set to that size. Larger requests are allocated on demand and not pooled. Every class keeps
+ * at most {@link #DEFAULT_MAX_BYTES_PER_CLASS} bytes of released buffers, the rest is left to the garbage collector.
+ * <br>
+ * A pool creates either heap buffers, which can be passed to APIs that need a {@code byte[]}, or direct buffers,
+ * which avoid a copy when they are read from or written to a {@link java.nio.channels.SocketChannel}.
+ * This class is thread-safe.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_MIN_SIZE = 512;
+    public static final int DEFAULT_MAX_POOLED_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_BYTES_PER_CLASS = 2 * 1024 * 1024;
+
+    private static final BufferPool DEFAULT = new BufferPool(false);
+
+    private final boolean direct;
+    private final int minSize;
+    private final int maxPooledSize;
+    private final int minShift;
+    private final List<BlockingQueue<ByteBuffer>> classes;
+
+    /**
+     * Constructs a BufferPool instance with the default size classes.
+     * @param direct true to create direct buffers, false to create heap buffers.
+     */
+    public BufferPool(boolean direct) {
+        this(direct, DEFAULT_MIN_SIZE, DEFAULT_MAX_POOLED_SIZE, DEFAULT_MAX_BYTES_PER_CLASS);
+    }
+
+    /**
+     * Constructs a BufferPool instance.
+     * @param direct true to create direct buffers, false to create heap buffers.
+     * @param minSize the size of the smallest class, a power of two.
+     * @param maxPooledSize the size of the largest class, a power of two not less than {@code minSize}.
+     * @param maxBytesPerClass the number of bytes each class may keep, at least one buffer is kept per class.
+     */
+    public BufferPool(boolean direct, int minSize, int maxPooledSize, int maxBytesPerClass) {
+        if(Integer.bitCount(minSize) != 1 || Integer.bitCount(maxPooledSize) != 1 || maxPooledSize < minSize)
+            throw new IllegalArgumentException("minSize and maxPooledSize must be powers of two and minSize must not exceed maxPooledSize");
+
+        this.direct = direct;
+        this.minSize = minSize;
+        this.maxPooledSize = maxPooledSize;
+        this.minShift = Integer.numberOfTrailingZeros(minSize);
+
+        int count = Integer.numberOfTrailingZeros(maxPooledSize) - minShift + 1;
+        classes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            classes.add(new ArrayBlockingQueue<>(Math.max(1, maxBytesPerClass / (minSize << i))));
+    }
+
+    /**
+     * @return the pool shared by every client that has no pool of its own, it creates heap buffers.
+     */
+    public static BufferPool getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return true if the pool creates direct buffers, false if it creates heap buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return the size of the smallest class in bytes.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return the size of the largest class in bytes, larger buffers are not pooled.
+     */
+    public int getMaxPooledSize() {
+        return maxPooledSize;
+    }
+
+    /**
+     * Returns a buffer that holds at least {@code size} bytes. The buffer should be given back with
+     * {@link #release(ByteBuffer)} once it is no longer used.
+     * @param size the number of bytes needed.
+     * @return a buffer with its position set to 0 and its limit set to {@code size}. Its content is undefined.
+     */
+    public ByteBuffer acquire(int size){
+        if(size < 0)
+            throw new IllegalArgumentException("size must not be negative");
+
+        ByteBuffer buffer;
+        if(size > maxPooledSize){
+            buffer = allocate(size);
+        }else{
+            int index = classIndex(size);
+            buffer = classes.get(index).poll();
+            if(buffer == null)
+                buffer = allocate(minSize << index);
+        }
+
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer returned by {@link #acquire(int)}. The buffer must not be used afterwards. Buffers that do
+     * not belong to a size class of this pool are ignored.
+     * @param buffer the buffer to give back, may be {@code null}.
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer == null || buffer.isDirect() != direct || buffer.isReadOnly())
+            return;
+
+        int capacity = buffer.capacity();
+        if(capacity < minSize || capacity > maxPooledSize || Integer.bitCount(capacity) != 1)
+            return;
+
+        classes.get(classIndex(capacity)).offer(buffer);
+    }
+
+    /**
+     * @param size the number of bytes needed, at most {@link #getMaxPooledSize()}.
+     * @return the index of the smallest class that holds {@code size} bytes.
+     */
+    private int classIndex(int size){
+        if(size <= minSize)
+            return 0;
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - minShift;
+    }
+
+    private ByteBuffer allocate(int capacity){
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
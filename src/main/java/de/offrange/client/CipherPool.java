@@ -0,0 +1,141 @@
+package de.offrange.client;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class that caches {@link Cipher} instances per thread, so the provider lookup of {@link Cipher#getInstance(String)}
+ * is only paid once per thread instead of once per message.
+ * <br>
+ * An instance of this class is bound to a transformation, an operation mode and a key. Each thread keeps one cipher
+ * per transformation and operation mode, shared by every instance, so the number of cached ciphers does not grow
+ * with the number of sessions. The cipher is only initialized again when another instance used it last, since
+ * {@link Cipher#doFinal(byte[])} resets a cipher to the state it was in after its last initialization. This only
+ * suits transformations without an IV, which must not be reused. The static {@link #getInstance(String)} hands out
+ * uninitialized ciphers for callers that have to initialize the cipher for every operation.
+ */
+public class CipherPool {
+
+    private static final ThreadLocal<Map<String, Slot>> TRANSFORMATIONS = ThreadLocal.withInitial(HashMap::new);
+
+    private final String transformation;
+    private final int operationMode;
+    private final Key key;
+    private final AlgorithmParameterSpec parameterSpec;
+
+    /**
+     * The key of the cipher in {@link #TRANSFORMATIONS}, which is not shared with {@link #getInstance(String)}.
+     */
+    private final String slotKey;
+
+    /**
+     * Constructs a CipherPool instance.
+     * @param transformation the transformation passed to {@link Cipher#getInstance(String)}.
+     * @param operationMode the operation mode of the cipher, e.g. {@link Cipher#ENCRYPT_MODE}.
+     * @param key the key the ciphers are initialized with.
+     * @param parameterSpec the algorithm parameters the ciphers are initialized with, may be {@code null}.
+     */
+    public CipherPool(String transformation, int operationMode, Key key, AlgorithmParameterSpec parameterSpec) {
+        this.transformation = transformation;
+        this.operationMode = operationMode;
+        this.key = key;
+        this.parameterSpec = parameterSpec;
+        this.slotKey = transformation + "#" + operationMode;
+    }
+
+    /**
+     * Returns the cipher of the current thread. The cipher is created on the first call of each thread and
+     * initialized with the key of this instance unless it already was by the last use.
+     * @return the initialized cipher of the current thread.
+     * @throws GeneralSecurityException if the cipher cannot be created or initialized.
+     */
+    public Cipher get() throws GeneralSecurityException {
+        Slot slot = slot(slotKey, transformation);
+        if(slot.owner != this){
+            slot.owner = null;
+            if(parameterSpec == null)
+                slot.cipher.init(operationMode, key);
+            else
+                slot.cipher.init(operationMode, key, parameterSpec);
+
+            slot.owner = this;
+        }
+
+        return slot.cipher;
+    }
+
+    /**
+     * Runs {@link Cipher#doFinal(byte[])} on the cipher of the current thread. If the operation fails, the cipher
+     * is discarded, because a cipher may be left in an undefined state after an exception.
+     * @param data the input data.
+     * @return the result of the operation.
+     * @throws GeneralSecurityException if the operation fails.
+     */
+    public byte[] doFinal(byte[] data) throws GeneralSecurityException {
+        Cipher cipher = get();
+        try {
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            TRANSFORMATIONS.get().remove(slotKey);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs {@link Cipher#doFinal(ByteBuffer, ByteBuffer)} on the cipher of the current thread. If the operation fails,
+     * the cipher is discarded, because a cipher may be left in an undefined state after an exception.
+     * @param input the input buffer, its remaining bytes are processed.
+     * @param output the output buffer the result is written to.
+     * @return the number of bytes written to {@code output}.
+     * @throws GeneralSecurityException if the operation fails.
+     */
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        Cipher cipher = get();
+        try {
+            return cipher.doFinal(input, output);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            TRANSFORMATIONS.get().remove(slotKey);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns an uninitialized cipher of the current thread for a transformation. The cipher is shared by every
+     * caller of the current thread, so it must be initialized before each use and must not be kept.
+     * @param transformation the transformation passed to {@link Cipher#getInstance(String)}.
+     * @return the cipher of the current thread.
+     * @throws GeneralSecurityException if the transformation is not supported.
+     */
+    public static Cipher getInstance(String transformation) throws GeneralSecurityException {
+        return slot(transformation, transformation).cipher;
+    }
+
+    private static Slot slot(String slotKey, String transformation) throws GeneralSecurityException {
+        Map<String, Slot> slots = TRANSFORMATIONS.get();
+        Slot slot = slots.get(slotKey);
+        if(slot == null){
+            slot = new Slot(Cipher.getInstance(transformation));
+            slots.put(slotKey, slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Class that holds a cached cipher together with the instance it was last initialized by.
+     */
+    private static final class Slot {
+
+        private final Cipher cipher;
+        private CipherPool owner;
+
+        private Slot(Cipher cipher) {
+            this.cipher = cipher;
+        }
+    }
+}
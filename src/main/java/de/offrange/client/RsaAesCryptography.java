@@ -1,18 +1,365 @@
 package de.offrange.client;
 
+import java.nio.ByteBuffer;
 import java.security.*;
+import java.security.interfaces.RSAKey;
+import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
 
 /**
  * Class that is used to encrypt data with two supported algorithms for encryption - RSA and AES and
  * one algorithm for decryption AES.
+ * <br>
+ * The static methods can be used with any key. An instance of this class is bound to one key and reuses its
+ * {@link Cipher}s through a {@link CipherPool}, so only {@link Cipher#doFinal(byte[])} is paid per message.
+ * AES keys can be used in two modes, see {@link AesMode}.
  */
 public class RsaAesCryptography {
 
+    /**
+     * Length of the nonce that prefixes every message encrypted in {@link AesMode#GCM}.
+     */
+    public static final int GCM_NONCE_LENGTH = 12;
+
+    /**
+     * Length of the authentication tag that is appended to every message encrypted in {@link AesMode#GCM}.
+     */
+    public static final int GCM_TAG_LENGTH = 16;
+
+    /**
+     * Number of nonce counters below the highest received counter that are remembered in {@link AesMode#GCM}.
+     * Messages that are older are rejected as replays.
+     */
+    public static final int REPLAY_WINDOW = 1024;
+
+    private static final String RSA = "RSA";
+    private static final String AES = "AES";
+
+    private static final String RSA_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-512AndMGF1Padding";
+
+    private static final int AES_BLOCK_SIZE = 16;
+    private static final int OAEP_HASH_LENGTH = 64;
+    private static final int SERVER_SALT_BIT = Integer.MIN_VALUE;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final OAEPParameterSpec OAEP_PARAMETER_SPEC = new OAEPParameterSpec("SHA-512", "MGF1",
+            MGF1ParameterSpec.SHA512, PSource.PSpecified.DEFAULT);
+
+    private final Key key;
+    private final AesMode aesMode;
+    private final Role role;
+
+    private final CipherPool encryptCiphers;
+    private final CipherPool decryptCiphers;
+
+    private final int salt;
+    private final AtomicLong sendCounter = new AtomicLong();
+
+    private final Object replayLock = new Object();
+    private final long[] receivedCounters = new long[REPLAY_WINDOW / Long.SIZE];
+    private long highestCounter = -1;
+
+    /**
+     * Constructs a RsaAesCryptography instance bound to a {@link Key}. Supported algorithms are RSA and AES, but
+     * only AES keys can be used for decryption. AES keys are used in {@link AesMode#ECB}.
+     * @param key the key for the encryption and decryption.
+     * @throws KeyException if the key algorithm is neither RSA nor AES.
+     */
+    public RsaAesCryptography(Key key) throws KeyException {
+        this(key, AesMode.ECB);
+    }
+
+    /**
+     * Constructs a RsaAesCryptography instance bound to a {@link Key} for the {@link Role#CLIENT}. Supported
+     * algorithms are RSA and AES, but only AES keys can be used for decryption.
+     * @param key the key for the encryption and decryption.
+     * @param aesMode the mode used if the key is an AES key, ignored for RSA keys.
+     * @throws KeyException if the key algorithm is neither RSA nor AES.
+     */
+    public RsaAesCryptography(Key key, AesMode aesMode) throws KeyException {
+        this(key, aesMode, Role.CLIENT);
+    }
+
+    /**
+     * Constructs a RsaAesCryptography instance bound to a {@link Key}. Supported algorithms are RSA and AES, but
+     * only AES keys can be used for decryption.
+     * @param key the key for the encryption and decryption.
+     * @param aesMode the mode used if the key is an AES key, ignored for RSA keys.
+     * @param role the side of the connection this instance encrypts for, it selects the nonce space in
+     * {@link AesMode#GCM}.
+     * @throws KeyException if the key algorithm is neither RSA nor AES.
+     */
+    public RsaAesCryptography(Key key, AesMode aesMode, Role role) throws KeyException {
+        this.key = key;
+        this.aesMode = aesMode;
+        this.role = role;
+
+        boolean aes = AES.equals(key.getAlgorithm());
+        if(aes && aesMode == AesMode.GCM){
+            encryptCiphers = null;
+            decryptCiphers = null;
+        }else{
+            encryptCiphers = new CipherPool(getTransformation(key), Cipher.ENCRYPT_MODE, key, getParameterSpec(key));
+            decryptCiphers = aes ? new CipherPool(AesMode.ECB.getTransformation(), Cipher.DECRYPT_MODE, key, null) : null;
+        }
+
+        salt = role == Role.SERVER ? RANDOM.nextInt() | SERVER_SALT_BIT : RANDOM.nextInt() & ~SERVER_SALT_BIT;
+    }
+
+    /**
+     * @return the AES mode of this instance.
+     */
+    public AesMode getAesMode() {
+        return aesMode;
+    }
+
+    /**
+     * @return the side of the connection this instance encrypts for.
+     */
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * @param inputLength the length of the data to encrypt.
+     * @return the number of bytes {@link #encrypt(ByteBuffer, ByteBuffer)} writes for {@code inputLength} bytes.
+     * @throws GeneralSecurityException if the cipher cannot be created.
+     */
+    public int getEncryptedSize(int inputLength) throws GeneralSecurityException {
+        if(encryptCiphers == null)
+            return GCM_NONCE_LENGTH + inputLength + GCM_TAG_LENGTH;
+
+        if(decryptCiphers != null)
+            return (inputLength / AES_BLOCK_SIZE + 1) * AES_BLOCK_SIZE;
+
+        return encryptCiphers.get().getOutputSize(inputLength);
+    }
+
+    /**
+     * @return the number of bytes the output of {@link #encrypt(ByteBuffer, ByteBuffer)} has to start in front of
+     * the data to encrypt it in place, {@link #GCM_NONCE_LENGTH} in {@link AesMode#GCM} and 0 otherwise.
+     */
+    public int getInPlaceOffset() {
+        return encryptCiphers == null ? GCM_NONCE_LENGTH : 0;
+    }
+
+    /**
+     * Encrypts data using the key of this instance.
+     * @param data the data to encrypt.
+     * @return the encrypted data.
+     * @throws GeneralSecurityException if an error occurs while encrypting
+     */
+    public byte[] encrypt(byte[] data) throws GeneralSecurityException {
+        if(encryptCiphers != null)
+            return encryptCiphers.doFinal(data);
+
+        byte[] encrypted = new byte[getEncryptedSize(data.length)];
+        encrypt(ByteBuffer.wrap(data), ByteBuffer.wrap(encrypted));
+        return encrypted;
+    }
+
+    /**
+     * Encrypts the remaining bytes of {@code input} using the key of this instance and writes the result to
+     * {@code output}. In {@link AesMode#GCM}, the nonce is written in front of the ciphertext.
+     * <br>
+     * The buffers may share their content, but must not be the same object. To encrypt in place, pass a duplicate
+     * of {@code input} that starts {@link #GCM_NONCE_LENGTH} bytes in front of the data in {@link AesMode#GCM}, or at
+     * the same position in {@link AesMode#ECB}.
+     * @param input the data to encrypt.
+     * @param output the buffer the encrypted data is written to.
+     * @return the number of bytes written to {@code output}.
+     * @throws GeneralSecurityException if an error occurs while encrypting
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if(encryptCiphers != null)
+            return encryptCiphers.doFinal(input, output);
+
+        long counter = sendCounter.getAndIncrement();
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        ByteBuffer.wrap(nonce).putInt(salt).putLong(counter);
+
+        Cipher cipher = CipherPool.getInstance(AesMode.GCM.getTransformation());
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, nonce));
+
+        output.put(nonce);
+        return GCM_NONCE_LENGTH + cipher.doFinal(input, output);
+    }
+
+    /**
+     * Decrypts data using the key of this instance. Only AES decryption is supported.
+     * @param data the data to decrypt.
+     * @return the decrypted data.
+     * @throws GeneralSecurityException if the key of this instance is not an AES key or an error occurs while decrypting
+     */
+    public byte[] decrypt(byte[] data) throws GeneralSecurityException {
+        if(decryptCiphers != null)
+            return decryptCiphers.doFinal(data);
+
+        ByteBuffer output = ByteBuffer.allocate(data.length);
+        decrypt(ByteBuffer.wrap(data), output);
+        byte[] decrypted = new byte[output.position()];
+        output.flip().get(decrypted);
+        return decrypted;
+    }
+
+    /**
+     * Decrypts the remaining bytes of {@code input} using the key of this instance and writes the result to
+     * {@code output}. Only AES decryption is supported. The buffers may share their content, so a message can be
+     * decrypted in place by passing a duplicate of {@code input}, since the buffers must not be the same object.
+     * <br>
+     * In {@link AesMode#GCM}, a message whose nonce counter was received before, that is {@link #REPLAY_WINDOW} or
+     * more counters below the highest received counter, or that was encrypted for the same {@link Role} as this
+     * instance, is rejected as a replay. The counter is only remembered once the message was authenticated, so a forged message cannot
+     * make later messages fail.
+     * @param input the data to decrypt.
+     * @param output the buffer the decrypted data is written to.
+     * @return the number of bytes written to {@code output}.
+     * @throws GeneralSecurityException if the key of this instance is not an AES key, the message is a replay
+     * or an error occurs while decrypting
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if(decryptCiphers != null)
+            return decryptCiphers.doFinal(input, output);
+
+        long counter = checkNonce(input);
+        int length = decryptGcm(input, output);
+
+        commitCounter(counter);
+        return length;
+    }
+
+    /**
+     * Checks the nonce of a message like {@link #decrypt(ByteBuffer, ByteBuffer)} does, so replays can be dropped in
+     * the order the messages were received, before they are decrypted in any order with
+     * {@link #decryptAccepted(ByteBuffer, ByteBuffer)}. The counter is not remembered until the message was
+     * authenticated. Does nothing in {@link AesMode#ECB}.
+     * @param input the message to check, its position is not changed.
+     * @throws GeneralSecurityException if the key of this instance is not an AES key or the message is a replay.
+     */
+    public void acceptNonce(ByteBuffer input) throws GeneralSecurityException {
+        if(decryptCiphers != null)
+            return;
+
+        checkNonce(input.duplicate());
+    }
+
+    /**
+     * Decrypts a message whose nonce was accepted by {@link #acceptNonce(ByteBuffer)}. Unlike
+     * {@link #decrypt(ByteBuffer, ByteBuffer)}, this method can be called for several messages at the same time and
+     * in any order, as long as no message is {@link #REPLAY_WINDOW} or more counters older than the newest
+     * authenticated message. The counter is remembered once the message was authenticated, a second message with the
+     * same counter is rejected as a replay.
+     * @param input the data to decrypt.
+     * @param output the buffer the decrypted data is written to.
+     * @return the number of bytes written to {@code output}.
+     * @throws GeneralSecurityException if the key of this instance is not an AES key or an error occurs while
+     * decrypting.
+     */
+    public int decryptAccepted(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if(decryptCiphers != null)
+            return decryptCiphers.doFinal(input, output);
+
+        checkNonceLength(input);
+        long counter = input.getLong(input.position() + Integer.BYTES);
+        int length = decryptGcm(input, output);
+
+        commitCounter(counter);
+        return length;
+    }
+
+    /**
+     * Reads the nonce of a GCM message and rejects replays.
+     * @return the counter of the nonce.
+     */
+    private long checkNonce(ByteBuffer input) throws GeneralSecurityException {
+        checkNonceLength(input);
+
+        ByteBuffer nonceBuffer = input.duplicate();
+        if(((nonceBuffer.getInt() ^ salt) & SERVER_SALT_BIT) == 0)
+            throw new AEADBadTagException("received a message encrypted for the same role");
+
+        long counter = nonceBuffer.getLong();
+        synchronized (replayLock){
+            if(!isFresh(counter))
+                throw new AEADBadTagException("received a replayed message");
+        }
+
+        return counter;
+    }
+
+    /**
+     * Remembers the counter of an authenticated message.
+     * @throws AEADBadTagException if a message with the counter was authenticated before.
+     */
+    private void commitCounter(long counter) throws AEADBadTagException {
+        synchronized (replayLock){
+            if(!isFresh(counter))
+                throw new AEADBadTagException("received a replayed message");
+
+            if(counter > highestCounter){
+                if(counter - highestCounter >= REPLAY_WINDOW){
+                    Arrays.fill(receivedCounters, 0);
+                }else{
+                    for (long c = highestCounter + 1; c < counter; c++)
+                        receivedCounters[windowIndex(c)] &= ~windowBit(c);
+                }
+
+                highestCounter = counter;
+            }
+
+            receivedCounters[windowIndex(counter)] |= windowBit(counter);
+        }
+    }
+
+    /**
+     * @return true if no message with the counter was authenticated and the counter is within the replay window.
+     * Must be called while holding the replay lock.
+     */
+    private boolean isFresh(long counter){
+        if(counter < 0)
+            return false;
+        if(counter > highestCounter)
+            return true;
+        if(highestCounter - counter >= REPLAY_WINDOW)
+            return false;
+
+        return (receivedCounters[windowIndex(counter)] & windowBit(counter)) == 0;
+    }
+
+    private static int windowIndex(long counter){
+        return (int) (counter / Long.SIZE % (REPLAY_WINDOW / Long.SIZE));
+    }
+
+    private static long windowBit(long counter){
+        return 1L << (counter % Long.SIZE);
+    }
+
+    private void checkNonceLength(ByteBuffer input) throws GeneralSecurityException {
+        if(encryptCiphers != null)
+            throw new KeyException("Only AES is supported for decryption.");
+
+        if(input.remaining() < GCM_NONCE_LENGTH + GCM_TAG_LENGTH)
+            throw new AEADBadTagException("message is shorter than nonce and tag");
+    }
+
+    private int decryptGcm(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        input.get(nonce);
+
+        Cipher cipher = CipherPool.getInstance(AesMode.GCM.getTransformation());
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, nonce));
+        return cipher.doFinal(input, output);
+    }
+
     /**
      * Encrypts data using a {@link Key}. The key algorithm is used for encryption. Supported algorithms are RSA and AES.
      * @param data the data to encrypt.
@@ -21,20 +368,29 @@ public class RsaAesCryptography {
      * @throws GeneralSecurityException if an error occurs while encrypting
      */
     public static byte[] encrypt(byte[] data, Key key) throws GeneralSecurityException {
-        if(!(key.getAlgorithm().equals("RSA") || key.getAlgorithm().equals("AES")))
-            throw new KeyException("Only RSA and AES are supported for encryption.");
-
-        Cipher cipher = Cipher.getInstance(key.getAlgorithm().equals("RSA") ? "RSA/ECB/OAEPWithSHA-512AndMGF1Padding" : key.getAlgorithm());
-        if(key.getAlgorithm().equals("RSA")){
-            OAEPParameterSpec oaepParameterSpec = new OAEPParameterSpec("SHA-512", "MGF1",
-                    MGF1ParameterSpec.SHA512, PSource.PSpecified.DEFAULT);
-            cipher.init(Cipher.ENCRYPT_MODE, key, oaepParameterSpec);
-        }else
+        Cipher cipher = CipherPool.getInstance(getTransformation(key));
+        AlgorithmParameterSpec parameterSpec = getParameterSpec(key);
+        if(parameterSpec != null)
+            cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
+        else
             cipher.init(Cipher.ENCRYPT_MODE, key);
 
         return cipher.doFinal(data);
     }
 
+    /**
+     * @param key the RSA key used for encryption.
+     * @return the maximum number of bytes RSA-OAEP with SHA-512 encrypts with the key in one block, 126 for a
+     * 2048-bit key.
+     * @throws KeyException if the key is not an RSA key.
+     */
+    public static int getMaxRsaInputLength(Key key) throws KeyException {
+        if(!(key instanceof RSAKey))
+            throw new KeyException("Only RSA keys have a maximum input length.");
+
+        return (((RSAKey) key).getModulus().bitLength() + 7) / 8 - 2 * OAEP_HASH_LENGTH - 2;
+    }
+
     /**
      * Decrypts data using a {@link Key}. Only AES decryption is supported for decryption.
      * @param data the data to encrypt.
@@ -43,8 +399,80 @@ public class RsaAesCryptography {
      * @throws GeneralSecurityException if an error occurs while decrypting
      */
     public static byte[] decryptAes(byte[] data, Key key) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance("AES");
+        Cipher cipher = CipherPool.getInstance(AesMode.ECB.getTransformation());
         cipher.init(Cipher.DECRYPT_MODE, key);
         return cipher.doFinal(data);
     }
+
+    /**
+     * @param key the key used for encryption.
+     * @return the transformation used to encrypt with the key.
+     * @throws KeyException if the key algorithm is neither RSA nor AES.
+     */
+    private static String getTransformation(Key key) throws KeyException {
+        switch (key.getAlgorithm()){
+            case RSA:
+                return RSA_TRANSFORMATION;
+            case AES:
+                return AesMode.ECB.getTransformation();
+            default:
+                throw new KeyException("Only RSA and AES are supported for encryption.");
+        }
+    }
+
+    /**
+     * @param key the key used for encryption.
+     * @return the parameters used to encrypt with the key, {@code null} if no parameters are required.
+     */
+    private static AlgorithmParameterSpec getParameterSpec(Key key){
+        return RSA.equals(key.getAlgorithm()) ? OAEP_PARAMETER_SPEC : null;
+    }
+
+    /**
+     * Enum representing the mode an AES key is used in.
+     */
+    public enum AesMode{
+        /**
+         * The provider default {@code AES} transformation (ECB with PKCS5 padding). Used by servers that do not
+         * support {@link #GCM}.
+         */
+        ECB("AES"),
+
+        /**
+         * Authenticated {@code AES/GCM/NoPadding}. Every message is prefixed with a {@link #GCM_NONCE_LENGTH} byte
+         * nonce, made of a random salt and a counter, and followed by a {@link #GCM_TAG_LENGTH} byte tag. The most
+         * significant bit of the salt is set by the {@link Role#SERVER} and cleared by the {@link Role#CLIENT}, so
+         * the two directions of a connection never share a nonce.
+         */
+        GCM("AES/GCM/NoPadding");
+
+        private final String transformation;
+
+        AesMode(String transformation) {
+            this.transformation = transformation;
+        }
+
+        /**
+         * @return the transformation passed to {@link Cipher#getInstance(String)}.
+         */
+        public String getTransformation() {
+            return transformation;
+        }
+    }
+
+    /**
+     * Enum representing the side of a connection a {@link RsaAesCryptography} encrypts for. Messages are only
+     * decrypted if they were encrypted for the other side.
+     */
+    public enum Role{
+        /**
+         * The side that opens the connection, e.g. a {@link de.offrange.client.tcp.TcpClient}.
+         */
+        CLIENT,
+
+        /**
+         * The side that accepts the connection.
+         */
+        SERVER
+    }
 }
@@ -0,0 +1,83 @@
+package de.offrange.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that creates the {@link ThreadFactory}s used by the clients to start their background threads.
+ * <br>
+ * {@link #virtual(String)} creates virtual threads on JDK 21 and later, so blocking reads park cheaply and one JVM
+ * can run tens of thousands of connections. On older runtimes it falls back to {@link #platform(String, boolean)}.
+ * Virtual threads are looked up reflectively, so the library still runs on older runtimes.
+ */
+public final class ThreadFactories {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+
+            // virtual threads are a preview feature on JDK 19 and 20 and fail unless previews are enabled
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private ThreadFactories() {}
+
+    /**
+     * @return true if the running JVM supports virtual threads, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported(){
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} for platform threads named {@code prefix-<number>}.
+     * @param prefix the prefix of the thread names.
+     * @param daemon true if the threads should not keep the JVM alive, false otherwise.
+     * @return the thread factory.
+     */
+    public static ThreadFactory platform(String prefix, boolean daemon){
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} for virtual threads named {@code prefix-<number>}. Virtual threads never keep
+     * the JVM alive. If the running JVM does not support virtual threads, daemon platform threads are created instead.
+     * @param prefix the prefix of the thread names.
+     * @return the thread factory.
+     * @see #isVirtualThreadSupported()
+     */
+    public static ThreadFactory virtual(String prefix){
+        if(!isVirtualThreadSupported())
+            return platform(prefix, true);
+
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return platform(prefix, true);
+        }
+    }
+}
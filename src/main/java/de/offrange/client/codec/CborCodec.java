@@ -0,0 +1,73 @@
+package de.offrange.client.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import de.offrange.client.BufferOutputStream;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that implements the {@link Codec} interface. It encodes values as CBOR (RFC 8949), a binary representation of
+ * the JSON data model, so numbers, booleans and the structure take less space and no text has to be tokenized.
+ * <br>
+ * The values are mapped by {@link Gson}, so field names, naming policy and type adapters are the same as with
+ * {@link JsonCodec}. They are written by a {@link CborWriter} and read back by a {@link CborReader}, neither of which
+ * goes through JSON text or a {@link com.google.gson.JsonElement} tree. {@code byte[]} fields are byte strings instead
+ * of Base64 text if the {@link de.offrange.client.gson.ByteArrayTypeAdapter} is registered.
+ */
+public class CborCodec implements Codec {
+
+    public static final String NAME = "cbor";
+
+    private final Gson gson;
+
+    /**
+     * Constructs a CborCodec instance.
+     * @param gson the {@link Gson} instance that maps values to the JSON data model and back.
+     */
+    public CborCodec(Gson gson) {
+        this.gson = Objects.requireNonNull(gson);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, BufferOutputStream out) throws IOException {
+        CborWriter writer = new CborWriter(out);
+        try {
+            if(value == null)
+                gson.toJson(JsonNull.INSTANCE, writer);
+            else
+                gson.toJson(value, value.getClass(), writer);
+        } catch (JsonIOException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public <V> V decode(ByteBuffer data, Type type) throws IOException {
+        if(!data.hasRemaining())
+            return null;
+
+        try {
+            V value = gson.fromJson(new CborReader(data), type);
+            if(data.hasRemaining())
+                throw new IOException("unexpected data after the CBOR data item");
+
+            return value;
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated CBOR data item", e);
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package de.offrange.client.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Class that extends {@link JsonReader}. It reads a single CBOR data item from a {@link ByteBuffer} and passes it to
+ * {@link com.google.gson.Gson} token by token, so no {@link com.google.gson.JsonElement} tree is built. It is the
+ * counterpart of {@link CborWriter}: in addition to the JSON data model, {@link #nextBytes()} reads a CBOR byte string.
+ * Byte strings are Base64 text for every other method and tags are ignored. This class is not thread-safe.
+ */
+public class CborReader extends JsonReader {
+
+    /**
+     * The maximum nesting depth of arrays and maps, so hostile input cannot overflow the stack.
+     */
+    private static final int MAX_DEPTH = 256;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+
+    private final ByteBuffer data;
+    private final PromotionReader promotion;
+
+    /**
+     * The number of items or entries left in each open array or map, {@code -1} if its length is indefinite.
+     */
+    private long[] remaining = new long[32];
+    private boolean[] maps = new boolean[32];
+    private String[] pathNames = new String[32];
+    private int[] pathIndices = new int[32];
+    private int depth;
+
+    /**
+     * Whether the next item is the key of the innermost map.
+     */
+    private boolean expectingName;
+    private boolean consumed;
+    private JsonToken peeked;
+
+    /**
+     * Constructs a CborReader instance.
+     * @param data the encoded data item, from its position to its limit.
+     */
+    public CborReader(ByteBuffer data) {
+        this(data, new PromotionReader());
+    }
+
+    private CborReader(ByteBuffer data, PromotionReader promotion) {
+        super(promotion);
+        this.data = Objects.requireNonNull(data);
+        this.promotion = promotion;
+        try {
+            super.beginObject();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(false, readContainerLength());
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        pop();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(true, readContainerLength());
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        pop();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if(peeked == JsonToken.NAME && promotion.promoted)
+            peeked = JsonToken.STRING;
+
+        if(peeked != null)
+            return peeked;
+
+        if(depth == 0){
+            if(consumed)
+                return peeked = JsonToken.END_DOCUMENT;
+        }else if((!maps[depth - 1] || expectingName) && atEnd()){
+            return peeked = maps[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+        }
+
+        int initial = skipTags();
+        if(expectingName){
+            if(initial >>> 5 != MAJOR_TEXT)
+                throw new IOException("CBOR map keys must be text strings");
+
+            return peeked = promotion.promoted ? JsonToken.STRING : JsonToken.NAME;
+        }
+
+        switch (initial >>> 5){
+            case MAJOR_UNSIGNED:
+            case MAJOR_NEGATIVE:
+                return peeked = JsonToken.NUMBER;
+            case MAJOR_BYTES:
+            case MAJOR_TEXT:
+                return peeked = JsonToken.STRING;
+            case MAJOR_ARRAY:
+                return peeked = JsonToken.BEGIN_ARRAY;
+            case MAJOR_MAP:
+                return peeked = JsonToken.BEGIN_OBJECT;
+            default:
+                switch (initial & 0x1F){
+                    case 20:
+                    case 21:
+                        return peeked = JsonToken.BOOLEAN;
+                    case 22:
+                    case 23:
+                        return peeked = JsonToken.NULL;
+                    case 25:
+                    case 26:
+                    case 27:
+                        return peeked = JsonToken.NUMBER;
+                    case INDEFINITE:
+                        throw new IOException("unexpected CBOR break");
+                    default:
+                        throw new IOException("unsupported CBOR simple value " + (initial & 0x1F));
+                }
+        }
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = readText(data.get() & 0x1F);
+        pathNames[depth - 1] = name;
+        expectingName = false;
+        peeked = null;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if(token != JsonToken.STRING && token != JsonToken.NUMBER)
+            throw unexpected("a string");
+
+        int initial = data.get() & 0xFF;
+        String value;
+        if(initial >>> 5 == MAJOR_TEXT)
+            value = readText(initial & 0x1F);
+        else if(initial >>> 5 == MAJOR_BYTES)
+            value = Base64.getEncoder().encodeToString(readBytes(MAJOR_BYTES, initial & 0x1F));
+        else
+            value = numberText(initial);
+
+        endValue();
+        return value;
+    }
+
+    /**
+     * Reads a CBOR byte string. Text is decoded as Base64, so values written as JSON strings can be read as well.
+     * @return the bytes of the byte string.
+     * @throws IOException if the data is malformed.
+     * @throws IllegalStateException if the next item is not a string.
+     */
+    public byte[] nextBytes() throws IOException {
+        if(peek() != JsonToken.STRING)
+            throw unexpected("a byte string");
+
+        int initial = data.get() & 0xFF;
+        byte[] value;
+        if(initial >>> 5 == MAJOR_BYTES)
+            value = readBytes(MAJOR_BYTES, initial & 0x1F);
+        else
+            value = Base64.getDecoder().decode(readText(initial & 0x1F));
+
+        endValue();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean value = (data.get() & 0x1F) == 21;
+        endValue();
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        data.get();
+        endValue();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        JsonToken token = peek();
+        if(token != JsonToken.NUMBER && token != JsonToken.STRING)
+            throw unexpected("a double");
+
+        int start = data.position();
+        int initial = data.get() & 0xFF;
+        double value;
+        switch (initial >>> 5){
+            case MAJOR_UNSIGNED:
+                long argument = readArgument(initial & 0x1F);
+                value = argument < 0 ? new BigInteger(Long.toUnsignedString(argument)).doubleValue() : argument;
+                break;
+            case MAJOR_NEGATIVE:
+                argument = readArgument(initial & 0x1F);
+                value = argument < 0 ? -1 - new BigInteger(Long.toUnsignedString(argument)).doubleValue() : -1 - argument;
+                break;
+            case MAJOR_TEXT:
+                try {
+                    value = Double.parseDouble(readText(initial & 0x1F));
+                } catch (NumberFormatException e) {
+                    data.position(start);
+                    throw e;
+                }
+                break;
+            case MAJOR_BYTES:
+                data.position(start);
+                throw new NumberFormatException("Expected a double but was a byte string at path " + getPath());
+            default:
+                value = readFloat(initial & 0x1F);
+        }
+
+        if(!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))){
+            data.position(start);
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + value + " at path " + getPath());
+        }
+
+        endValue();
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        int start = position(peek(), "a long");
+        long value = readLong(start);
+        endValue();
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        int start = position(peek(), "an int");
+        long value = readLong(start);
+        if((int) value != value){
+            data.position(start);
+            throw new NumberFormatException("Expected an int but was " + value + " at path " + getPath());
+        }
+
+        endValue();
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        switch (peek()){
+            case END_ARRAY:
+                endArray();
+                break;
+            case END_OBJECT:
+                endObject();
+                break;
+            case END_DOCUMENT:
+                break;
+            case NAME:
+                nextName();
+                pathNames[depth - 1] = "<skipped>";
+                break;
+            default:
+                skipItem(depth);
+                endValue();
+        }
+    }
+
+    /**
+     * Nothing is closed, the buffer belongs to the caller.
+     */
+    @Override
+    public void close() {}
+
+    @Override
+    public String getPath() {
+        return path(false);
+    }
+
+    @Override
+    public String getPreviousPath() {
+        return path(true);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " at path " + getPath();
+    }
+
+    private void expect(JsonToken token) throws IOException {
+        if(peek() != token)
+            throw unexpected(token.toString());
+    }
+
+    private IllegalStateException unexpected(String expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek() + " at path " + getPath());
+    }
+
+    /**
+     * @return the position of the next item, which must be a number or a string.
+     */
+    private int position(JsonToken token, String expected) throws IOException {
+        if(token != JsonToken.NUMBER && token != JsonToken.STRING)
+            throw unexpected(expected);
+
+        return data.position();
+    }
+
+    /**
+     * Reads an integer number, an integral floating-point number or a text string containing either. The position
+     * is reset if the item is not such a number.
+     */
+    private long readLong(int start) throws IOException {
+        int initial = data.get() & 0xFF;
+        switch (initial >>> 5){
+            case MAJOR_UNSIGNED:
+                long argument = readArgument(initial & 0x1F);
+                if(argument >= 0)
+                    return argument;
+                break;
+            case MAJOR_NEGATIVE:
+                argument = readArgument(initial & 0x1F);
+                if(argument >= 0)
+                    return -1 - argument;
+                break;
+            case MAJOR_TEXT:
+                String text = readText(initial & 0x1F);
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    double value = Double.parseDouble(text);
+                    if((long) value == value)
+                        return (long) value;
+                }
+                break;
+            case MAJOR_BYTES:
+                break;
+            default:
+                double value = readFloat(initial & 0x1F);
+                if((long) value == value)
+                    return (long) value;
+        }
+
+        data.position(start);
+        throw new NumberFormatException("Expected a long but was " + peek() + " at path " + getPath());
+    }
+
+    private String numberText(int initial) throws IOException {
+        int info = initial & 0x1F;
+        switch (initial >>> 5){
+            case MAJOR_UNSIGNED:
+                return Long.toUnsignedString(readArgument(info));
+            case MAJOR_NEGATIVE:
+                long argument = readArgument(info);
+                if(argument < 0)
+                    return BigInteger.ONE.negate().subtract(new BigInteger(Long.toUnsignedString(argument))).toString();
+
+                return Long.toString(-1 - argument);
+            default:
+                if(info == 27)
+                    return Double.toString(data.getDouble());
+
+                return Float.toString((float) readFloat(info));
+        }
+    }
+
+    private double readFloat(int info){
+        switch (info){
+            case 25:
+                return halfToFloat(data.getShort());
+            case 26:
+                return data.getFloat();
+            default:
+                return data.getDouble();
+        }
+    }
+
+    /**
+     * Finishes the item that was just read. If it was a map key that {@link com.google.gson.Gson} promoted to a
+     * value, the next item is its value, otherwise the innermost array or map moves on to its next item.
+     */
+    private void endValue() throws IOException {
+        peeked = null;
+        if(expectingName){
+            // moves the base class past the promoted name and its value, see PromotionReader
+            promotion.promoted = false;
+            super.nextString();
+            super.skipValue();
+            expectingName = false;
+            return;
+        }
+
+        if(depth == 0){
+            consumed = true;
+            return;
+        }
+
+        pathIndices[depth - 1]++;
+        if(remaining[depth - 1] > 0)
+            remaining[depth - 1]--;
+
+        expectingName = maps[depth - 1];
+    }
+
+    private void push(boolean map, long length) throws IOException {
+        if(depth == MAX_DEPTH)
+            throw new IOException("CBOR data item is nested too deeply");
+
+        if(depth == remaining.length){
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            maps = Arrays.copyOf(maps, depth * 2);
+            pathNames = Arrays.copyOf(pathNames, depth * 2);
+            pathIndices = Arrays.copyOf(pathIndices, depth * 2);
+        }
+
+        remaining[depth] = length;
+        maps[depth] = map;
+        pathNames[depth] = null;
+        pathIndices[depth] = 0;
+        depth++;
+        expectingName = map;
+        peeked = null;
+    }
+
+    private void pop() throws IOException {
+        if(remaining[depth - 1] < 0)
+            data.get();
+
+        depth--;
+        expectingName = false;
+        endValue();
+    }
+
+    private long readContainerLength() throws IOException {
+        int info = data.get() & 0x1F;
+        return info == INDEFINITE ? -1 : readLength(info);
+    }
+
+    /**
+     * @return true if the innermost array or map has no items left, its break byte is not consumed.
+     */
+    private boolean atEnd(){
+        long left = remaining[depth - 1];
+        if(left >= 0)
+            return left == 0;
+
+        return (peekByte() & 0xFF) == BREAK;
+    }
+
+    /**
+     * Consumes the tags in front of the next item.
+     * @return the initial byte of the item, which is not consumed.
+     */
+    private int skipTags() throws IOException {
+        int initial = peekByte() & 0xFF;
+        while (initial >>> 5 == MAJOR_TAG){
+            data.get();
+            readArgument(initial & 0x1F);
+            initial = peekByte() & 0xFF;
+        }
+        return initial;
+    }
+
+    private byte peekByte(){
+        if(!data.hasRemaining())
+            throw new BufferUnderflowException();
+
+        return data.get(data.position());
+    }
+
+    private void skipItem(int level) throws IOException {
+        if(level > MAX_DEPTH)
+            throw new IOException("CBOR data item is nested too deeply");
+
+        int initial = data.get() & 0xFF;
+        int major = initial >>> 5;
+        int info = initial & 0x1F;
+        switch (major){
+            case MAJOR_UNSIGNED:
+            case MAJOR_NEGATIVE:
+                readArgument(info);
+                break;
+            case MAJOR_BYTES:
+            case MAJOR_TEXT:
+                if(info != INDEFINITE){
+                    int length = (int) readLength(info);
+                    data.position(data.position() + length);
+                }else{
+                    readBytes(major, info);
+                }
+                break;
+            case MAJOR_ARRAY:
+            case MAJOR_MAP:
+                if(info == INDEFINITE){
+                    while (!readBreak())
+                        skipItem(level + 1);
+                }else{
+                    long count = readLength(info) * (major == MAJOR_MAP ? 2 : 1);
+                    for (long i = 0; i < count; i++)
+                        skipItem(level + 1);
+                }
+                break;
+            case MAJOR_TAG:
+                readArgument(info);
+                skipItem(level + 1);
+                break;
+            default:
+                if(info == INDEFINITE)
+                    throw new IOException("unexpected CBOR break");
+
+                if(info == 24)
+                    data.get();
+                else if(info > 24)
+                    readFloat(info);
+        }
+    }
+
+    private String readText(int info) throws IOException {
+        if(info == INDEFINITE || !data.hasArray())
+            return new String(readBytes(MAJOR_TEXT, info), StandardCharsets.UTF_8);
+
+        int length = (int) readLength(info);
+        String text = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+        data.position(data.position() + length);
+        return text;
+    }
+
+    /**
+     * Reads a byte or text string, which may be split into chunks of the same major type if its length is indefinite.
+     */
+    private byte[] readBytes(int major, int info) throws IOException {
+        if(info != INDEFINITE){
+            byte[] bytes = new byte[(int) readLength(info)];
+            data.get(bytes);
+            return bytes;
+        }
+
+        byte[] bytes = new byte[0];
+        while (!readBreak()){
+            int initial = data.get() & 0xFF;
+            if(initial >>> 5 != major || (initial & 0x1F) == INDEFINITE)
+                throw new IOException("invalid chunk in an indefinite-length CBOR string");
+
+            int length = (int) readLength(initial & 0x1F);
+            int offset = bytes.length;
+            bytes = Arrays.copyOf(bytes, Math.addExact(offset, length));
+            data.get(bytes, offset, length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Consumes a break byte if it is next.
+     * @return true if the break byte was consumed, false otherwise.
+     */
+    private boolean readBreak(){
+        if((peekByte() & 0xFF) != BREAK)
+            return false;
+
+        data.get();
+        return true;
+    }
+
+    /**
+     * Reads the length of a string, array or map. Every element takes at least one byte, so a length that exceeds
+     * the remaining bytes is rejected before anything is allocated for it.
+     */
+    private long readLength(int info) throws IOException {
+        long length = readArgument(info);
+        if(length < 0 || length > data.remaining())
+            throw new IOException("CBOR length exceeds the remaining data");
+
+        return length;
+    }
+
+    private long readArgument(int info) throws IOException {
+        if(info < 24)
+            return info;
+
+        switch (info){
+            case 24:
+                return data.get() & 0xFFL;
+            case 25:
+                return data.getShort() & 0xFFFFL;
+            case 26:
+                return data.getInt() & 0xFFFFFFFFL;
+            case 27:
+                return data.getLong();
+            default:
+                throw new IOException("invalid CBOR additional information " + info);
+        }
+    }
+
+    private String path(boolean previous){
+        StringBuilder path = new StringBuilder("$");
+        for (int i = 0; i < depth; i++) {
+            if(maps[i]){
+                if(pathNames[i] != null)
+                    path.append('.').append(pathNames[i]);
+            }else{
+                int index = pathIndices[i];
+                path.append('[').append(previous && index > 0 && i == depth - 1 ? index - 1 : index).append(']');
+            }
+        }
+        return path.toString();
+    }
+
+    private static float halfToFloat(short half){
+        int bits = half & 0xFFFF;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        float value;
+        if(exponent == 0)
+            value = mantissa * 0x1p-24f;
+        else if(exponent == 0x1F)
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        else
+            value = (1 + mantissa / 1024f) * (float) Math.pow(2, exponent - 15);
+
+        return (bits & 0x8000) != 0 ? -value : value;
+    }
+
+    /**
+     * {@link Reader} the {@link JsonReader} base class reads from. Gson reads the keys of a {@code Map} by promoting
+     * the next name to a value, which only works on its own readers: it peeks the name from the base class. The base
+     * class is therefore kept inside an endless object of empty names, {@code {"":"","":"",...}}, handed out one
+     * character per call, so it never reads ahead. Handing out the opening quote of a name means a key is being
+     * promoted, once the key was read from the CBOR data the base class is moved past that name and its value.
+     */
+    private static final class PromotionReader extends Reader {
+
+        private static final String ENTRY = "\"\":\"\",";
+
+        private boolean started;
+        private int index;
+        private boolean promoted;
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if(length == 0)
+                return 0;
+
+            if(!started){
+                started = true;
+                buffer[offset] = '{';
+                return 1;
+            }
+
+            if(index == 0)
+                promoted = true;
+
+            buffer[offset] = ENTRY.charAt(index);
+            index = (index + 1) % ENTRY.length();
+            return 1;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
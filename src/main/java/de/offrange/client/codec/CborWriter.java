@@ -0,0 +1,291 @@
+package de.offrange.client.codec;
+
+import com.google.gson.stream.JsonWriter;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.gson.Utf8BufferWriter;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that extends {@link JsonWriter}. It writes the values passed by {@link com.google.gson.Gson} as CBOR into a
+ * {@link BufferOutputStream} instead of JSON text. Arrays and objects are written with indefinite length, so nothing
+ * has to be buffered. In addition to the JSON data model, {@link #value(byte[])} writes a CBOR byte string.
+ * This class is not thread-safe.
+ */
+public class CborWriter extends JsonWriter {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+
+    private static final int BEGIN_ARRAY = 0x9F;
+    private static final int BEGIN_MAP = 0xBF;
+    private static final int BREAK = 0xFF;
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int FLOAT = 0xFA;
+    private static final int DOUBLE = 0xFB;
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final BufferOutputStream out;
+    private final Utf8BufferWriter textWriter;
+
+    /**
+     * The name of the current object member, written together with its value, so members with a {@code null} value
+     * can be skipped.
+     */
+    private String deferredName;
+
+    /**
+     * Constructs a CborWriter instance.
+     * @param out the stream the encoded values are written to.
+     */
+    public CborWriter(BufferOutputStream out) {
+        super(UNWRITABLE_WRITER);
+        this.out = Objects.requireNonNull(out);
+        this.textWriter = new Utf8BufferWriter(out);
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        writeDeferredName();
+        out.write(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        out.write(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        writeDeferredName();
+        out.write(BEGIN_MAP);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        if(deferredName != null)
+            throw new IllegalStateException("expected a value for " + deferredName);
+
+        out.write(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        Objects.requireNonNull(name);
+        if(deferredName != null)
+            throw new IllegalStateException("expected a value for " + deferredName);
+
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if(value == null)
+            return nullValue();
+
+        writeDeferredName();
+        writeText(value);
+        return this;
+    }
+
+    /**
+     * Raw JSON cannot be embedded into CBOR.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public JsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("raw JSON values cannot be written as CBOR");
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if(deferredName != null){
+            if(!getSerializeNulls()){
+                deferredName = null;
+                return this;
+            }
+
+            writeDeferredName();
+        }
+
+        out.write(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        writeDeferredName();
+        out.write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) {
+        if(value == null)
+            return nullValue();
+
+        return value((boolean) value);
+    }
+
+    /**
+     * Writes a {@code float} value. The value is written in single precision.
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public JsonWriter value(float value) {
+        return value((double) value);
+    }
+
+    /**
+     * Writes a {@code double} value. The value is written in single precision if that is lossless.
+     * @param value the value to write.
+     * @return this writer.
+     */
+    @Override
+    public JsonWriter value(double value) {
+        if(!isLenient() && (Double.isNaN(value) || Double.isInfinite(value)))
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+
+        writeDeferredName();
+        if((double) (float) value == value || Double.isNaN(value)){
+            out.ensureRemaining(1 + Float.BYTES).put((byte) FLOAT).putFloat((float) value);
+        }else{
+            out.ensureRemaining(1 + Double.BYTES).put((byte) DOUBLE).putDouble(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        writeDeferredName();
+        if(value >= 0)
+            writeHead(MAJOR_UNSIGNED, value);
+        else
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) {
+        if(value == null)
+            return nullValue();
+
+        if(value instanceof Double || value instanceof Float)
+            return value(value.doubleValue());
+
+        if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return value(value.longValue());
+
+        String text = value.toString();
+        try {
+            return value(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            return value(Double.parseDouble(text));
+        }
+    }
+
+    /**
+     * Writes a CBOR byte string.
+     * @param value the bytes to write, may be {@code null}.
+     * @return this writer.
+     */
+    public JsonWriter value(byte[] value) {
+        if(value == null)
+            return nullValue();
+
+        writeDeferredName();
+        writeHead(MAJOR_BYTES, value.length);
+        out.write(value, 0, value.length);
+        return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    private void writeDeferredName(){
+        if(deferredName == null)
+            return;
+
+        String name = deferredName;
+        deferredName = null;
+        writeText(name);
+    }
+
+    /**
+     * Writes a UTF-8 text string. Unpaired surrogates are written as {@code '?'} like {@link Utf8BufferWriter} does.
+     * @param text the text to write.
+     */
+    private void writeText(String text){
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c < 0x80){
+                length++;
+            }else if(c < 0x800){
+                length += 2;
+            }else if(Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))){
+                length += 4;
+                i++;
+            }else if(Character.isSurrogate(c)){
+                length++;
+            }else{
+                length += 3;
+            }
+        }
+
+        writeHead(MAJOR_TEXT, length);
+        textWriter.write(text, 0, text.length());
+        textWriter.close();
+    }
+
+    /**
+     * Writes the initial byte of a data item and its argument in the shortest form.
+     * @param major the major type.
+     * @param argument the argument, interpreted as unsigned.
+     */
+    private void writeHead(int major, long argument){
+        int type = major << 5;
+        ByteBuffer buffer = out.ensureRemaining(1 + Long.BYTES);
+        if(argument >= 0 && argument < 24){
+            buffer.put((byte) (type | argument));
+        }else if(argument >= 0 && argument <= 0xFF){
+            buffer.put((byte) (type | 24)).put((byte) argument);
+        }else if(argument >= 0 && argument <= 0xFFFF){
+            buffer.put((byte) (type | 25)).putShort((short) argument);
+        }else if(argument >= 0 && argument <= 0xFFFFFFFFL){
+            buffer.put((byte) (type | 26)).putInt((int) argument);
+        }else{
+            buffer.put((byte) (type | 27)).putLong(argument);
+        }
+    }
+}
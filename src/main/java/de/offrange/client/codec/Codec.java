@@ -0,0 +1,40 @@
+package de.offrange.client.codec;
+
+import de.offrange.client.BufferOutputStream;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface that specifies how models are encoded into the bytes of a frame or datagram and decoded from them.
+ * {@link JsonCodec} is used by default, {@link CborCodec} is a compact binary alternative.
+ * <br>
+ * A {@link de.offrange.client.tcp.TcpClient} only uses a codec other than JSON if the server lists its
+ * {@link #getName()} during the handshake. Implementations must be thread-safe.
+ */
+public interface Codec {
+
+    /**
+     * @return the name the codec is negotiated with, e.g. {@code "json"}.
+     */
+    String getName();
+
+    /**
+     * Encodes a value and its runtime type into a stream.
+     * @param value the value to encode.
+     * @param out the stream the encoded value is written to.
+     * @throws IOException if the value cannot be encoded.
+     */
+    void encode(Object value, BufferOutputStream out) throws IOException;
+
+    /**
+     * Decodes a value from a buffer.
+     * @param data the encoded value, from its position to its limit. Its content may be modified.
+     * @param type the type of the value.
+     * @param <V> the type of the value.
+     * @return the decoded value, {@code null} if the data is empty.
+     * @throws IOException if the data is not a valid encoding of {@code type}.
+     */
+    <V> V decode(ByteBuffer data, Type type) throws IOException;
+}
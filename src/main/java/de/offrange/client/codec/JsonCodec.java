@@ -0,0 +1,63 @@
+package de.offrange.client.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.gson.Utf8BufferReader;
+import de.offrange.client.gson.Utf8BufferWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that implements the {@link Codec} interface. It encodes values as UTF-8 JSON with {@link Gson}.
+ */
+public class JsonCodec implements Codec {
+
+    public static final String NAME = "json";
+
+    private final Gson gson;
+
+    /**
+     * Constructs a JsonCodec instance.
+     * @param gson the {@link Gson} instance the values are serialized and deserialized with.
+     */
+    public JsonCodec(Gson gson) {
+        this.gson = Objects.requireNonNull(gson);
+    }
+
+    /**
+     * @return the {@link Gson} instance the values are serialized and deserialized with.
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, BufferOutputStream out) throws IOException {
+        Utf8BufferWriter writer = new Utf8BufferWriter(out);
+        try {
+            gson.toJson(value, writer);
+        } catch (JsonIOException e) {
+            throw new IOException(e);
+        }
+        writer.close();
+    }
+
+    @Override
+    public <V> V decode(ByteBuffer data, Type type) throws IOException {
+        try {
+            return gson.fromJson(new Utf8BufferReader(data), type);
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package de.offrange.client.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Interface that specifies a compression algorithm that is negotiated by its {@link #getName()} during the handshake
+ * of a {@link de.offrange.client.tcp.TcpClient}. {@link DeflateCompression} is always available, faster algorithms can
+ * be added to the classpath as a {@link ServiceLoader} service of this interface. Implementations must be thread-safe.
+ */
+public interface Compression {
+
+    /**
+     * @return the name the compression is negotiated with, e.g. {@code "deflate"}.
+     */
+    String getName();
+
+    /**
+     * Creates a new {@link Compressor}. Compressors hold native or buffer resources, so they should be reused.
+     * @return the new compressor.
+     */
+    Compressor newCompressor();
+
+    /**
+     * @return every compression registered as a {@link ServiceLoader} service on the classpath, followed by a
+     * {@link DeflateCompression}.
+     */
+    static List<Compression> loadInstalled(){
+        List<Compression> compressions = new ArrayList<>();
+        for (Compression compression : ServiceLoader.load(Compression.class))
+            compressions.add(compression);
+
+        compressions.add(new DeflateCompression());
+        return compressions;
+    }
+}
@@ -0,0 +1,35 @@
+package de.offrange.client.compression;
+
+import de.offrange.client.BufferOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface that specifies a reusable compressor and decompressor created by a {@link Compression}. Every frame is
+ * compressed on its own, so frames can be decompressed independently of each other.
+ * This interface is not thread-safe, a compressor must only be used by one thread at a time.
+ */
+public interface Compressor {
+
+    /**
+     * Compresses the remaining bytes of {@code input} and writes the result to {@code out}.
+     * @param input the data to compress.
+     * @param out the stream the compressed data is written to.
+     */
+    void compress(ByteBuffer input, BufferOutputStream out);
+
+    /**
+     * Decompresses the remaining bytes of {@code input} and writes the result to {@code out}.
+     * @param input the compressed data.
+     * @param out the stream the decompressed data is written to.
+     * @param maxLength the maximum number of bytes the decompressed data may have.
+     * @throws IOException if the data is malformed or larger than {@code maxLength}.
+     */
+    void decompress(ByteBuffer input, BufferOutputStream out, int maxLength) throws IOException;
+
+    /**
+     * Releases the resources of this compressor. It cannot be used afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,114 @@
+package de.offrange.client.compression;
+
+import de.offrange.client.BufferOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Class that implements the {@link Compression} interface with raw DEFLATE (RFC 1951) from {@link java.util.zip}.
+ */
+public class DeflateCompression implements Compression {
+
+    public static final String NAME = "deflate";
+
+    /**
+     * The number of bytes that are made available in the output stream before every deflate or inflate call.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int level;
+
+    /**
+     * Constructs a DeflateCompression instance with {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public DeflateCompression() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs a DeflateCompression instance.
+     * @param level the compression level from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public DeflateCompression(int level) {
+        if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("invalid compression level " + level);
+
+        this.level = level;
+    }
+
+    /**
+     * @return the compression level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Compressor newCompressor() {
+        return new DeflateCompressor();
+    }
+
+    /**
+     * Class that implements the {@link Compressor} interface. The {@link Deflater} and the {@link Inflater} are
+     * created on first use and reset for every frame.
+     */
+    private class DeflateCompressor implements Compressor {
+
+        private Deflater deflater;
+        private Inflater inflater;
+
+        @Override
+        public void compress(ByteBuffer input, BufferOutputStream out) {
+            if(deflater == null)
+                deflater = new Deflater(level, true);
+
+            try {
+                deflater.setInput(input);
+                deflater.finish();
+                while (!deflater.finished())
+                    deflater.deflate(out.ensureRemaining(CHUNK_SIZE));
+            } finally {
+                deflater.reset();
+            }
+        }
+
+        @Override
+        public void decompress(ByteBuffer input, BufferOutputStream out, int maxLength) throws IOException {
+            if(inflater == null)
+                inflater = new Inflater(true);
+
+            try {
+                inflater.setInput(input);
+                while (!inflater.finished()){
+                    if(inflater.inflate(out.ensureRemaining(CHUNK_SIZE)) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IOException("truncated deflate data");
+
+                    if(out.size() > maxLength)
+                        throw new IOException("decompressed data exceeds " + maxLength + " bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.reset();
+            }
+        }
+
+        @Override
+        public void close() {
+            if(deflater != null)
+                deflater.end();
+
+            if(inflater != null)
+                inflater.end();
+        }
+    }
+}
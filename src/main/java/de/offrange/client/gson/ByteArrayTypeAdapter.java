@@ -4,18 +4,26 @@ import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
+import de.offrange.client.codec.CborReader;
+import de.offrange.client.codec.CborWriter;
 
 import java.io.IOException;
 import java.util.Base64;
 
 /**
  * Class that extends {@link TypeAdapter}. This is used to serialize byte arrays into a {@link Base64} string and
- * deserialize a base64 string into a byte[] object
+ * deserialize a base64 string into a byte[] object. A {@link CborWriter} gets the bytes as a byte string instead,
+ * which a {@link CborReader} reads back without Base64.
  */
 public class ByteArrayTypeAdapter extends TypeAdapter<byte[]> {
 
     @Override
     public void write(JsonWriter out, byte[] value) throws IOException {
+        if(out instanceof CborWriter){
+            ((CborWriter) out).value(value);
+            return;
+        }
+
         out.value(value == null ? null : Base64.getEncoder().encodeToString(value));
     }
 
@@ -26,6 +34,9 @@ public class ByteArrayTypeAdapter extends TypeAdapter<byte[]> {
             return null;
         }
 
+        if(in instanceof CborReader)
+            return ((CborReader) in).nextBytes();
+
         return Base64.getDecoder().decode(in.nextString());
     }
 }
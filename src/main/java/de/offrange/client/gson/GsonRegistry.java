@@ -0,0 +1,109 @@
+package de.offrange.client.gson;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import de.offrange.client.codec.CborCodec;
+import de.offrange.client.codec.JsonCodec;
+import de.offrange.client.models.CodeCheckModel;
+import de.offrange.client.models.HandshakeModel;
+import de.offrange.client.models.UdpModel;
+
+import java.lang.reflect.Type;
+import java.util.Objects;
+
+/**
+ * Class that holds a {@link Gson} instance configured for the protocol, together with the codecs built on it.
+ * {@link Gson} caches the type adapter of every type it has mapped once, so sharing one registry between clients
+ * means the reflective adapters are built once per process instead of once per client.
+ * <br>
+ * {@link #getDefault()} is shared by every client that is not given a registry of its own. Adapters for known model
+ * classes can be built ahead of the first message with {@link #warmUp(Type...)}. Models that should not be mapped
+ * reflectively can get a hand-written or generated {@link com.google.gson.TypeAdapter}, either with
+ * {@link com.google.gson.annotations.JsonAdapter} on the model class or with {@link #withTypeAdapter(Type, Object)}.
+ * This class is thread-safe.
+ */
+public class GsonRegistry {
+
+    private static final GsonRegistry DEFAULT = new GsonRegistry(newBuilder().create())
+            .warmUp(HandshakeModel.class, CodeCheckModel.class, UdpModel.class);
+
+    private final Gson gson;
+    private final JsonCodec jsonCodec;
+    private final CborCodec cborCodec;
+
+    /**
+     * Constructs a GsonRegistry instance.
+     * @param gson the {@link Gson} instance, it should be created from {@link #newBuilder()}.
+     */
+    public GsonRegistry(Gson gson) {
+        this.gson = Objects.requireNonNull(gson);
+        this.jsonCodec = new JsonCodec(gson);
+        this.cborCodec = new CborCodec(gson);
+    }
+
+    /**
+     * @return the registry shared by every client that has no registry of its own.
+     */
+    public static GsonRegistry getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return a {@link GsonBuilder} with the configuration of the protocol: snake case field names, {@code byte[]} as
+     * Base64 and no HTML escaping.
+     */
+    public static GsonBuilder newBuilder(){
+        return new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+    }
+
+    /**
+     * @return the {@link Gson} instance of this registry.
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * @return the {@link JsonCodec} that uses the {@link Gson} instance of this registry.
+     */
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    /**
+     * @return the {@link CborCodec} that uses the {@link Gson} instance of this registry.
+     */
+    public CborCodec getCborCodec() {
+        return cborCodec;
+    }
+
+    /**
+     * Builds and caches the type adapters of the given types and of the types they reference, so the first message
+     * of such a type is not slowed down by reflection.
+     * @param types the types to prepare.
+     * @return this registry.
+     */
+    public GsonRegistry warmUp(Type... types){
+        for (Type type : types)
+            gson.getAdapter(TypeToken.get(type));
+
+        return this;
+    }
+
+    /**
+     * Creates a new registry that additionally uses a type adapter. The adapters cached by this registry are not
+     * shared with the new one, so the new registry should be created once and reused.
+     * @param type the type the adapter is used for.
+     * @param typeAdapter a {@link com.google.gson.TypeAdapter}, {@link com.google.gson.JsonSerializer},
+     *                    {@link com.google.gson.JsonDeserializer} or {@link com.google.gson.InstanceCreator}.
+     * @return the new registry.
+     */
+    public GsonRegistry withTypeAdapter(Type type, Object typeAdapter){
+        return new GsonRegistry(gson.newBuilder().registerTypeAdapter(type, typeAdapter).create());
+    }
+}
@@ -0,0 +1,122 @@
+package de.offrange.client.gson;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that extends {@link Reader}. It decodes UTF-8 text directly from a {@link ByteBuffer}, so JSON can be parsed by
+ * {@link com.google.gson.Gson} without copying the bytes into an intermediate {@link String} first.
+ * <br>
+ * The text is read from the position of the buffer to its limit, and the position is advanced while reading.
+ * Malformed input is decoded as {@link #REPLACEMENT}. This class is not thread-safe.
+ */
+public class Utf8BufferReader extends Reader {
+
+    /**
+     * The character malformed input is decoded as.
+     */
+    public static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteBuffer buffer;
+
+    /**
+     * The low surrogate of a supplementary character that did not fit into the last read.
+     */
+    private char pendingLowSurrogate;
+
+    /**
+     * Constructs an Utf8BufferReader instance.
+     * @param buffer the encoded text, from its position to its limit.
+     */
+    public Utf8BufferReader(ByteBuffer buffer) {
+        this.buffer = Objects.requireNonNull(buffer);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        if(len == 0)
+            return 0;
+
+        int count = 0;
+        if(pendingLowSurrogate != 0){
+            cbuf[off + count++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (count < len && buffer.hasRemaining()){
+            int lead = buffer.get() & 0xFF;
+            if(lead < 0x80){
+                cbuf[off + count++] = (char) lead;
+                continue;
+            }
+
+            int codePoint = decode(lead);
+            if(codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT){
+                cbuf[off + count++] = (char) codePoint;
+                continue;
+            }
+
+            cbuf[off + count++] = Character.highSurrogate(codePoint);
+            if(count < len)
+                cbuf[off + count++] = Character.lowSurrogate(codePoint);
+            else
+                pendingLowSurrogate = Character.lowSurrogate(codePoint);
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public boolean ready() {
+        return pendingLowSurrogate != 0 || buffer.hasRemaining();
+    }
+
+    @Override
+    public void close() {}
+
+    /**
+     * Decodes a multi-byte sequence. A continuation byte that does not belong to the sequence is not consumed.
+     * @param lead the first byte of the sequence.
+     * @return the decoded code point, or {@link #REPLACEMENT} if the sequence is malformed.
+     */
+    private int decode(int lead){
+        int continuationBytes;
+        int minCodePoint;
+        int codePoint;
+        if(lead >= 0xC2 && lead <= 0xDF){
+            continuationBytes = 1;
+            minCodePoint = 0x80;
+            codePoint = lead & 0x1F;
+        }else if(lead >= 0xE0 && lead <= 0xEF){
+            continuationBytes = 2;
+            minCodePoint = 0x800;
+            codePoint = lead & 0x0F;
+        }else if(lead >= 0xF0 && lead <= 0xF4){
+            continuationBytes = 3;
+            minCodePoint = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            codePoint = lead & 0x07;
+        }else{
+            return REPLACEMENT;
+        }
+
+        for (int i = 0; i < continuationBytes; i++) {
+            if(!buffer.hasRemaining())
+                return REPLACEMENT;
+
+            int next = buffer.get(buffer.position()) & 0xFF;
+            if((next & 0xC0) != 0x80)
+                return REPLACEMENT;
+
+            buffer.position(buffer.position() + 1);
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+
+        if(codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+            return REPLACEMENT;
+
+        return codePoint;
+    }
+}
@@ -0,0 +1,108 @@
+package de.offrange.client.gson;
+
+import de.offrange.client.BufferOutputStream;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that extends {@link Writer}. It encodes text as UTF-8 directly into the pooled buffer of a
+ * {@link BufferOutputStream}, so JSON can be written by {@link com.google.gson.Gson} without building an intermediate
+ * {@link String} first.
+ * <br>
+ * Unpaired surrogates are encoded as {@code '?'}. A high surrogate at the end of the text is only written by
+ * {@link #close()}, which must be called before the buffer is taken from the stream. This class is not thread-safe.
+ */
+public class Utf8BufferWriter extends Writer {
+
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final BufferOutputStream out;
+
+    /**
+     * The high surrogate of the last write that is waiting for its low surrogate.
+     */
+    private char pendingHighSurrogate;
+
+    /**
+     * Constructs an Utf8BufferWriter instance.
+     * @param out the stream the encoded text is written to.
+     */
+    public Utf8BufferWriter(BufferOutputStream out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    @Override
+    public void write(int c) {
+        encode(out.ensureRemaining(MAX_BYTES_PER_CHAR + 1), (char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        ByteBuffer buffer = out.ensureRemaining(len * MAX_BYTES_PER_CHAR + 1);
+        for (int i = off; i < off + len; i++)
+            encode(buffer, cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        Objects.checkFromIndexSize(off, len, str.length());
+        ByteBuffer buffer = out.ensureRemaining(len * MAX_BYTES_PER_CHAR + 1);
+        for (int i = off; i < off + len; i++)
+            encode(buffer, str.charAt(i));
+    }
+
+    @Override
+    public void flush() {}
+
+    /**
+     * Writes a pending high surrogate as {@code '?'}. Does not close the {@link BufferOutputStream}.
+     */
+    @Override
+    public void close() {
+        if(pendingHighSurrogate == 0)
+            return;
+
+        pendingHighSurrogate = 0;
+        out.write('?');
+    }
+
+    /**
+     * Encodes a single character.
+     * @param buffer the buffer of the stream, it must have room for at least {@link #MAX_BYTES_PER_CHAR} + 1 bytes.
+     * @param c the character to encode.
+     */
+    private void encode(ByteBuffer buffer, char c){
+        if(pendingHighSurrogate != 0){
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if(Character.isLowSurrogate(c)){
+                int codePoint = Character.toCodePoint(high, c);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+
+            buffer.put((byte) '?');
+        }
+
+        if(c < 0x80){
+            buffer.put((byte) c);
+        }else if(c < 0x800){
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }else if(Character.isHighSurrogate(c)){
+            pendingHighSurrogate = c;
+        }else if(Character.isLowSurrogate(c)){
+            buffer.put((byte) '?');
+        }else{
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+}
@@ -17,6 +17,15 @@ public interface DiscoveryHandler {
      */
     void onDiscovered(DiscoveredEndpoint discoveredEndpoint);
 
+    /**
+     * Called by a continuous discovery when an endpoint did not respond within
+     * {@link DiscoveryClient#getEndpointTtl()} and was removed from the
+     * {@link de.offrange.client.udp.EndpointRegistry}.
+     * @param lostEndpoint the {@link DiscoveredEndpoint} that stopped responding.
+     * @see DiscoveryClient#startContinuousDiscovery()
+     */
+    default void onLost(DiscoveredEndpoint lostEndpoint){}
+
     /**
      * Called when the {@link DiscoveryClient} has finished discovering a server on the local network.
      * @param discoveredEndpoints represents a list containing all {@link DiscoveredEndpoint}s the client
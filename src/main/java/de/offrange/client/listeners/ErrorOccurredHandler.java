@@ -43,6 +43,11 @@ public interface ErrorOccurredHandler {
          */
         RECEIVE,
 
+        /**
+         * Error occurred while reconnecting to the server, the client gave up.
+         */
+        RECONNECT,
+
 
         /**
          * Error occurred while canceling the {@link DiscoveryClient}.
@@ -0,0 +1,266 @@
+package de.offrange.client.metrics;
+
+import de.offrange.client.listeners.ErrorOccurredHandler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Class that collects the metrics of a {@link de.offrange.client.tcp.TcpClient} or
+ * {@link de.offrange.client.udp.DiscoveryClient}: byte and message counters, error counts per
+ * {@link ErrorOccurredHandler.Type}, gauges such as queue depths and {@link LatencyHistogram}s for handshake,
+ * encryption, decryption, response and ping round-trip times.
+ * <br>
+ * Every value recorded by an instance is also recorded by its parent, by default the instance returned by
+ * {@link #getGlobal()}, so the parent holds the aggregate of all clients. Clients record into {@link #getGlobal()}
+ * directly unless they are given an instance of their own, since every instance holds five histograms. Recording is
+ * lock-free and does not allocate, so it can stay enabled in production. Several clients may share one instance, but gauges with the same
+ * name replace each other. This class is thread-safe.
+ * @see MetricsExporter
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    private static final ErrorOccurredHandler.Type[] ERROR_TYPES = ErrorOccurredHandler.Type.values();
+    private static final ClientMetrics GLOBAL = new ClientMetrics(null);
+
+    private final ClientMetrics parent;
+
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder[] errors = new LongAdder[ERROR_TYPES.length];
+
+    private final LatencyHistogram handshakeTime = new LatencyHistogram();
+    private final LatencyHistogram encryptTime = new LatencyHistogram();
+    private final LatencyHistogram decryptTime = new LatencyHistogram();
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+    private final LatencyHistogram roundTripTime = new LatencyHistogram();
+
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a ClientMetrics instance that records into {@link #getGlobal()} as well.
+     */
+    public ClientMetrics() {
+        this(GLOBAL);
+    }
+
+    /**
+     * Constructs a ClientMetrics instance.
+     * @param parent the instance every value is recorded into as well, {@code null} if there is none.
+     */
+    public ClientMetrics(ClientMetrics parent) {
+        this.parent = parent;
+        for (int i = 0; i < errors.length; i++)
+            errors[i] = new LongAdder();
+    }
+
+    /**
+     * @return the instance that aggregates the metrics of every client whose metrics were constructed with
+     * {@link #ClientMetrics()}.
+     */
+    public static ClientMetrics getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * @return the instance every value is recorded into as well, {@code null} if there is none.
+     */
+    public ClientMetrics getParent() {
+        return parent;
+    }
+
+    /**
+     * Records a sent frame or datagram.
+     * @param bytes the number of bytes sent.
+     */
+    public void recordSent(int bytes){
+        bytesSent.add(bytes);
+        messagesSent.increment();
+        if(parent != null)
+            parent.recordSent(bytes);
+    }
+
+    /**
+     * Records a received frame or datagram.
+     * @param bytes the number of bytes received.
+     */
+    public void recordReceived(int bytes){
+        bytesReceived.add(bytes);
+        messagesReceived.increment();
+        if(parent != null)
+            parent.recordReceived(bytes);
+    }
+
+    /**
+     * Records a reported error.
+     * @param type the state in which the error occurred.
+     */
+    public void recordError(ErrorOccurredHandler.Type type){
+        errors[type.ordinal()].increment();
+        if(parent != null)
+            parent.recordError(type);
+    }
+
+    /**
+     * Records the time from opening a connection until the handshake was done.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordHandshake(long nanos){
+        handshakeTime.record(nanos);
+        if(parent != null)
+            parent.recordHandshake(nanos);
+    }
+
+    /**
+     * Records the time it took to encrypt a frame.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordEncrypt(long nanos){
+        encryptTime.record(nanos);
+        if(parent != null)
+            parent.recordEncrypt(nanos);
+    }
+
+    /**
+     * Records the time it took to decrypt a frame.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordDecrypt(long nanos){
+        decryptTime.record(nanos);
+        if(parent != null)
+            parent.recordDecrypt(nanos);
+    }
+
+    /**
+     * Records the time from sending a request or discovery broadcast until its response was received.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordResponseTime(long nanos){
+        responseTime.record(nanos);
+        if(parent != null)
+            parent.recordResponseTime(nanos);
+    }
+
+    /**
+     * Records the round-trip time of a ping.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordRoundTrip(long nanos){
+        roundTripTime.record(nanos);
+        if(parent != null)
+            parent.recordRoundTrip(nanos);
+    }
+
+    /**
+     * Sets a gauge, whose value is read whenever the gauges are requested. Gauges are not passed to the parent.
+     * @param name the name of the gauge, a gauge with the same name is replaced.
+     * @param gauge the function that returns the current value.
+     */
+    public void setGauge(String name, LongSupplier gauge){
+        gauges.put(Objects.requireNonNull(name), Objects.requireNonNull(gauge));
+    }
+
+    /**
+     * Removes a gauge.
+     * @param name the name of the gauge.
+     * @param gauge the function that was set, the gauge is only removed if it was not replaced in the meantime.
+     */
+    public void removeGauge(String name, LongSupplier gauge){
+        gauges.remove(name, gauge);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    /**
+     * @param type the state in which the errors occurred.
+     * @return the number of reported errors of the type.
+     */
+    public long getErrorCount(ErrorOccurredHandler.Type type){
+        return errors[type.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ErrorOccurredHandler.Type type : ERROR_TYPES)
+            counts.put(type.name(), errors[type.ordinal()].sum());
+
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    @Override
+    public LatencySnapshot getHandshakeTime() {
+        return handshakeTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getEncryptTime() {
+        return encryptTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getDecryptTime() {
+        return decryptTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getResponseTime() {
+        return responseTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRoundTripTime() {
+        return roundTripTime.snapshot();
+    }
+
+    /**
+     * Resets every counter and histogram of this instance. Gauges and the parent are not affected.
+     */
+    @Override
+    public void reset() {
+        bytesSent.reset();
+        bytesReceived.reset();
+        messagesSent.reset();
+        messagesReceived.reset();
+        for (LongAdder error : errors)
+            error.reset();
+
+        handshakeTime.reset();
+        encryptTime.reset();
+        decryptTime.reset();
+        responseTime.reset();
+        roundTripTime.reset();
+    }
+}
@@ -0,0 +1,70 @@
+package de.offrange.client.metrics;
+
+import java.util.Map;
+
+/**
+ * Interface that describes the attributes and operations of a {@link ClientMetrics} instance registered with the
+ * platform MBean server by a {@link MetricsExporter}.
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     * @return the number of bytes sent, including the length prefix of every frame.
+     */
+    long getBytesSent();
+
+    /**
+     * @return the number of bytes received, including the length prefix of every frame.
+     */
+    long getBytesReceived();
+
+    /**
+     * @return the number of frames or datagrams sent.
+     */
+    long getMessagesSent();
+
+    /**
+     * @return the number of frames or datagrams received.
+     */
+    long getMessagesReceived();
+
+    /**
+     * @return the number of reported errors by the name of their {@link de.offrange.client.listeners.ErrorOccurredHandler.Type}.
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return the current value of every gauge by its name, e.g. the number of pending requests.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return the time from opening a connection until the handshake was done.
+     */
+    LatencySnapshot getHandshakeTime();
+
+    /**
+     * @return the time it took to encrypt a frame.
+     */
+    LatencySnapshot getEncryptTime();
+
+    /**
+     * @return the time it took to decrypt a frame.
+     */
+    LatencySnapshot getDecryptTime();
+
+    /**
+     * @return the time from sending a request or discovery broadcast until its response was received.
+     */
+    LatencySnapshot getResponseTime();
+
+    /**
+     * @return the round-trip time of the pings sent over the connection.
+     */
+    LatencySnapshot getRoundTripTime();
+
+    /**
+     * Resets every counter and histogram. Gauges are not affected.
+     */
+    void reset();
+}
@@ -0,0 +1,118 @@
+package de.offrange.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class that records durations in nanoseconds into buckets of logarithmically growing width, like an HDR histogram.
+ * Durations below {@code 32} nanoseconds are recorded exactly, larger durations with a relative error of at most
+ * {@code 1/16}. Durations above about 18 minutes are recorded as 18 minutes.
+ * <br>
+ * {@link #record(long)} does not allocate and does not lock, so it can be called on every message. This class is
+ * thread-safe, a {@link LatencySnapshot} taken while values are recorded may miss some of them.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Every power of two is split into {@code 2^(SUB_BUCKET_BITS - 1)} buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos the duration in nanoseconds, negative durations are recorded as 0.
+     */
+    public void record(long nanos){
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax;
+        while (value > (currentMax = max.get())){
+            if(max.compareAndSet(currentMax, value))
+                break;
+        }
+    }
+
+    /**
+     * @return the number of recorded durations.
+     */
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * @return a snapshot of the recorded durations.
+     */
+    public LatencySnapshot snapshot(){
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++){
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        long maxValue = max.get();
+        return new LatencySnapshot(total, total == 0 ? 0 : sum.sum() / (double) total, maxValue,
+                Math.min(valueAt(snapshot, total, 0.5), maxValue), Math.min(valueAt(snapshot, total, 0.9), maxValue),
+                Math.min(valueAt(snapshot, total, 0.99), maxValue), Math.min(valueAt(snapshot, total, 0.999), maxValue));
+    }
+
+    /**
+     * Removes every recorded duration.
+     */
+    public synchronized void reset(){
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts.set(i, 0);
+
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * @return the upper bound of the bucket that holds the duration at the quantile.
+     */
+    private static long valueAt(long[] counts, long total, double quantile){
+        if(total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if(seen >= rank)
+                return upperBoundOf(i);
+        }
+
+        return MAX_VALUE;
+    }
+
+    private static int indexOf(long value){
+        if(value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long upperBoundOf(int index){
+        if(index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package de.offrange.client.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * Class that registers {@link ClientMetrics} instances as MXBeans, so they can be read by JMX tools such as JConsole.
+ * Nothing is registered unless this class is used. Every instance is registered under the name
+ * {@code de.offrange.client:type=ClientMetrics,name=<name>}.
+ */
+public class MetricsExporter {
+
+    /**
+     * The domain of the object names the metrics are registered under.
+     */
+    public static final String DOMAIN = "de.offrange.client";
+
+    private final MBeanServer server;
+
+    /**
+     * Constructs a MetricsExporter instance that registers with the platform MBean server.
+     */
+    public MetricsExporter() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Constructs a MetricsExporter instance.
+     * @param server the MBean server the metrics are registered with.
+     */
+    public MetricsExporter(MBeanServer server) {
+        this.server = Objects.requireNonNull(server);
+    }
+
+    /**
+     * Registers metrics, replacing the metrics that were registered under the same name.
+     * @param metrics the metrics, e.g. {@link ClientMetrics#getGlobal()}.
+     * @param name the name the metrics are registered under, e.g. the address of the server.
+     * @return the object name the metrics are registered under.
+     * @throws JMException if the name is not a valid object name value or the metrics could not be registered.
+     */
+    public ObjectName register(ClientMetrics metrics, String name) throws JMException {
+        Objects.requireNonNull(metrics);
+        ObjectName objectName = objectName(name);
+        try {
+            server.registerMBean(metrics, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(objectName);
+            server.registerMBean(metrics, objectName);
+        }
+
+        return objectName;
+    }
+
+    /**
+     * Unregisters the metrics registered under a name. Does nothing if there are none.
+     * @param name the name the metrics were registered under.
+     * @throws JMException if the name is not a valid object name value or the metrics could not be unregistered.
+     */
+    public void unregister(String name) throws JMException {
+        try {
+            server.unregisterMBean(objectName(name));
+        } catch (InstanceNotFoundException ignored) {}
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=ClientMetrics,name=" + ObjectName.quote(Objects.requireNonNull(name)));
+    }
+}
@@ -10,6 +10,9 @@ public class CodeCheckModel implements IModel {
 
     private boolean isCodeCorrect;
 
+    private byte[] sessionTicket;
+    private long sessionLifetime;
+
     /**
      * @return the code that was passed with {@link #setCode(String)}
      */
@@ -31,4 +34,19 @@ public class CodeCheckModel implements IModel {
     public boolean isCodeCorrect() {
         return isCodeCorrect;
     }
+
+    /**
+     * @return the session ticket the server issued with a correct code evaluation, {@code null} if it issued none.
+     * @see de.offrange.client.models.HandshakeModel.Capability#SESSION_RESUMPTION
+     */
+    public byte[] getSessionTicket() {
+        return sessionTicket;
+    }
+
+    /**
+     * @return the time in milliseconds the session ticket is valid for.
+     */
+    public long getSessionLifetime() {
+        return sessionLifetime;
+    }
 }
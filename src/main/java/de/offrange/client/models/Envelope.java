@@ -0,0 +1,69 @@
+package de.offrange.client.models;
+
+/**
+ * Model class that implements the {@link IModel} interface. It wraps the data models exchanged after the code check
+ * if both sides negotiated {@link HandshakeModel.Capability#ENVELOPE}, so a response can be matched to its request.
+ * This model is serialized and deserialized by {@link com.google.gson.Gson}.
+ * @param <T> the wrapped model.
+ */
+public class Envelope<T extends IModel> implements IModel {
+
+    private Long correlationId;
+
+    private T payload;
+
+    private Long ping;
+
+    private Long pong;
+
+    /**
+     * Constructs an Envelope instance.
+     * @param correlationId the id that the response to this envelope carries, {@code null} if no response is expected.
+     * @param payload the wrapped model.
+     */
+    public Envelope(Long correlationId, T payload) {
+        this.correlationId = correlationId;
+        this.payload = payload;
+    }
+
+    /**
+     * Constructs an Envelope that asks the server for a pong, if both sides negotiated
+     * {@link HandshakeModel.Capability#PING}.
+     * @param timestamp the {@link System#nanoTime()} the ping is sent at, the server copies it into the pong.
+     * @param <T> the wrapped model.
+     * @return the ping envelope, without a payload.
+     */
+    public static <T extends IModel> Envelope<T> ping(long timestamp){
+        Envelope<T> envelope = new Envelope<>(null, null);
+        envelope.ping = timestamp;
+        return envelope;
+    }
+
+    /**
+     * @return the id that matches a response to its request, {@code null} if the envelope is not part of a request.
+     */
+    public Long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * @return the wrapped model.
+     */
+    public T getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the timestamp of a ping envelope, {@code null} if the envelope is not a ping.
+     */
+    public Long getPing() {
+        return ping;
+    }
+
+    /**
+     * @return the timestamp of the ping a pong envelope answers, {@code null} if the envelope is not a pong.
+     */
+    public Long getPong() {
+        return pong;
+    }
+}
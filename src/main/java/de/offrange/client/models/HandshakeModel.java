@@ -1,11 +1,19 @@
 package de.offrange.client.models;
 
+import com.google.gson.annotations.SerializedName;
+
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.KeyException;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Model class that implements the {@link IModel} interface. This model is used for the handshake between the client and the server.
@@ -14,6 +22,11 @@ public class HandshakeModel implements IModel {
 
     private RSAKey rsaKeyInformation;
     private byte[] aesKey;
+    private List<Capability> capabilities;
+    private List<String> codecs;
+    private List<String> compressions;
+    private byte[] sessionTicket;
+    private byte[] resumptionNonce;
 
     /**
      * @return {@link RSAKey} that contains information for the public RSA key.
@@ -37,6 +50,169 @@ public class HandshakeModel implements IModel {
         this.aesKey = aesKey;
     }
 
+    /**
+     * @return the session ticket the client resumes a session with, {@code null} if a new session is started.
+     */
+    public byte[] getSessionTicket() {
+        return sessionTicket;
+    }
+
+    /**
+     * Sets the session ticket to resume a session instead of sending a new AES key. Resumption replies are sent
+     * without RSA encryption, since the ticket is opaque and the nonce is public.
+     * @param sessionTicket the ticket issued by the server for an earlier session.
+     */
+    public void setSessionTicket(byte[] sessionTicket) {
+        this.sessionTicket = sessionTicket;
+    }
+
+    /**
+     * @return the random nonce the key of the resumed session is derived with, {@code null} if a new session is started.
+     * @see de.offrange.client.tcp.SessionTicket#deriveKey(byte[])
+     */
+    public byte[] getResumptionNonce() {
+        return resumptionNonce;
+    }
+
+    /**
+     * Sets the random nonce the key of the resumed session is derived with.
+     * @param resumptionNonce the nonce.
+     */
+    public void setResumptionNonce(byte[] resumptionNonce) {
+        this.resumptionNonce = resumptionNonce;
+    }
+
+    /**
+     * The server lists every {@link Capability} it supports, the client answers with the capabilities it selected.
+     * Servers that do not know about capabilities send none, so every capability is optional.
+     * @return the list of capabilities, never {@code null}.
+     */
+    public List<Capability> getCapabilities() {
+        if(capabilities == null)
+            capabilities = new ArrayList<>();
+
+        return capabilities;
+    }
+
+    /**
+     * @param capability the capability to check.
+     * @return true if the capability is listed by this model, false otherwise.
+     */
+    public boolean hasCapability(Capability capability){
+        return capabilities != null && capabilities.contains(capability);
+    }
+
+    /**
+     * Adds a capability to this model if it is not already listed.
+     * @param capability the capability to add.
+     */
+    public void addCapability(Capability capability){
+        if(!hasCapability(capability))
+            getCapabilities().add(capability);
+    }
+
+    /**
+     * The server lists the names of every {@link de.offrange.client.codec.Codec} it supports besides JSON, the client
+     * answers with the codec it selected. Servers that do not know about codecs send none, so JSON is used.
+     * @return the list of codec names, never {@code null}.
+     */
+    public List<String> getCodecs() {
+        if(codecs == null)
+            codecs = new ArrayList<>();
+
+        return codecs;
+    }
+
+    /**
+     * @param codec the name of the codec to check.
+     * @return true if the codec is listed by this model, false otherwise.
+     */
+    public boolean hasCodec(String codec){
+        return codecs != null && codecs.contains(codec);
+    }
+
+    /**
+     * Adds a codec to this model if it is not already listed.
+     * @param codec the name of the codec to add.
+     */
+    public void addCodec(String codec){
+        if(!hasCodec(codec))
+            getCodecs().add(codec);
+    }
+
+    /**
+     * The server lists the names of every {@link de.offrange.client.compression.Compression} it supports, the client
+     * answers with the compression it selected. If a compression was selected, the plaintext of every frame after the
+     * handshake starts with a flag byte that is 1 if the rest of the frame is compressed and 0 otherwise.
+     * @return the list of compression names, never {@code null}.
+     */
+    public List<String> getCompressions() {
+        if(compressions == null)
+            compressions = new ArrayList<>();
+
+        return compressions;
+    }
+
+    /**
+     * @param compression the name of the compression to check.
+     * @return true if the compression is listed by this model, false otherwise.
+     */
+    public boolean hasCompression(String compression){
+        return compressions != null && compressions.contains(compression);
+    }
+
+    /**
+     * Adds a compression to this model if it is not already listed.
+     * @param compression the name of the compression to add.
+     */
+    public void addCompression(String compression){
+        if(!hasCompression(compression))
+            getCompressions().add(compression);
+    }
+
+    /**
+     * @return true if this model lists any capability, codec or compression. A server that lists none expects no
+     * selection from the client.
+     */
+    public boolean hasSelections(){
+        return (capabilities != null && !capabilities.isEmpty()) || (codecs != null && !codecs.isEmpty())
+                || (compressions != null && !compressions.isEmpty());
+    }
+
+    /**
+     * Enum representing optional protocol features that are negotiated during the handshake.
+     * Capabilities the client does not know are deserialized as {@code null} and ignored.
+     */
+    public enum Capability{
+        /**
+         * The session is encrypted with {@link de.offrange.client.RsaAesCryptography.AesMode#GCM} instead of
+         * {@link de.offrange.client.RsaAesCryptography.AesMode#ECB}.
+         */
+        @SerializedName("aes_gcm")
+        AES_GCM,
+
+        /**
+         * Data models are wrapped in an {@link Envelope}. The server copies the correlation id of a request into its
+         * response.
+         */
+        @SerializedName("envelope")
+        ENVELOPE,
+
+        /**
+         * The server issues a session ticket with a successful code evaluation. A later connection can send the ticket
+         * instead of a new AES key to skip the RSA encryption and the code check.
+         */
+        @SerializedName("session_resumption")
+        SESSION_RESUMPTION,
+
+        /**
+         * The server answers an {@link Envelope} that carries a ping timestamp with an envelope that carries the same
+         * timestamp as pong and no payload. Requires {@link #ENVELOPE}.
+         */
+        @SerializedName("ping")
+        PING
+    }
+
     /**
      * Class that contains all necessary information for the public RSA key such as {@code exponent} and {@code modulus}.
      */
@@ -46,14 +222,41 @@ public class HandshakeModel implements IModel {
 
         /**
          * @return a {@link PublicKey} composed of the exponent sent by the server and the modulus sent by the server.
+         * @throws KeyException if the exponent or modulus is missing or does not form a valid RSA public key.
          */
-        public PublicKey toPublicKey(){
+        public PublicKey toPublicKey() throws KeyException {
+            checkComplete();
             try {
                 return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(new BigInteger(1, modulus), new BigInteger(1, exponent)));
             } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
-                e.printStackTrace();
+                throw new KeyException("invalid rsa key information", e);
+            }
+        }
+
+        /**
+         * Computes the SHA-256 fingerprint of the key, over the length-prefixed modulus followed by the length-prefixed
+         * exponent as they were sent by the server. This is much cheaper than {@link #toPublicKey()} and identifies
+         * the key in a {@link de.offrange.client.tcp.PublicKeyCache}.
+         * @return the fingerprint.
+         * @throws KeyException if the exponent or modulus is missing.
+         */
+        public byte[] getFingerprint() throws KeyException {
+            checkComplete();
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, modulus.length));
+                digest.update(modulus);
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, exponent.length));
+                digest.update(exponent);
+                return digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new KeyException("SHA-256 is not available", e);
             }
-            return null;
+        }
+
+        private void checkComplete() throws InvalidKeyException {
+            if(modulus == null || exponent == null)
+                throw new InvalidKeyException("rsa key information without modulus or exponent");
         }
     }
 }
@@ -14,6 +14,8 @@ public class UdpModel {
 
     private EndpointAddress address;
 
+    private Long requestId;
+
     /**
      * Constructs a UdpModel instance with a {@link String name}.
      * @param name the name of the software or os
@@ -52,6 +54,23 @@ public class UdpModel {
         return address;
     }
 
+    /**
+     * @return the id of the request a response answers, or the id of a request. {@code null} if the server does not
+     * copy request ids into its responses.
+     */
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Sets the id of a request, which the server copies into its response, so the response can be matched to the
+     * request it answers even if the request was sent several times.
+     * @param requestId the id of the request.
+     */
+    public void setRequestId(Long requestId) {
+        this.requestId = requestId;
+    }
+
     /**
      * @return true if nothing is null and <pre>{@code getType() == UdpType.RESPONSE}</pre>
      */
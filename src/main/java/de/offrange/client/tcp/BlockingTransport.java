@@ -0,0 +1,340 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.BufferPool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Transport} that uses a blocking {@link Socket}. Frames are read on its own {@link ClientHandler} thread and
+ * written on its own {@link Writer} thread, which are created by a {@link ThreadFactory}, so they can be virtual
+ * threads.
+ * @see TransportMode#BLOCKING
+ */
+class BlockingTransport implements Transport {
+
+    /**
+     * Size of the buffer that coalesces the frames of one batch into as few socket writes as possible.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Marker queued to stop the {@link Writer} once the frames queued before it were written.
+     */
+    private static final PendingWrite CLOSE = new PendingWrite(null);
+
+    /**
+     * Size of the chunks in which frames in direct buffers are copied from and to the socket streams.
+     */
+    private static final int COPY_CHUNK_SIZE = 8 * 1024;
+
+    private final Socket socket = new Socket();
+    private final Listener listener;
+    private final ThreadFactory threadFactory;
+    private final BufferPool bufferPool;
+    private final int maxFrameSize;
+
+    private DataInputStream inputStream;
+    private OutputStream outputStream;
+    private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<>();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final CountDownLatch writerStopped = new CountDownLatch(1);
+    private final Object pauseLock = new Object();
+    private int pauseCount;
+    private volatile Thread writerThread;
+
+    /**
+     * Constructs a BlockingTransport instance.
+     * @param listener the listener that processes received frames.
+     * @param threadFactory the factory that creates the reading and the writing thread.
+     * @param bufferPool the pool the buffers of received frames are taken from.
+     * @param maxFrameSize the maximum number of bytes a received frame may have.
+     */
+    BlockingTransport(Listener listener, ThreadFactory threadFactory, BufferPool bufferPool, int maxFrameSize) {
+        this.listener = listener;
+        this.threadFactory = threadFactory;
+        this.bufferPool = bufferPool;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public void connect(InetSocketAddress address, int timeout) throws IOException {
+        socket.connect(address, timeout);
+        socket.setTcpNoDelay(true);
+        inputStream = new DataInputStream(socket.getInputStream());
+        outputStream = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+    }
+
+    @Override
+    public void start() {
+        Thread writer = threadFactory.newThread(new Writer());
+        writerThread = writer;
+        writer.start();
+        threadFactory.newThread(new ClientHandler()).start();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(ByteBuffer frame) {
+        PendingWrite pending = new PendingWrite(frame);
+        writeQueue.add(pending);
+
+        // the writer may have stopped before the frame was queued
+        if(closed.get() && writeQueue.remove(pending))
+            pending.fail(new ClosedChannelException());
+
+        return pending.getFuture();
+    }
+
+    @Override
+    public void pauseReading() {
+        synchronized (pauseLock){
+            pauseCount++;
+        }
+    }
+
+    @Override
+    public void resumeReading() {
+        synchronized (pauseLock){
+            if(pauseCount > 0 && --pauseCount == 0)
+                pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * The {@link Writer} writes the queued frames and closes the socket. If this method is called by the writer
+     * itself, e.g. from a callback of a written frame, it returns at once and the socket is closed after the
+     * drain timeout at the latest.
+     */
+    @Override
+    public void close(long drainTimeout) throws IOException {
+        if(!closed.compareAndSet(false, true))
+            return;
+
+        writeQueue.add(CLOSE);
+        Thread writer = writerThread;
+        if(writer == null){
+            abort();
+            return;
+        }
+
+        if(writer == Thread.currentThread()){
+            CompletableFuture.delayedExecutor(drainTimeout, TimeUnit.MILLISECONDS).execute(this::closeSocket);
+            return;
+        }
+
+        try {
+            writerStopped.await(drainTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        abort();
+    }
+
+    @Override
+    public void abort() throws IOException {
+        closed.set(true);
+        wakeReader();
+        failQueued(new ClosedChannelException());
+        writeQueue.add(CLOSE);
+        socket.close();
+    }
+
+    /**
+     * Closes the connection because of a failure and notifies the listener, unless the connection was already
+     * closed.
+     * @param cause the exception that closed the connection.
+     */
+    private void fail(Exception cause){
+        boolean notify = closed.compareAndSet(false, true);
+        wakeReader();
+        writeQueue.add(CLOSE);
+        closeSocket();
+        if(notify)
+            listener.onClosed(cause);
+    }
+
+    /**
+     * Wakes the {@link ClientHandler} if it waits while reading is paused, so it notices that the connection was
+     * closed.
+     */
+    private void wakeReader(){
+        synchronized (pauseLock){
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits while reading is paused. Called by the {@link ClientHandler} between two frames.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private void awaitResumed() throws InterruptedException {
+        synchronized (pauseLock){
+            while (pauseCount > 0 && !closed.get())
+                pauseLock.wait();
+        }
+    }
+
+    private void closeSocket(){
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Completes every queued frame exceptionally.
+     * @param cause the reason the frames could not be written.
+     */
+    private void failQueued(Exception cause){
+        PendingWrite pending;
+        while ((pending = writeQueue.poll()) != null){
+            if(pending != CLOSE)
+                pending.fail(cause);
+        }
+    }
+
+    /**
+     * Writes a frame into the write buffer.
+     * @param frame the frame including its length prefix.
+     * @param chunk the buffer used to copy frames that are not backed by an array.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void writeFrame(ByteBuffer frame, byte[] chunk) throws IOException {
+        if(frame.hasArray()){
+            outputStream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            frame.position(frame.limit());
+            return;
+        }
+
+        while (frame.hasRemaining()){
+            int length = Math.min(chunk.length, frame.remaining());
+            frame.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Read raw bytes from the server into a buffer of the {@link BufferPool}.
+     * @param chunk the buffer used to copy frames into buffers that are not backed by an array.
+     * @return the received frame without its length prefix, it must be given back to the pool.
+     * @throws IOException the stream has been closed and the contained input stream does not support reading after
+     * close, the frame exceeds the maximum frame size, or another I/O error occurs.
+     */
+    private ByteBuffer readFully(byte[] chunk) throws IOException {
+        int length = Transport.checkFrameLength(inputStream.readInt(), maxFrameSize);
+        ByteBuffer received = bufferPool.acquire(length);
+        try {
+            if(received.hasArray()){
+                inputStream.readFully(received.array(), received.arrayOffset(), length);
+                return received;
+            }
+
+            while (received.hasRemaining()){
+                int read = Math.min(chunk.length, received.remaining());
+                inputStream.readFully(chunk, 0, read);
+                received.put(chunk, 0, read);
+            }
+            return received.flip();
+        } catch (IOException e) {
+            bufferPool.release(received);
+            throw e;
+        }
+    }
+
+    /**
+     * Class implements {@link Runnable} used to read frames from the server until the connection is closed. Every frame
+     * is passed to {@link Listener#onFrame(ByteBuffer)} on the reading thread and given back to the
+     * {@link BufferPool} afterwards. While reading is paused, the thread waits before it reads the next frame.
+     */
+    private class ClientHandler implements Runnable{
+
+        @Override
+        public void run() {
+            byte[] chunk = bufferPool.isDirect() ? new byte[COPY_CHUNK_SIZE] : null;
+            try {
+                while (!closed.get()){
+                    ByteBuffer frame = readFully(chunk);
+                    try {
+                        listener.onFrame(frame);
+                    } finally {
+                        bufferPool.release(frame);
+                    }
+
+                    awaitResumed();
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Class implements {@link Runnable} that is the only thread writing to the socket. It takes every frame that is
+     * queued at once, writes them through the write buffer and flushes once per batch, so frames queued by many
+     * threads share few socket writes. Once it reaches the {@link #CLOSE} marker, it closes the socket and fails the
+     * frames queued after the marker.
+     */
+    private class Writer implements Runnable{
+
+        @Override
+        public void run() {
+            List<PendingWrite> batch = new ArrayList<>(MAX_BATCH_FRAMES);
+            byte[] chunk = new byte[COPY_CHUNK_SIZE];
+            try {
+                while (true){
+                    batch.add(writeQueue.take());
+                    writeQueue.drainTo(batch, MAX_BATCH_FRAMES - 1);
+
+                    int written = 0;
+                    while (written < batch.size() && batch.get(written) != CLOSE)
+                        writeFrame(batch.get(written++).getFrame(), chunk);
+
+                    outputStream.flush();
+                    for (int i = 0; i < written; i++)
+                        batch.get(i).complete();
+
+                    if(written < batch.size()){
+                        List<PendingWrite> unwritten = new ArrayList<>(batch.subList(written, batch.size()));
+                        batch.clear();
+                        closeSocket();
+                        for (PendingWrite pending : unwritten){
+                            if(pending != CLOSE)
+                                pending.fail(new ClosedChannelException());
+                        }
+                        return;
+                    }
+
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                for (PendingWrite pending : batch){
+                    if(pending != CLOSE)
+                        pending.fail(e);
+                }
+                fail(e);
+            } catch (InterruptedException e) {
+                fail(e);
+            } finally {
+                failQueued(new ClosedChannelException());
+                writerStopped.countDown();
+            }
+        }
+    }
+}
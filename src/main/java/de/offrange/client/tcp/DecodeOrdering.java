@@ -0,0 +1,24 @@
+package de.offrange.client.tcp;
+
+/**
+ * Enum representing the order in which a {@link TcpClient} dispatches models that were decoded in parallel.
+ * @see TcpClient#setDecodeExecutor(java.util.concurrent.Executor)
+ */
+public enum DecodeOrdering {
+    /**
+     * Models are dispatched one at a time in the order their frames were received, like without a decode executor.
+     */
+    STRICT,
+
+    /**
+     * Responses to pending requests complete as soon as they are decoded, since every request is its own stream.
+     * Every other model is dispatched like with {@link #STRICT}.
+     */
+    RESPONSES_UNORDERED,
+
+    /**
+     * Models are dispatched as soon as they are decoded, possibly by several threads at the same time, so the
+     * {@link de.offrange.client.listeners.ReceiveHandler} must be thread-safe.
+     */
+    UNORDERED
+}
@@ -0,0 +1,217 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.BufferPool;
+import de.offrange.client.models.IModel;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Class that decrypts and decodes the frames of one connection on an {@link Executor}, so the thread that reads from
+ * the connection only copies the frames. At most {@code maxPending} frames are decoded or wait to be dispatched at
+ * the same time. Once every slot is taken, reading from the {@link Transport} is paused until a slot is free again,
+ * so the reading thread is never blocked.
+ * <br>
+ * With {@link DecodeOrdering#STRICT}, decoded models wait in a reorder buffer until every model received before them
+ * was dispatched, and are dispatched by one worker at a time.
+ */
+class DecodePipeline {
+
+    private static final Object NO_MODEL = new Object();
+
+    private final Executor executor;
+    private final BufferPool bufferPool;
+    private final DecodeOrdering ordering;
+    private final Transport transport;
+    private final Stage stage;
+    private final int maxPending;
+
+    private final Object pendingLock = new Object();
+    private int pending;
+    private boolean paused;
+
+    private long nextSequence;
+
+    private final Object reorderLock = new Object();
+    private final Map<Long, Object> decoded = new HashMap<>();
+    private long nextDispatch;
+    private boolean dispatching;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a DecodePipeline instance.
+     * @param executor the executor the frames are decoded on.
+     * @param bufferPool the pool the frames are copied into.
+     * @param transport the connection the frames are read from, it is paused while every slot is taken.
+     * @param maxPending the maximum number of frames that are decoded or wait to be dispatched, at least 1.
+     * @param ordering the order decoded models are dispatched in.
+     * @param stage the decoding and dispatching of the connection.
+     */
+    DecodePipeline(Executor executor, BufferPool bufferPool, Transport transport, int maxPending, DecodeOrdering ordering, Stage stage) {
+        this.executor = Objects.requireNonNull(executor);
+        this.bufferPool = Objects.requireNonNull(bufferPool);
+        this.transport = Objects.requireNonNull(transport);
+        this.ordering = Objects.requireNonNull(ordering);
+        this.stage = Objects.requireNonNull(stage);
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Copies a frame and submits it to be decoded. Must only be called by the thread that reads from the connection.
+     * If this takes the last free slot, reading is paused, so no further frame is submitted until a slot is free.
+     * @param frame the frame, its content is copied before this method returns.
+     */
+    void submit(ByteBuffer frame){
+        synchronized (pendingLock){
+            if(++pending >= maxPending && !paused){
+                paused = true;
+                transport.pauseReading();
+            }
+        }
+
+        ByteBuffer copy = bufferPool.acquire(frame.remaining());
+        copy.put(frame).flip();
+
+        long sequence = nextSequence++;
+        try {
+            executor.execute(() -> decode(sequence, copy));
+        } catch (RejectedExecutionException e) {
+            bufferPool.release(copy);
+            complete(sequence, NO_MODEL);
+            stage.onError(e);
+        }
+    }
+
+    /**
+     * @return the number of frames that are decoded or wait to be dispatched.
+     */
+    int getPendingCount(){
+        synchronized (pendingLock){
+            return pending;
+        }
+    }
+
+    /**
+     * Drops every model that has not been dispatched yet, e.g. because the connection was replaced.
+     */
+    void close(){
+        closed = true;
+    }
+
+    private void decode(long sequence, ByteBuffer frame){
+        Object result = NO_MODEL;
+        try {
+            if(!closed){
+                IModel model = stage.decode(frame);
+                if(model != null && !(ordering == DecodeOrdering.RESPONSES_UNORDERED && stage.completeRequest(model)))
+                    result = model;
+            }
+        } catch (RuntimeException e) {
+            stage.onError(e);
+        } finally {
+            bufferPool.release(frame);
+        }
+
+        if(ordering == DecodeOrdering.UNORDERED){
+            releaseSlot();
+            dispatch(result);
+            return;
+        }
+
+        complete(sequence, result);
+    }
+
+    /**
+     * Puts a decoded model into the reorder buffer and dispatches every model that is next in line, unless another
+     * worker is already dispatching.
+     * @param sequence the position of the frame in the connection.
+     * @param result the decoded model, or {@link #NO_MODEL} if the frame did not yield a model to dispatch.
+     */
+    private void complete(long sequence, Object result){
+        synchronized (reorderLock){
+            decoded.put(sequence, result);
+            if(dispatching)
+                return;
+
+            dispatching = true;
+        }
+
+        while (true){
+            Object next;
+            synchronized (reorderLock){
+                next = decoded.remove(nextDispatch);
+                if(next == null){
+                    dispatching = false;
+                    return;
+                }
+
+                nextDispatch++;
+            }
+
+            releaseSlot();
+            dispatch(next);
+        }
+    }
+
+    /**
+     * Frees the slot of a frame and resumes reading if it was paused because every slot was taken.
+     */
+    private void releaseSlot(){
+        synchronized (pendingLock){
+            if(--pending >= maxPending || !paused)
+                return;
+
+            paused = false;
+        }
+
+        transport.resumeReading();
+    }
+
+    private void dispatch(Object result){
+        if(result == NO_MODEL || closed)
+            return;
+
+        try {
+            stage.onDecoded((IModel) result);
+        } catch (RuntimeException e) {
+            stage.onError(e);
+        }
+    }
+
+    /**
+     * Interface used by a {@link DecodePipeline} to decode and dispatch the frames of a connection.
+     */
+    interface Stage{
+
+        /**
+         * Decrypts and decodes a frame. Called by several workers at the same time.
+         * @param frame the frame.
+         * @return the decoded model, {@code null} if the frame could not be decoded.
+         */
+        IModel decode(ByteBuffer frame);
+
+        /**
+         * Completes the pending request a decoded model responds to. Called by several workers at the same time.
+         * @param model the decoded model.
+         * @return true if the model completed a request, false if it has to be dispatched.
+         */
+        boolean completeRequest(IModel model);
+
+        /**
+         * Dispatches a decoded model.
+         * @param model the decoded model.
+         */
+        void onDecoded(IModel model);
+
+        /**
+         * Reports an exception thrown while decoding or dispatching.
+         * @param e the exception.
+         */
+        void onError(Exception e);
+    }
+}
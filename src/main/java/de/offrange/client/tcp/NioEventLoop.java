@@ -0,0 +1,195 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.ThreadFactories;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that serves the connections of {@link TcpClient}s in {@link TransportMode#NIO} with one or a few selector
+ * threads. Every connection is bound to one selector thread, and all events of a connection, including calls of
+ * the {@link de.offrange.client.listeners.ReceiveHandler}, happen on that thread.
+ * <br>
+ * One event loop can be shared by any number of clients. Clients that do not get an event loop with
+ * {@link TcpClient#setNioEventLoop(NioEventLoop)} use {@link #getDefault()}.
+ */
+public class NioEventLoop implements Closeable {
+
+    /**
+     * Size of the buffer each selector thread reads into.
+     */
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static NioEventLoop defaultEventLoop;
+
+    private final Worker[] workers;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a NioEventLoop instance with one selector thread.
+     * @throws IOException if the selector cannot be opened.
+     */
+    public NioEventLoop() throws IOException {
+        this(1);
+    }
+
+    /**
+     * Constructs a NioEventLoop instance with daemon platform threads. Connections are distributed over the selector
+     * threads round-robin.
+     * @param threads the number of selector threads.
+     * @throws IOException if a selector cannot be opened.
+     */
+    public NioEventLoop(int threads) throws IOException {
+        this(threads, ThreadFactories.platform("nio-event-loop", true));
+    }
+
+    /**
+     * Constructs a NioEventLoop instance. Connections are distributed over the selector threads round-robin.
+     * @param threads the number of selector threads.
+     * @param threadFactory the factory that creates the selector threads.
+     * @throws IOException if a selector cannot be opened.
+     */
+    public NioEventLoop(int threads, ThreadFactory threadFactory) throws IOException {
+        if(threads < 1)
+            throw new IllegalArgumentException("an event loop needs at least one thread");
+
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(Selector.open());
+
+        for (Worker worker : workers)
+            threadFactory.newThread(worker).start();
+    }
+
+    /**
+     * @return the event loop shared by every client that has no event loop set. It has one selector thread and
+     * is created on the first call.
+     * @throws IOException if the selector cannot be opened.
+     */
+    public static synchronized NioEventLoop getDefault() throws IOException {
+        if(defaultEventLoop == null)
+            defaultEventLoop = new NioEventLoop();
+
+        return defaultEventLoop;
+    }
+
+    /**
+     * @return the number of selector threads.
+     */
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return true if this event loop was not closed, false otherwise.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Registers a connected transport with one of the selector threads.
+     * @param transport the transport to register.
+     */
+    void register(NioTransport transport){
+        if(!running)
+            throw new IllegalStateException("the event loop is closed");
+
+        Worker worker = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+        worker.registrations.add(transport);
+        worker.selector.wakeup();
+    }
+
+    /**
+     * Stops every selector thread and closes every connection served by this event loop.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Worker worker : workers)
+            worker.selector.wakeup();
+    }
+
+    /**
+     * Class that runs the selector of one thread.
+     */
+    private class Worker implements Runnable, Executor{
+
+        private final Selector selector;
+        private final Queue<NioTransport> registrations = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        private Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Runs a task on the selector thread, e.g. to resume reading a connection.
+         * @param task the task.
+         */
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running){
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    break;
+                }
+
+                NioTransport registration;
+                while ((registration = registrations.poll()) != null)
+                    registration.register(selector, this);
+
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NioTransport transport = (NioTransport) key.attachment();
+                    try {
+                        if(key.isValid() && key.isWritable())
+                            transport.onWritable();
+
+                        if(key.isValid() && key.isReadable())
+                            transport.onReadable(readBuffer);
+                    } catch (IOException | RuntimeException e) {
+                        transport.fail(e);
+                    }
+                }
+            }
+
+            NioTransport registration;
+            while ((registration = registrations.poll()) != null)
+                registration.fail(new IOException("the event loop was closed"));
+
+            for (SelectionKey key : selector.keys())
+                ((NioTransport) key.attachment()).fail(new IOException("the event loop was closed"));
+
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
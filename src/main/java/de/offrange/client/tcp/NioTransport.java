@@ -0,0 +1,393 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.BufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Transport} that uses a non-blocking {@link SocketChannel} served by a {@link NioEventLoop}. Frames are
+ * assembled from the bytes the event loop reads, so no thread is blocked per connection.
+ * <br>
+ * A frame is written directly by the calling thread if nothing is queued. Otherwise it is queued and the event loop
+ * writes the queued frames with one gathering write per batch. A graceful {@link #close(long)} lets the event loop
+ * write the queued frames before the channel is closed.
+ * <br>
+ * While reading is paused, the channel is not selected for reading, and the bytes that were already read are kept
+ * until reading resumes, so the selector thread keeps serving the other connections.
+ * @see TransportMode#NIO
+ */
+class NioTransport implements Transport {
+
+    private final NioEventLoop eventLoop;
+    private final Listener listener;
+    private final BufferPool bufferPool;
+    private final int maxFrameSize;
+
+    private SocketChannel channel;
+    private volatile SelectionKey key;
+    private volatile Thread selectorThread;
+    private Executor selectorExecutor;
+
+    private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+    private ByteBuffer body;
+    private ByteBuffer unread;
+    private volatile int pauseCount;
+
+    private final Queue<PendingWrite> writeQueue = new ArrayDeque<>();
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_BATCH_FRAMES];
+
+    private volatile boolean closed;
+    private boolean draining;
+
+    /**
+     * Constructs a NioTransport instance.
+     * @param eventLoop the event loop that serves the connection.
+     * @param listener the listener that processes received frames.
+     * @param bufferPool the pool the buffers of received frames are taken from.
+     * @param maxFrameSize the maximum number of bytes a received frame may have.
+     */
+    NioTransport(NioEventLoop eventLoop, Listener listener, BufferPool bufferPool, int maxFrameSize) {
+        this.eventLoop = eventLoop;
+        this.listener = listener;
+        this.bufferPool = bufferPool;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public void connect(InetSocketAddress address, int timeout) throws IOException {
+        channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, timeout);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() {
+        eventLoop.register(this);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(ByteBuffer frame) {
+        PendingWrite pending = new PendingWrite(frame);
+        synchronized (writeQueue){
+            if(closed)
+                return CompletableFuture.failedFuture(new ClosedChannelException());
+
+            if(writeQueue.isEmpty()){
+                try {
+                    channel.write(frame);
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+
+                if(!frame.hasRemaining())
+                    return CompletableFuture.completedFuture(null);
+            }
+
+            writeQueue.add(pending);
+            updateInterest();
+        }
+
+        return pending.getFuture();
+    }
+
+    @Override
+    public void pauseReading() {
+        synchronized (writeQueue){
+            pauseCount++;
+            updateInterest();
+        }
+    }
+
+    @Override
+    public void resumeReading() {
+        Executor executor;
+        synchronized (writeQueue){
+            if(pauseCount == 0 || --pauseCount > 0)
+                return;
+
+            executor = selectorExecutor;
+            if(executor == null)
+                return;
+        }
+
+        // the bytes kept while paused are processed on the selector thread, before the channel is read again
+        executor.execute(this::onResumed);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * The event loop writes the queued frames and closes the channel once the queue is empty. If this method is
+     * called by the selector thread, e.g. from {@link Listener#onFrame(ByteBuffer)}, it returns at once and the
+     * channel is closed after the drain timeout at the latest.
+     */
+    @Override
+    public void close(long drainTimeout) throws IOException {
+        synchronized (writeQueue){
+            closed = true;
+            if(!writeQueue.isEmpty() && channel.isOpen()){
+                draining = true;
+                if(selectorThread == Thread.currentThread()){
+                    CompletableFuture.delayedExecutor(drainTimeout, TimeUnit.MILLISECONDS).execute(() -> {
+                        try {
+                            abort();
+                        } catch (IOException ignored) {}
+                    });
+                    return;
+                }
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeout);
+                try {
+                    long remaining;
+                    while (!writeQueue.isEmpty() && channel.isOpen() && (remaining = deadline - System.nanoTime()) > 0)
+                        TimeUnit.NANOSECONDS.timedWait(writeQueue, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        abort();
+    }
+
+    @Override
+    public void abort() throws IOException {
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            failQueued(new ClosedChannelException());
+        }
+    }
+
+    /**
+     * Registers the channel with a selector. Called on the selector thread.
+     * @param selector the selector of the thread serving this transport.
+     * @param executor runs tasks on the selector thread.
+     */
+    void register(Selector selector, Executor executor){
+        selectorThread = Thread.currentThread();
+        try {
+            SelectionKey key = channel.register(selector, 0, this);
+            synchronized (writeQueue){
+                this.key = key;
+                selectorExecutor = executor;
+                updateInterest();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Reads the available bytes and passes every completed frame to the listener. Frames are assembled in buffers of
+     * the {@link BufferPool} that are given back after the listener returns. If reading is paused, the bytes that
+     * are left are kept until it resumes. Called on the selector thread.
+     * @param readBuffer the buffer of the selector thread, it is only used for the duration of this call.
+     * @throws IOException if the connection was closed by the server, a frame exceeds the maximum frame size or an
+     * I/O error occurs.
+     */
+    void onReadable(ByteBuffer readBuffer) throws IOException {
+        if(!processUnread())
+            return;
+
+        readBuffer.clear();
+        if(channel.read(readBuffer) < 0)
+            throw new EOFException("the connection was closed by the server");
+
+        readBuffer.flip();
+        process(readBuffer);
+        if(readBuffer.hasRemaining() && !closed){
+            unread = bufferPool.acquire(readBuffer.remaining());
+            unread.put(readBuffer).flip();
+        }
+    }
+
+    /**
+     * Processes the bytes that were kept while reading was paused, and selects the channel for reading again
+     * unless reading was paused again. Called on the selector thread.
+     */
+    private void onResumed(){
+        try {
+            processUnread();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+        }
+
+        synchronized (writeQueue){
+            updateInterest();
+        }
+    }
+
+    /**
+     * Processes the bytes that were kept while reading was paused.
+     * @return true if every kept byte was processed, false if reading was paused again.
+     * @throws IOException if a frame exceeds the maximum frame size.
+     */
+    private boolean processUnread() throws IOException {
+        if(unread == null)
+            return true;
+
+        process(unread);
+        if(unread.hasRemaining() && !closed)
+            return false;
+
+        bufferPool.release(unread);
+        unread = null;
+        return true;
+    }
+
+    /**
+     * Assembles frames from the bytes of {@code source} and passes every completed frame to the listener, until
+     * reading is paused or every byte was processed.
+     * @param source the bytes read from the channel.
+     * @throws IOException if a frame exceeds the maximum frame size.
+     */
+    private void process(ByteBuffer source) throws IOException {
+        while (source.hasRemaining() && !closed && pauseCount == 0){
+            if(body == null){
+                transfer(source, header);
+                if(header.hasRemaining())
+                    return;
+
+                int length = Transport.checkFrameLength(header.getInt(0), maxFrameSize);
+                header.clear();
+                body = bufferPool.acquire(length);
+            }
+
+            transfer(source, body);
+            if(body.hasRemaining())
+                return;
+
+            ByteBuffer frame = body.flip();
+            body = null;
+            try {
+                listener.onFrame(frame);
+            } finally {
+                bufferPool.release(frame);
+            }
+        }
+    }
+
+    /**
+     * Writes up to {@link Transport#MAX_BATCH_FRAMES} queued frames with one gathering write and completes the frames that
+     * were written completely. Called on the selector thread.
+     * @throws IOException if an I/O error occurs.
+     */
+    void onWritable() throws IOException {
+        List<PendingWrite> written = new ArrayList<>();
+        synchronized (writeQueue){
+            int count = 0;
+            Iterator<PendingWrite> iterator = writeQueue.iterator();
+            while (iterator.hasNext() && count < gatherBuffers.length)
+                gatherBuffers[count++] = iterator.next().getFrame();
+
+            try {
+                if(count > 0)
+                    channel.write(gatherBuffers, 0, count);
+            } finally {
+                Arrays.fill(gatherBuffers, 0, count, null);
+            }
+
+            while (!writeQueue.isEmpty() && !writeQueue.peek().getFrame().hasRemaining())
+                written.add(writeQueue.poll());
+
+            updateInterest();
+            if(writeQueue.isEmpty())
+                writeQueue.notifyAll();
+        }
+
+        // completed outside of the lock, so callbacks of the futures can queue further frames
+        for (PendingWrite pending : written)
+            pending.complete();
+
+        boolean drained;
+        synchronized (writeQueue){
+            drained = draining && writeQueue.isEmpty();
+        }
+        if(drained)
+            channel.close();
+    }
+
+    /**
+     * Closes the connection because of a failure and notifies the listener, unless the connection was already
+     * closed by {@link #close(long)} or {@link #abort()}.
+     * @param cause the exception that closed the connection.
+     */
+    void fail(Exception cause){
+        boolean notify = !closed;
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        failQueued(cause);
+        if(notify)
+            listener.onClosed(cause);
+    }
+
+    /**
+     * Completes every queued frame exceptionally.
+     * @param cause the reason the frames could not be written.
+     */
+    private void failQueued(Exception cause){
+        List<PendingWrite> failed;
+        synchronized (writeQueue){
+            failed = new ArrayList<>(writeQueue);
+            writeQueue.clear();
+            writeQueue.notifyAll();
+        }
+
+        for (PendingWrite pending : failed)
+            pending.fail(cause);
+    }
+
+    /**
+     * Requests read events unless reading is paused, and write events while frames are queued. Must hold the lock
+     * of the write queue.
+     */
+    private void updateInterest(){
+        SelectionKey key = this.key;
+        if(key == null || !key.isValid())
+            return;
+
+        int interest = (pauseCount == 0 ? SelectionKey.OP_READ : 0) | (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        if(key.interestOps() != interest){
+            key.interestOps(interest);
+            key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Copies as many bytes as possible from {@code source} to {@code target}.
+     */
+    private static void transfer(ByteBuffer source, ByteBuffer target){
+        int length = Math.min(source.remaining(), target.remaining());
+        ByteBuffer slice = source.slice();
+        slice.limit(length);
+        target.put(slice);
+        source.position(source.position() + length);
+    }
+}
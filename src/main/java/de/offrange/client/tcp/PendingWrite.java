@@ -0,0 +1,51 @@
+package de.offrange.client.tcp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Class that holds a frame queued by {@link Transport#write(ByteBuffer)} and the future that is completed once the
+ * frame was written.
+ */
+class PendingWrite {
+
+    private final ByteBuffer frame;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Constructs a PendingWrite instance.
+     * @param frame the frame including its length prefix.
+     */
+    PendingWrite(ByteBuffer frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * @return the frame including its length prefix. Its position marks the bytes that were already written.
+     */
+    ByteBuffer getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the future that is completed once the frame was written.
+     */
+    CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Completes the future successfully.
+     */
+    void complete(){
+        future.complete(null);
+    }
+
+    /**
+     * Completes the future exceptionally.
+     * @param cause the reason the frame could not be written.
+     */
+    void fail(Throwable cause){
+        future.completeExceptionally(cause);
+    }
+}
@@ -0,0 +1,179 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.models.HandshakeModel;
+import de.offrange.client.udp.endpoint.EndpointAddress;
+
+import java.security.KeyException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that stores the RSA public keys servers sent during the handshake, keyed by endpoint and key fingerprint, so
+ * clients that reconnect to the same server only compute the fingerprint of the received key instead of rebuilding
+ * it with a {@link java.security.KeyFactory}. A server that rotates its key gets a new entry, since the fingerprint
+ * changes.
+ * <br>
+ * The cache holds at most {@link #getMaxEntries()} keys and drops the least recently used one first. Keys are kept for
+ * {@link #getTimeToLive()} milliseconds after they were built. {@link #getDefault()} is shared by every client that has
+ * no cache of its own. This class is thread-safe.
+ */
+public class PublicKeyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(1);
+
+    private static final PublicKeyCache DEFAULT = new PublicKeyCache(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Map<Key, Entry> keys;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Constructs a PublicKeyCache instance.
+     * @param maxEntries the maximum number of keys, at least 1.
+     * @param timeToLive the time in milliseconds a key is kept after it was built, at least 1.
+     */
+    public PublicKeyCache(int maxEntries, long timeToLive) {
+        if(maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        if(timeToLive < 1)
+            throw new IllegalArgumentException("timeToLive must be at least 1");
+
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.keys = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > PublicKeyCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by every client that has no cache of its own.
+     */
+    public static PublicKeyCache getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return the maximum number of keys.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the time in milliseconds a key is kept after it was built.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Returns the public key of the received key information, building and storing it if the cache does not hold a
+     * key with the same fingerprint for the endpoint.
+     * @param endpoint the endpoint that sent the key information.
+     * @param keyInformation the key information sent by the server.
+     * @return the public key.
+     * @throws KeyException if the key information does not form a valid RSA public key.
+     */
+    public PublicKey getPublicKey(EndpointAddress endpoint, HandshakeModel.RSAKey keyInformation) throws KeyException {
+        Key key = new Key(Objects.requireNonNull(endpoint), keyInformation.getFingerprint());
+        synchronized (this){
+            Entry entry = keys.get(key);
+            if(entry != null && !entry.isExpired()){
+                hitCount++;
+                return entry.publicKey;
+            }
+
+            missCount++;
+        }
+
+        PublicKey publicKey = keyInformation.toPublicKey();
+        synchronized (this){
+            keys.put(key, new Entry(publicKey, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToLive)));
+        }
+        return publicKey;
+    }
+
+    /**
+     * Removes every key of an endpoint.
+     * @param endpoint the endpoint whose keys are removed.
+     */
+    public synchronized void remove(EndpointAddress endpoint){
+        keys.keySet().removeIf(key -> key.endpoint.equals(endpoint));
+    }
+
+    /**
+     * Removes every key. The metrics are kept.
+     */
+    public synchronized void clear(){
+        keys.clear();
+    }
+
+    /**
+     * @return the number of stored keys, including expired keys that were not looked up yet.
+     */
+    public synchronized int size(){
+        return keys.size();
+    }
+
+    /**
+     * @return the number of lookups that found a key that had not expired.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that had to build the key.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static final class Key {
+        private final EndpointAddress endpoint;
+        private final byte[] fingerprint;
+
+        private Key(EndpointAddress endpoint, byte[] fingerprint) {
+            this.endpoint = endpoint;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return endpoint.equals(that.endpoint) && Arrays.equals(fingerprint, that.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * endpoint.hashCode() + Arrays.hashCode(fingerprint);
+        }
+    }
+
+    private static final class Entry {
+        private final PublicKey publicKey;
+        private final long expiresAt;
+
+        private Entry(PublicKey publicKey, long expiresAt) {
+            this.publicKey = publicKey;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(){
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
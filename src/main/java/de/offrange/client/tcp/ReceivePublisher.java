@@ -0,0 +1,354 @@
+package de.offrange.client.tcp;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that implements the {@link Flow.Publisher} interface for the models received by a {@link TcpClient}. Every
+ * subscriber gets its own bounded queue, and models are only passed to it as far as it has requested them, so a slow
+ * subscriber never stalls the thread that reads from the connection.
+ * <br>
+ * The signals of a subscriber are sent by tasks on the {@link Executor} of the publisher, one at a time. Once the
+ * client is disconnected, every subscriber receives the models that are still queued and then
+ * {@link Flow.Subscriber#onComplete()}, or {@link Flow.Subscriber#onError(Throwable)} if the connection was lost.
+ * This class is thread-safe.
+ * @param <T> the model that represents the server requests and responses.
+ */
+public class ReceivePublisher<T> implements Flow.Publisher<T> {
+
+    private final Executor executor;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Backpressure backpressure;
+
+    private final CopyOnWriteArrayList<ReceiveSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile Throwable closeCause;
+
+    /**
+     * Constructs a ReceivePublisher instance.
+     * @param executor the executor the signals to the subscribers are sent on.
+     * @param bufferSize the maximum number of models queued per subscriber, at least 1.
+     * @param overflowPolicy what happens if a model is received while the queue of a subscriber is full.
+     * @param backpressure pauses reading from the connection for {@link OverflowPolicy#BLOCK}.
+     */
+    ReceivePublisher(Executor executor, int bufferSize, OverflowPolicy overflowPolicy, Backpressure backpressure) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+
+        this.executor = Objects.requireNonNull(executor);
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.backpressure = Objects.requireNonNull(backpressure);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        ReceiveSubscription subscription = new ReceiveSubscription(Objects.requireNonNull(subscriber));
+        subscriptions.add(subscription);
+        if(closed)
+            subscription.close(closeCause);
+
+        subscription.schedule();
+    }
+
+    /**
+     * @return the maximum number of models queued per subscriber.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return what happens if a model is received while the queue of a subscriber is full.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return the number of subscribers that did not cancel and were not completed yet.
+     */
+    public int getSubscriberCount(){
+        return subscriptions.size();
+    }
+
+    /**
+     * @return the number of models that were dropped by {@link OverflowPolicy#DROP_OLDEST}, summed over all
+     * subscribers.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return true if the client was disconnected and no more models will be published, false otherwise.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Queues a model for every subscriber. Called by the thread that reads from the connection or by the workers
+     * that decode the frames, it never blocks.
+     * @param model the received model.
+     */
+    void publish(T model){
+        for (ReceiveSubscription subscription : subscriptions)
+            subscription.offer(model);
+    }
+
+    /**
+     * Completes every subscriber once it received the queued models.
+     * @param cause the reason the connection was closed, {@code null} if it was closed by the client.
+     */
+    void close(Throwable cause){
+        if(closed)
+            return;
+
+        closeCause = cause;
+        closed = true;
+        for (ReceiveSubscription subscription : subscriptions)
+            subscription.close(cause);
+    }
+
+    /**
+     * Enum representing what happens if a model is received while the queue of a subscriber is full.
+     */
+    public enum OverflowPolicy{
+        /**
+         * Reading from the connection is paused until the subscriber requested more models, so the server is slowed
+         * down by TCP flow control. No thread waits, so the other connections of a {@link NioEventLoop} are not
+         * affected. Models that were already received when reading was paused, e.g. by the workers of a decode
+         * executor, are still queued, so the queue can exceed its size by those models.
+         */
+        BLOCK,
+
+        /**
+         * The oldest queued model is dropped to make room for the received one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The subscription is cancelled and the subscriber receives {@link Flow.Subscriber#onError(Throwable)} with
+         * an {@link IllegalStateException}.
+         */
+        FAIL
+    }
+
+    /**
+     * Interface used by a {@link ReceivePublisher} to pause reading from the connection while the queue of a
+     * subscriber is full with {@link OverflowPolicy#BLOCK}. Calls are counted, reading resumes once
+     * {@link #resume()} was called as often as {@link #pause()}. Neither method may block.
+     */
+    interface Backpressure{
+
+        /**
+         * Pauses reading from the connection.
+         */
+        void pause();
+
+        /**
+         * Undoes one call of {@link #pause()}.
+         */
+        void resume();
+    }
+
+    /**
+     * Class that holds the queue and the demand of one subscriber. The queue is guarded by the lock of this object.
+     * Signals are sent by a drain task that is scheduled on the executor whenever something changed, and never by
+     * two tasks at the same time.
+     */
+    private class ReceiveSubscription implements Flow.Subscription{
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Queue<T> queue = new ArrayDeque<>();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+
+        private long demand;
+        private boolean subscribed;
+        private boolean cancelled;
+        private boolean done;
+        private Throwable error;
+        private boolean pausing;
+
+        private ReceiveSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this){
+                if(cancelled)
+                    return;
+
+                if(n <= 0){
+                    fail(new IllegalArgumentException("the number of requested models must be positive, but was " + n));
+                }else{
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            boolean resume;
+            synchronized (this){
+                cancelled = true;
+                queue.clear();
+                resume = stopPausing();
+            }
+
+            subscriptions.remove(this);
+            if(resume)
+                backpressure.resume();
+        }
+
+        private void offer(T model){
+            synchronized (this){
+                if(cancelled || done)
+                    return;
+
+                if(queue.size() >= bufferSize){
+                    switch (overflowPolicy){
+                        case BLOCK:
+                            break;
+                        case DROP_OLDEST:
+                            queue.poll();
+                            droppedCount.incrementAndGet();
+                            break;
+                        default:
+                            fail(new IllegalStateException("the receive buffer of the subscriber is full"));
+                            schedule();
+                            return;
+                    }
+                }
+
+                queue.add(model);
+
+                // paused while holding the lock, so the drain task cannot resume before the pause
+                if(overflowPolicy == OverflowPolicy.BLOCK && !pausing && queue.size() >= bufferSize){
+                    pausing = true;
+                    backpressure.pause();
+                }
+            }
+
+            schedule();
+        }
+
+        private void close(Throwable cause){
+            boolean resume;
+            synchronized (this){
+                if(done)
+                    return;
+
+                done = true;
+                error = cause;
+                resume = stopPausing();
+            }
+
+            if(resume)
+                backpressure.resume();
+
+            schedule();
+        }
+
+        /**
+         * Drops the queued models and terminates the subscriber with an error. Must hold the lock of this object.
+         * Reading is resumed by the drain task, which sees the empty queue.
+         */
+        private void fail(Throwable cause){
+            queue.clear();
+            done = true;
+            error = cause;
+        }
+
+        /**
+         * Must hold the lock of this object.
+         * @return true if this subscription paused reading and {@link Backpressure#resume()} has to be called.
+         */
+        private boolean stopPausing(){
+            if(!pausing)
+                return false;
+
+            pausing = false;
+            return true;
+        }
+
+        private void schedule(){
+            if(pendingDrains.getAndIncrement() != 0)
+                return;
+
+            try {
+                executor.execute(this::drainLoop);
+            } catch (RejectedExecutionException e) {
+                cancel();
+            }
+        }
+
+        private void drainLoop(){
+            int missed = 1;
+            do {
+                drain();
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain(){
+            if(!subscribed){
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+
+            while (true){
+                T model = null;
+                Throwable terminalError = null;
+                boolean terminate = false;
+                boolean resume;
+                synchronized (this){
+                    if(!cancelled){
+                        if(demand > 0 && !queue.isEmpty()){
+                            model = queue.poll();
+                            demand--;
+                        }else if(done && queue.isEmpty()){
+                            cancelled = true;
+                            terminalError = error;
+                            terminate = true;
+                        }
+                    }
+
+                    resume = queue.size() < bufferSize && stopPausing();
+                }
+
+                if(resume)
+                    backpressure.resume();
+
+                if(model != null){
+                    subscriber.onNext(model);
+                    continue;
+                }
+
+                if(!terminate)
+                    return;
+
+                subscriptions.remove(this);
+                if(terminalError == null)
+                    subscriber.onComplete();
+                else
+                    subscriber.onError(terminalError);
+                return;
+            }
+        }
+    }
+}
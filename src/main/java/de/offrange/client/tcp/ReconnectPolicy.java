@@ -0,0 +1,101 @@
+package de.offrange.client.tcp;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class that describes how a {@link TcpClient} reconnects after an established connection was lost. The base delay
+ * of the n-th attempt, starting at 0, is {@code initialDelay * multiplier^n}, capped at {@code maxDelay}. Half of it
+ * is waited for sure and the other half is random, so clients that lost their connection at the same time do not
+ * reconnect in lockstep.
+ * <br>
+ * This class is immutable.
+ */
+public class ReconnectPolicy {
+
+    public static final long DEFAULT_INITIAL_DELAY = 100;
+    public static final long DEFAULT_MAX_DELAY = 30_000;
+    public static final double DEFAULT_MULTIPLIER = 2;
+
+    private static final ReconnectPolicy DEFAULT = new ReconnectPolicy(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, 0);
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+    private final int maxAttempts;
+
+    /**
+     * Constructs a ReconnectPolicy instance.
+     * @param initialDelay the base delay in milliseconds of the first attempt, at least 1.
+     * @param maxDelay the maximum base delay in milliseconds, at least {@code initialDelay}.
+     * @param multiplier the factor the base delay grows by with every attempt, at least 1.
+     * @param maxAttempts the number of attempts before the client gives up, 0 or less to try until
+     *                    {@link TcpClient#disconnect()} is called.
+     */
+    public ReconnectPolicy(long initialDelay, long maxDelay, double multiplier, int maxAttempts) {
+        if(initialDelay < 1)
+            throw new IllegalArgumentException("initialDelay must be at least 1");
+        if(maxDelay < initialDelay)
+            throw new IllegalArgumentException("maxDelay must be at least initialDelay");
+        if(!(multiplier >= 1))
+            throw new IllegalArgumentException("multiplier must be at least 1");
+
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return a policy that starts with {@link #DEFAULT_INITIAL_DELAY}, doubles the delay up to
+     * {@link #DEFAULT_MAX_DELAY} and tries until the client is disconnected.
+     */
+    public static ReconnectPolicy getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return the base delay in milliseconds of the first attempt.
+     */
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * @return the maximum base delay in milliseconds.
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @return the factor the base delay grows by with every attempt.
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * @return the number of attempts before the client gives up, 0 or less if it tries until it is disconnected.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt the number of attempts that were already made.
+     * @return true if another attempt should be made, false if the client should give up.
+     */
+    public boolean canRetry(int attempt){
+        return maxAttempts <= 0 || attempt < maxAttempts;
+    }
+
+    /**
+     * @param attempt the number of attempts that were already made.
+     * @return the time in milliseconds to wait before the attempt, between half the base delay and the base delay.
+     */
+    public long getDelay(int attempt){
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt));
+        long half = (long) delay / 2;
+        return half + ThreadLocalRandom.current().nextLong((long) delay - half + 1);
+    }
+}
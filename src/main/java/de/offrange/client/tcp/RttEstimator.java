@@ -0,0 +1,117 @@
+package de.offrange.client.tcp;
+
+import java.util.Arrays;
+
+/**
+ * Class that keeps the round-trip times of the last pings of a {@link TcpClient} in a ring buffer and estimates the
+ * latency of the connection from them. All times are in nanoseconds and measured with {@link System#nanoTime()}, so
+ * they are not affected by changes of the wall clock. This class is thread-safe.
+ * @see TcpClient#ping()
+ */
+public class RttEstimator {
+
+    /**
+     * The default number of round-trip times the estimate is based on. It is larger than 100, so a full window
+     * has a {@link #getP99() 99th percentile} below its maximum.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 128;
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long sum;
+    private long last = -1;
+
+    /**
+     * Constructs a RttEstimator instance that keeps the last {@link #DEFAULT_WINDOW_SIZE} round-trip times.
+     */
+    public RttEstimator() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs a RttEstimator instance.
+     * @param windowSize the number of round-trip times the estimate is based on, at least 1.
+     */
+    public RttEstimator(int windowSize) {
+        if(windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be at least 1");
+
+        samples = new long[windowSize];
+    }
+
+    /**
+     * Adds a round-trip time, replacing the oldest one if the window is full.
+     * @param nanos the round-trip time in nanoseconds.
+     */
+    public synchronized void record(long nanos){
+        if(size == samples.length)
+            sum -= samples[next];
+        else
+            size++;
+
+        samples[next] = nanos;
+        sum += nanos;
+        next = (next + 1) % samples.length;
+        last = nanos;
+    }
+
+    /**
+     * @return the number of round-trip times in the window.
+     */
+    public synchronized int getSampleCount(){
+        return size;
+    }
+
+    /**
+     * @return the last round-trip time, -1 if none was recorded.
+     */
+    public synchronized long getLast(){
+        return last;
+    }
+
+    /**
+     * @return the shortest round-trip time in the window, -1 if none was recorded.
+     */
+    public synchronized long getMin(){
+        if(size == 0)
+            return -1;
+
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++)
+            min = Math.min(min, samples[i]);
+
+        return min;
+    }
+
+    /**
+     * @return the mean round-trip time in the window, -1 if none was recorded.
+     */
+    public synchronized long getAverage(){
+        return size == 0 ? -1 : sum / size;
+    }
+
+    /**
+     * Returns the 99th percentile of the round-trip times in the window, using the nearest-rank method. While the
+     * window holds 100 or fewer round-trip times, this is the longest of them.
+     * @return the 99th percentile of the round-trip times in the window, -1 if none was recorded.
+     */
+    public synchronized long getP99(){
+        if(size == 0)
+            return -1;
+
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(size * 0.99) - 1];
+    }
+
+    /**
+     * Removes every round-trip time.
+     */
+    public synchronized void reset(){
+        next = 0;
+        size = 0;
+        sum = 0;
+        last = -1;
+    }
+}
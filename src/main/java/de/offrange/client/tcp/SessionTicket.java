@@ -0,0 +1,64 @@
+package de.offrange.client.tcp;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that holds a session ticket issued by a server, together with the AES key of the session it was issued for.
+ * The ticket itself is opaque to the client. When a session is resumed, the client sends the ticket and a random
+ * nonce, and both sides derive the key of the new session from the old key and the nonce with
+ * {@link #deriveKey(byte[])}, so no key is ever used for more than one session.
+ */
+public class SessionTicket {
+
+    private static final String HMAC = "HmacSHA256";
+    private static final byte[] LABEL = "session resumption".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] ticket;
+    private final SecretKey key;
+    private final long expiresAt;
+
+    /**
+     * Constructs a SessionTicket instance.
+     * @param ticket the ticket issued by the server.
+     * @param key the AES key of the session the ticket was issued for.
+     * @param lifetime the time in milliseconds the ticket is valid for.
+     */
+    public SessionTicket(byte[] ticket, SecretKey key, long lifetime) {
+        this.ticket = ticket.clone();
+        this.key = key;
+        this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lifetime);
+    }
+
+    /**
+     * @return the ticket issued by the server.
+     */
+    public byte[] getTicket() {
+        return ticket.clone();
+    }
+
+    /**
+     * @return true if the lifetime of the ticket is over, false otherwise.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * Derives the AES key of a resumed session as HMAC-SHA256 of the label {@code "session resumption"} followed by
+     * the nonce, keyed with the AES key of the session the ticket was issued for.
+     * @param nonce the random nonce the client sends with the ticket.
+     * @return the AES key of the resumed session.
+     * @throws GeneralSecurityException if HMAC-SHA256 is not available.
+     */
+    public SecretKey deriveKey(byte[] nonce) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(key.getEncoded(), HMAC));
+        mac.update(LABEL);
+        return new SecretKeySpec(mac.doFinal(nonce), "AES");
+    }
+}
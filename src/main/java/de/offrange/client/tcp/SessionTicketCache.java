@@ -0,0 +1,101 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.udp.endpoint.EndpointAddress;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that stores the latest {@link SessionTicket} of every endpoint, so a new {@link TcpClient} can resume the
+ * session of an earlier client instead of running the full handshake. The cache holds at most
+ * {@link #getMaxEntries()} tickets and drops the least recently used one first. Expired tickets are dropped when they
+ * are looked up.
+ * <br>
+ * {@link #getDefault()} is shared by every client that has no cache of its own. This class is thread-safe.
+ */
+public class SessionTicketCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final SessionTicketCache DEFAULT = new SessionTicketCache(DEFAULT_MAX_ENTRIES);
+
+    private final int maxEntries;
+    private final Map<EndpointAddress, SessionTicket> tickets;
+
+    /**
+     * Constructs a SessionTicketCache instance.
+     * @param maxEntries the maximum number of tickets, at least 1.
+     */
+    public SessionTicketCache(int maxEntries) {
+        if(maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+
+        this.maxEntries = maxEntries;
+        this.tickets = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EndpointAddress, SessionTicket> eldest) {
+                return size() > SessionTicketCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by every client that has no cache of its own.
+     */
+    public static SessionTicketCache getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return the maximum number of tickets.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param endpoint the endpoint the ticket was issued by.
+     * @return the ticket of the endpoint, {@code null} if there is none or it expired.
+     */
+    public synchronized SessionTicket get(EndpointAddress endpoint){
+        SessionTicket ticket = tickets.get(endpoint);
+        if(ticket != null && ticket.isExpired()){
+            tickets.remove(endpoint);
+            return null;
+        }
+
+        return ticket;
+    }
+
+    /**
+     * Stores a ticket, replacing the previous ticket of the endpoint.
+     * @param endpoint the endpoint the ticket was issued by.
+     * @param ticket the ticket to store.
+     */
+    public synchronized void put(EndpointAddress endpoint, SessionTicket ticket){
+        tickets.put(endpoint, ticket);
+    }
+
+    /**
+     * Removes the ticket of an endpoint if it is still the given ticket.
+     * @param endpoint the endpoint the ticket was issued by.
+     * @param ticket the ticket to remove.
+     */
+    public synchronized void remove(EndpointAddress endpoint, SessionTicket ticket){
+        tickets.remove(endpoint, ticket);
+    }
+
+    /**
+     * Removes every ticket.
+     */
+    public synchronized void clear(){
+        tickets.clear();
+    }
+
+    /**
+     * @return the number of stored tickets, including expired tickets that were not looked up yet.
+     */
+    public synchronized int size(){
+        return tickets.size();
+    }
+}
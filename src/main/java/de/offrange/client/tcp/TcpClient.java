@@ -1,29 +1,67 @@
 package de.offrange.client.tcp;
 
-import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.BufferPool;
 import de.offrange.client.Client;
 import de.offrange.client.RsaAesCryptography;
-import de.offrange.client.gson.ByteArrayTypeAdapter;
+import de.offrange.client.ThreadFactories;
+import de.offrange.client.codec.Codec;
+import de.offrange.client.codec.JsonCodec;
+import de.offrange.client.compression.Compression;
+import de.offrange.client.compression.Compressor;
+import de.offrange.client.gson.GsonRegistry;
+import de.offrange.client.gson.Utf8BufferReader;
 import de.offrange.client.listeners.ErrorOccurredHandler;
 import de.offrange.client.listeners.ReceiveHandler;
+import de.offrange.client.metrics.ClientMetrics;
 import de.offrange.client.models.HandshakeModel;
 import de.offrange.client.models.IModel;
 import de.offrange.client.models.CodeCheckModel;
+import de.offrange.client.models.Envelope;
 import de.offrange.client.udp.endpoint.EndpointAddress;
 
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.InetAddress;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.security.Key;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.security.GeneralSecurityException;
+import java.security.KeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * This class represents a basic tcp client that encrypts the connection to the server.
@@ -32,35 +70,111 @@ import java.util.Objects;
  * generated on the server side. The AES key is then sent encrypted to the server.
  * The server have to generate a code that you pass into {@link #sendCode(String)} to enable the connection.
  * Before that, the server and the client cannot communicate together.
+ * <br>
+ * With a {@link ReconnectPolicy}, a lost connection is re-established in the background and models sent in the
+ * meantime are buffered, see {@link #setReconnectPolicy(ReconnectPolicy)}.
  * @param <T> the model that represents the server requests and responses.
  */
 public class TcpClient<T extends IModel> implements Client {
 
     private static final int DEFAULT_TIMEOUT = 5000;
+    private static final long DEFAULT_REQUEST_TIMEOUT = 30_000;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    private static final int DEFAULT_SEND_BUFFER_CAPACITY = 1024;
+    private static final int DEFAULT_RECEIVE_BUFFER_SIZE = 256;
+    private static final int DEFAULT_MAX_PENDING_DECODES = 64;
+    private static final long DEFAULT_KEEP_ALIVE_INTERVAL = 15_000;
+    private static final long DEFAULT_KEEP_ALIVE_TIMEOUT = 10_000;
+    private static final List<Compression> DEFAULT_COMPRESSIONS = List.copyOf(Compression.loadInstalled());
+
+    private static final byte UNCOMPRESSED = 0;
+    private static final byte COMPRESSED = 1;
+    private static final int RESUMPTION_NONCE_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = ThreadFactories.platform("tcp-client", false);
 
     private static TcpClient<? extends IModel> instance;
+    private static ScheduledExecutorService keepAliveScheduler;
 
     private final Gson gson;
+    private final JsonCodec jsonCodec;
 
-    private final Socket client;
+    private Transport transport;
     private final InetSocketAddress address;
     private SecretKey aesKey;
-
-    private boolean running;
-    private boolean handshakeDone;
-    private boolean codeChecked;
+    private volatile RsaAesCryptography sessionCryptography;
+    private final Object sendLock = new Object();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean handshakeDone;
+    private volatile boolean codeChecked;
+    private volatile boolean envelopeNegotiated;
+    private volatile Codec sessionCodec;
+    private volatile Compression sessionCompression;
+    private final Queue<Compressor> compressors = new ConcurrentLinkedQueue<>();
+    private final Queue<Compressor> decompressors = new ConcurrentLinkedQueue<>();
+    private volatile DecodePipeline decodePipeline;
+    private volatile boolean resumptionNegotiated;
+    private volatile boolean pingNegotiated;
+    private volatile SessionTicket resumingTicket;
+    private volatile CompletableFuture<Void> sessionReady = new CompletableFuture<>();
+    private volatile String code;
+
+    private volatile boolean closed;
+    private volatile boolean reconnecting;
+    private volatile Thread reconnectThread;
+    private final Deque<BufferedSend<T>> sendBuffer = new ArrayDeque<>();
+    private volatile FrameListener frameListener;
+    private final Map<Long, CompletableFuture<Long>> pendingPings = new ConcurrentHashMap<>();
+    private final RttEstimator rttEstimator = new RttEstimator();
+    private ScheduledFuture<?> keepAliveTask;
 
     private int timeout = DEFAULT_TIMEOUT;
+    private boolean aesGcmEnabled = true;
+    private boolean envelopeEnabled = true;
+    private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final Map<Long, CompletableFuture<T>> pendingRequests = new ConcurrentHashMap<>();
+
+    private TransportMode transportMode = TransportMode.BLOCKING;
+    private NioEventLoop nioEventLoop;
+    private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
+    private BufferPool bufferPool = BufferPool.getDefault();
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private Codec codec;
+    private List<Compression> compressions = DEFAULT_COMPRESSIONS;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private boolean sessionResumptionEnabled = true;
+    private SessionTicketCache sessionTicketCache = SessionTicketCache.getDefault();
+    private PublicKeyCache publicKeyCache = PublicKeyCache.getDefault();
+    private ReconnectPolicy reconnectPolicy;
+    private int sendBufferCapacity = DEFAULT_SEND_BUFFER_CAPACITY;
+    private Executor receiveExecutor = ForkJoinPool.commonPool();
+    private int receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+    private ReceivePublisher.OverflowPolicy receiveOverflowPolicy = ReceivePublisher.OverflowPolicy.BLOCK;
+    private volatile ReceivePublisher<T> receivePublisher;
+    private final Object receivePauseLock = new Object();
+    private int receivePauses;
+    private Executor decodeExecutor;
+    private DecodeOrdering decodeOrdering = DecodeOrdering.STRICT;
+    private int maxPendingDecodes = DEFAULT_MAX_PENDING_DECODES;
+    private long keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL;
+    private long keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+    private ClientMetrics metrics = ClientMetrics.getGlobal();
+    private volatile long connectStart;
+    private final LongSupplier pendingRequestsGauge = this::getPendingRequestCount;
+    private final LongSupplier sendBufferGauge = this::getSendBufferSize;
+    private final LongSupplier pendingDecodesGauge = this::getPendingDecodeCount;
 
     private ReceiveHandler<T> receiveHandler;
     private ErrorOccurredHandler errorOccurredHandler;
 
-    private DataInputStream inputStream;
-    private DataOutputStream outputStream;
-
     private Thread waiterThread;
 
     private final Class<T> modelClass;
+    private final Type envelopeType;
 
     /**
      * Constructs a TcpClient instance with a {@link EndpointAddress} and a class that is used to
@@ -73,6 +187,17 @@ public class TcpClient<T extends IModel> implements Client {
         this(endpointAddress.getIp(), endpointAddress.getPort(), modelClass);
     }
 
+    /**
+     * Constructs a TcpClient instance with a {@link EndpointAddress}, a class that is used to receive data from the
+     * server and the {@link GsonRegistry} the models are mapped with.
+     * @param endpointAddress the endpoint information containing hostname and port
+     * @param modelClass the model class that specifies the JSON data from the server.
+     * @param gsonRegistry the registry whose {@link Gson} instance and codecs are used.
+     */
+    public TcpClient(EndpointAddress endpointAddress, Class<T> modelClass, GsonRegistry gsonRegistry) {
+        this(endpointAddress.getIp(), endpointAddress.getPort(), modelClass, gsonRegistry);
+    }
+
     /**
      * Constructs a TcpClient instance with a host, port and a class that is used to
      * receive data from the server. It indicates a model that comes from the server as a response.
@@ -82,30 +207,63 @@ public class TcpClient<T extends IModel> implements Client {
      * @param modelClass the model class that specifies the JSON data from the server.
      */
     public TcpClient(String host, int port, Class<T> modelClass){
-        instance = this;
-        gson = new GsonBuilder()
-                .disableHtmlEscaping()
-                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .create();
+        this(host, port, modelClass, GsonRegistry.getDefault());
+    }
+
+    /**
+     * Constructs a TcpClient instance with a host, port, a class that is used to receive data from the server and
+     * the {@link GsonRegistry} the models are mapped with. The type adapters of the model class are built by the
+     * constructor, so the first message is not slowed down by reflection.
+     * @param host the hostname or ip address of the server to which the client should connect.
+     * @param port the port on which the server listens.
+     * @param modelClass the model class that specifies the JSON data from the server.
+     * @param gsonRegistry the registry whose {@link Gson} instance and codecs are used.
+     */
+    public TcpClient(String host, int port, Class<T> modelClass, GsonRegistry gsonRegistry){
+        this(host, port, modelClass, gsonRegistry, true);
+    }
+
+    /**
+     * Constructs a TcpClient instance for a {@link TcpClientPool}, which is not returned by {@link #getInstance()}.
+     * @param endpointAddress the endpoint information containing hostname and port
+     * @param modelClass the model class that specifies the JSON data from the server.
+     * @param registerInstance true if the client becomes the instance returned by {@link #getInstance()}.
+     */
+    TcpClient(EndpointAddress endpointAddress, Class<T> modelClass, boolean registerInstance) {
+        this(endpointAddress.getIp(), endpointAddress.getPort(), modelClass, GsonRegistry.getDefault(), registerInstance);
+    }
+
+    private TcpClient(String host, int port, Class<T> modelClass, GsonRegistry gsonRegistry, boolean registerInstance){
+        if(registerInstance)
+            instance = this;
+
+        gson = gsonRegistry.getGson();
+        jsonCodec = gsonRegistry.getJsonCodec();
+        codec = jsonCodec;
+        sessionCodec = jsonCodec;
 
         this.modelClass = modelClass;
+        this.envelopeType = TypeToken.getParameterized(Envelope.class, modelClass).getType();
+        gsonRegistry.warmUp(modelClass, envelopeType);
 
-        client = new Socket();
         this.address = new InetSocketAddress(host, port);
 
         try {
             KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
             keyGenerator.init(256);
             aesKey = keyGenerator.generateKey();
-        } catch (NoSuchAlgorithmException ignored) {}
+            sessionCryptography = new RsaAesCryptography(aesKey);
+        } catch (NoSuchAlgorithmException | KeyException ignored) {}
     }
 
     /**
      * @return the currently running instance. Will be {@code null} if no instance is running,
      * initiated or {@link #disconnect()} was called previous instance.
      * @param <T> the JSON model class that is used to send.
+     * @deprecated this is the last constructed client, which is ambiguous as soon as more than one client exists.
+     * Keep a reference to the client or use a {@link TcpClientPool} instead.
      */
+    @Deprecated
     @SuppressWarnings("unchecked")
     public static <T extends IModel> TcpClient<T> getInstance() {
         return (TcpClient<T>) instance;
@@ -156,12 +314,46 @@ public class TcpClient<T extends IModel> implements Client {
      * @see de.offrange.client.listeners.ErrorOccurredHandler.Type
      */
     private void callErrorOccurred(Exception e, ErrorOccurredHandler.Type type){
+        metrics.recordError(type);
         if(errorOccurredHandler == null)
             return;
 
         errorOccurredHandler.onErrorOccurred(this, e, type);
     }
 
+    /**
+     * @return the {@link ClientMetrics} the traffic, errors and timings of this client are recorded into (default:
+     * {@link ClientMetrics#getGlobal()}).
+     * @see #setMetrics(ClientMetrics)
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link ClientMetrics} the traffic, errors and timings of this client are recorded into, e.g. to share
+     * one instance between the clients of a {@link TcpClientPool}. By default only {@link ClientMetrics#getGlobal()}
+     * is recorded into, set {@code new ClientMetrics()} to get the metrics of this client on their own as well.
+     * The gauges {@code pendingRequests}, {@code sendBuffer} and {@code pendingDecodes} are only set on instances
+     * other than {@link ClientMetrics#getGlobal()}, where the gauges of different clients would replace each other,
+     * and are moved from the previous instance.
+     * @param metrics the metrics.
+     */
+    public void setMetrics(ClientMetrics metrics) {
+        Objects.requireNonNull(metrics);
+        ClientMetrics previous = this.metrics;
+        previous.removeGauge("pendingRequests", pendingRequestsGauge);
+        previous.removeGauge("sendBuffer", sendBufferGauge);
+        previous.removeGauge("pendingDecodes", pendingDecodesGauge);
+
+        if(metrics != ClientMetrics.getGlobal()){
+            metrics.setGauge("pendingRequests", pendingRequestsGauge);
+            metrics.setGauge("sendBuffer", sendBufferGauge);
+            metrics.setGauge("pendingDecodes", pendingDecodesGauge);
+        }
+        this.metrics = metrics;
+    }
+
     /**
      * @return an {@link EndpointAddress} object that contains the server's hostname and port.
      */
@@ -170,291 +362,1794 @@ public class TcpClient<T extends IModel> implements Client {
     }
 
     /**
-     * @param timeout the time the client times out and returns.
-     * @return the elapsed time in milliseconds.
-     * @throws IOException if the hostname is unknown or the timeout is negative.
+     * Measures the round-trip time to the server by sending a {@link #ping(long)} over the connection. Requires
+     * {@link HandshakeModel.Capability#PING} and a correct code evaluation. No second connection is opened to
+     * measure the time, since the server would treat it as a new client.
+     * @param timeout the time in milliseconds to wait for the pong.
+     * @return the round-trip time in milliseconds.
+     * @throws IOException if ping was not negotiated with the server or no pong was received in time.
+     * @throws IllegalArgumentException if the timeout is negative.
+     * @see #getRttEstimator()
      */
     public int getLatency(int timeout) throws IOException {
-        long startTime = System.currentTimeMillis();
-        InetAddress.getByName(address.getHostString()).isReachable(timeout);
-        return (int)(System.currentTimeMillis() - startTime);
+        if(timeout < 0)
+            throw new IllegalArgumentException("timeout must not be negative");
+
+        if(!pingNegotiated || !codeChecked)
+            throw new IOException("ping was not negotiated with the server or the code was not checked yet");
+
+        try {
+            return (int) TimeUnit.NANOSECONDS.toMillis(ping(timeout).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the pong");
+        } catch (ExecutionException e) {
+            throw new IOException("no pong was received from the server", e.getCause());
+        }
     }
 
     /**
-     * @return the timeout value in milliseconds (default: {@link TcpClient#DEFAULT_TIMEOUT}).
+     * Sends a ping over the connection, which the server answers with a pong. The round-trip time is added to the
+     * {@link #getRttEstimator()} and the {@link #getMetrics()}. Requires {@link HandshakeModel.Capability#PING}.
+     * @return a future that completes with the round-trip time in nanoseconds, or completes exceptionally if no pong
+     * was received within {@link #getKeepAliveTimeout()} milliseconds.
      */
-    public int getTimeout() {
-        return timeout;
+    public CompletableFuture<Long> ping(){
+        return ping(keepAliveTimeout);
     }
 
     /**
-     * Sets the timeout used for the connection.
-     * @param timeout the timeout value to be used in milliseconds.
+     * Sends a ping over the connection, which the server answers with a pong. The round-trip time is added to the
+     * {@link #getRttEstimator()} and the {@link #getMetrics()}. Requires {@link HandshakeModel.Capability#PING}.
+     * @param timeout the time in milliseconds to wait for the pong, 0 or less to wait until the connection is closed.
+     * @return a future that completes with the round-trip time in nanoseconds.
      */
-    public void setTimeout(int timeout) {
-        this.timeout = timeout;
+    public CompletableFuture<Long> ping(long timeout){
+        if(!codeChecked)
+            return CompletableFuture.failedFuture(new IllegalStateException("Enable the connection by passing a code into sendCode(String)"));
+
+        if(!pingNegotiated)
+            return CompletableFuture.failedFuture(new IllegalStateException("the server does not support pings"));
+
+        long timestamp = System.nanoTime();
+        CompletableFuture<Long> pong = new CompletableFuture<>();
+        CompletableFuture<Long> previous = pendingPings.putIfAbsent(timestamp, pong);
+        if(previous != null)
+            return previous;
+
+        pong.whenComplete((rtt, throwable) -> pendingPings.remove(timestamp, pong));
+        if(timeout > 0)
+            pong.orTimeout(timeout, TimeUnit.MILLISECONDS);
+
+        sendSession(Envelope.ping(timestamp)).whenComplete((ignored, throwable) -> {
+            if(throwable != null)
+                pong.completeExceptionally(throwable);
+        });
+        return pong;
     }
 
     /**
-     * Start the client and connect it to the server specified in the constructor.
-     * @throws IOException if an error occurs during the connection.
-     * @see #disconnect()
+     * @return the round-trip times of the last pings, sent by {@link #ping()} and the keepalive.
      */
-    public void startAndConnect() throws IOException {
-        client.connect(address, timeout);
+    public RttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
 
-        ClientHandler handler = new ClientHandler();
-        handler.start();
+    /**
+     * @return true if the server answers pings, false otherwise.
+     */
+    public boolean isPingNegotiated() {
+        return pingNegotiated;
     }
 
     /**
-     * Disconnect and stop the client. If an I/O error occurs when closing the socket, it will call
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}.
-     * When such an error occurs, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#DISCONNECT}.
-     * @see #startAndConnect()
+     * @return the time in milliseconds between two keepalive pings, 0 or less if the keepalive is disabled
+     * (default: {@link TcpClient#DEFAULT_KEEP_ALIVE_INTERVAL}).
      */
-    public void disconnect(){
-        instance = null;
-        if(client == null || !isRunning())
-            return;
+    public long getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
 
-        running = false;
-        try {
-            client.close();
-        } catch (IOException e) {
-            callErrorOccurred(e, ErrorOccurredHandler.Type.DISCONNECT);
+    /**
+     * Sets the time between two pings that are sent in the background once the connection is enabled, if the server
+     * supports {@link HandshakeModel.Capability#PING}. The keepalive keeps the {@link #getRttEstimator()} up to date
+     * and closes the connection if a pong is not received within {@link #getKeepAliveTimeout()}, long before the
+     * operating system gives up on a dead TCP connection. A {@link ReconnectPolicy} then reconnects.
+     * Must be set before {@link #startAndConnect()}.
+     * @param keepAliveInterval the interval in milliseconds, 0 or less to disable the keepalive.
+     */
+    public void setKeepAliveInterval(long keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    /**
+     * @return the time in milliseconds a ping waits for its pong (default: {@link TcpClient#DEFAULT_KEEP_ALIVE_TIMEOUT}).
+     */
+    public long getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Sets the time a ping waits for its pong. A keepalive ping that is not answered in time closes the connection.
+     * @param keepAliveTimeout the timeout in milliseconds, at least 1.
+     */
+    public void setKeepAliveTimeout(long keepAliveTimeout) {
+        if(keepAliveTimeout < 1)
+            throw new IllegalArgumentException("keepAliveTimeout must be at least 1");
+
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * @return the scheduler the keepalive pings of every client are sent on, created on first use.
+     */
+    private static synchronized ScheduledExecutorService getKeepAliveScheduler(){
+        if(keepAliveScheduler == null){
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, ThreadFactories.platform("tcp-keepalive", true));
+            scheduler.setRemoveOnCancelPolicy(true);
+            keepAliveScheduler = scheduler;
         }
+
+        return keepAliveScheduler;
     }
 
     /**
-     * Starts the handshake with the server to secure the connection. To do this, it obtains an RSA public key from
-     * the server and generates an AES key, which is encrypted using the RSA public key, and then sends the
-     * encrypted AES key back to the server.
-     * <br>
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
-     * is called if the server does not send RSA key information.
-     * {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#HANDSHAKE}.
-     * @throws IOException the stream has been closed and the contained input stream does not support reading
-     *                     after close, or another I/O error occurs.
+     * Starts sending keepalive pings on the current connection, if the server supports them and the keepalive is
+     * enabled.
      */
-    private void doHandshake() throws IOException {
-        if(handshakeDone)
+    private void startKeepAlive(){
+        if(!pingNegotiated || keepAliveInterval <= 0)
             return;
 
-        HandshakeModel receivedModel = gson.fromJson(new String(readFully()), HandshakeModel.class);
-        if(receivedModel.getRsaKeyInformation() == null){
-            callErrorOccurred(new NullPointerException("received no rsa key information from the server while handshaking"), ErrorOccurredHandler.Type.HANDSHAKE);
-            return;
+        FrameListener listener = frameListener;
+        synchronized (pendingPings){
+            if(keepAliveTask != null)
+                keepAliveTask.cancel(false);
+
+            keepAliveTask = getKeepAliveScheduler().scheduleWithFixedDelay(() -> keepAlive(listener),
+                    keepAliveInterval, keepAliveInterval, TimeUnit.MILLISECONDS);
         }
+    }
 
-        HandshakeModel sendModel = new HandshakeModel();
-        sendModel.setAesKey(aesKey.getEncoded());
+    /**
+     * Stops the keepalive of the current connection and fails every ping that is waiting for its pong.
+     * @param cause the reason no pong will be received.
+     */
+    private void stopKeepAlive(Exception cause){
+        synchronized (pendingPings){
+            if(keepAliveTask != null)
+                keepAliveTask.cancel(false);
 
-        send(sendModel, receivedModel.getRsaKeyInformation().toPublicKey());
+            keepAliveTask = null;
+        }
 
-        handshakeDone = true;
+        for (CompletableFuture<Long> pong : new ArrayList<>(pendingPings.values()))
+            pong.completeExceptionally(cause);
     }
 
     /**
-     * @return true if the client is running, false otherwise.
+     * Sends a keepalive ping and closes the connection if it is not answered in time.
+     * @param listener the listener of the connection the keepalive was started for.
      */
-    public boolean isRunning() {
-        return running;
+    private void keepAlive(FrameListener listener){
+        if(listener != frameListener || !isRunning())
+            return;
+
+        ping(keepAliveTimeout).whenComplete((rtt, throwable) -> {
+            if(!(throwable instanceof TimeoutException) || listener != frameListener || !isRunning())
+                return;
+
+            Transport current = transport;
+            listener.onClosed(new SocketTimeoutException("no pong was received within " + keepAliveTimeout + " milliseconds"));
+            try {
+                current.abort();
+            } catch (IOException ignored) {}
+        });
     }
 
     /**
-     * @return true if the handshake was performed and successful, false otherwise.
+     * @return the timeout value in milliseconds (default: {@link TcpClient#DEFAULT_TIMEOUT}).
      */
-    public boolean isHandshakeDone() {
-        return handshakeDone;
+    public int getTimeout() {
+        return timeout;
     }
 
     /**
-     * @return true if the code has been reviewed and is correct, false otherwise.
+     * Sets the timeout used for the connection.
+     * @param timeout the timeout value to be used in milliseconds.
      */
-    public boolean isCodeChecked() {
-        return codeChecked;
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
     }
 
     /**
-     * Read raw bytes from the server.
-     * @return {@code byte[]} that represents the received data. After the handshake, this byte array will be encrypted.
-     * @throws IOException the stream has been closed and the contained input stream does not support reading after
-     * close, or another I/O error occurs.
+     * @return true if {@link RsaAesCryptography.AesMode#GCM} is used when the server supports it (default: true),
+     * false otherwise.
      */
-    private byte[] readFully() throws IOException {
-        int length = inputStream.readInt();
-        byte[] received = new byte[length];
-        inputStream.readFully(received);
-        return received;
+    public boolean isAesGcmEnabled() {
+        return aesGcmEnabled;
     }
 
     /**
-     * Sends a JSON model that implements the {@link IModel} interface to the server. The parsed model will be
-     * encrypted with an AES key. In order to be able to send data you must enable the connection
-     * by calling {@link #sendCode(String)}.
-     * <br>
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
-     * is called if the handshake is not yet complete or the connection is not enabled.
-     * {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#SEND}.
-     * @param model JSON model to send.
+     * Sets whether the session should be encrypted with {@link RsaAesCryptography.AesMode#GCM} if the server
+     * advertises {@link HandshakeModel.Capability#AES_GCM} during the handshake. Otherwise, or if the server does not
+     * support it, {@link RsaAesCryptography.AesMode#ECB} is used. Must be set before {@link #startAndConnect()}.
+     * @param aesGcmEnabled true to use AES-GCM if possible, false to always use AES-ECB.
      */
-    public void send(T model){
-        if(!isHandshakeDone()){
-            callErrorOccurred(new IllegalStateException("attempting to send data, but the connection has not yet completed a handshake"), ErrorOccurredHandler.Type.SEND);
-            return;
-        }
+    public void setAesGcmEnabled(boolean aesGcmEnabled) {
+        this.aesGcmEnabled = aesGcmEnabled;
+    }
 
-        if(!codeChecked && !((model instanceof HandshakeModel) || (model instanceof CodeCheckModel))){
-            callErrorOccurred(new IllegalStateException("Enable the connection by passing a code into sendCode(String)"), ErrorOccurredHandler.Type.SEND);
-            return;
-        }
+    /**
+     * @return the {@link RsaAesCryptography.AesMode} the session is encrypted with. Before the handshake is done,
+     * this is always {@link RsaAesCryptography.AesMode#ECB}.
+     */
+    public RsaAesCryptography.AesMode getAesMode() {
+        return sessionCryptography.getAesMode();
+    }
+
+    /**
+     * @return true if {@link HandshakeModel.Capability#SESSION_RESUMPTION} is requested when the server supports it
+     * (default: true), false otherwise.
+     */
+    public boolean isSessionResumptionEnabled() {
+        return sessionResumptionEnabled;
+    }
 
-        send(model, aesKey);
+    /**
+     * Sets whether sessions should be resumed if the server advertises
+     * {@link HandshakeModel.Capability#SESSION_RESUMPTION} during the handshake. The ticket the server issues with a
+     * correct code evaluation is stored in the {@link SessionTicketCache}, and the next connection to the same endpoint
+     * sends it instead of a new RSA encrypted AES key and code. Must be set before {@link #startAndConnect()}.
+     * @param sessionResumptionEnabled true to resume sessions if possible, false to always start a new session.
+     */
+    public void setSessionResumptionEnabled(boolean sessionResumptionEnabled) {
+        this.sessionResumptionEnabled = sessionResumptionEnabled;
     }
 
     /**
-     * Sends a JSON model that implements the {@link IModel} interface to the server,
-     * requires a key to encrypt the data.
-     * <br>
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
-     * is called if {@link #isRunning()} returns false or an exception occurs while writing data.
-     * In both cases, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#SEND}.
-     *
-     * @param model JSON model to send.
-     * @param key key to encrypt
-     * @see #send(IModel)
+     * @return the {@link SessionTicketCache} session tickets are stored in
+     * (default: {@link SessionTicketCache#getDefault()}).
      */
-    private <E extends IModel> void send(E model, Key key){
-        Objects.requireNonNull(key);
-        if(!isRunning()){
-            callErrorOccurred(new IllegalStateException("Client is not running"), ErrorOccurredHandler.Type.SEND);
-            return;
-        }
+    public SessionTicketCache getSessionTicketCache() {
+        return sessionTicketCache;
+    }
 
-        byte[] data = gson.toJson(model).getBytes();
-        try {
-            data = RsaAesCryptography.encrypt(data, key);
+    /**
+     * Sets the {@link SessionTicketCache} session tickets are stored in. Clients that share a cache resume each
+     * other's sessions. Must be set before {@link #startAndConnect()}.
+     * @param sessionTicketCache the cache.
+     */
+    public void setSessionTicketCache(SessionTicketCache sessionTicketCache) {
+        this.sessionTicketCache = Objects.requireNonNull(sessionTicketCache);
+    }
 
-            outputStream.writeInt(data.length);
-            outputStream.write(data);
-        } catch (Exception e) {
-            callErrorOccurred(e, ErrorOccurredHandler.Type.SEND);
-        }
+    /**
+     * @return the {@link PublicKeyCache} the RSA public keys of servers are stored in
+     * (default: {@link PublicKeyCache#getDefault()}).
+     */
+    public PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
     }
 
     /**
-     * Receives data from the server and decrypt them. If an error occurs, it will call
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}.
-     * When such an error occurs, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#RECEIVE}
-     * and the function will return {@code null}.
-     * @return a {@link IModel} that represents the JSON file sent by the server.
+     * Sets the {@link PublicKeyCache} the RSA public keys of servers are stored in. Must be set before
+     * {@link #startAndConnect()}.
+     * @param publicKeyCache the cache.
      */
-    private IModel receive(){
-        if(!isRunning()){
-            callErrorOccurred(new IllegalStateException("Client is not running"), ErrorOccurredHandler.Type.RECEIVE);
-            return null;
-        }
+    public void setPublicKeyCache(PublicKeyCache publicKeyCache) {
+        this.publicKeyCache = Objects.requireNonNull(publicKeyCache);
+    }
 
-        try {
-            byte[] receivedData = readFully();
-            return gson.fromJson(new String(RsaAesCryptography.decryptAes(receivedData, aesKey)), isCodeChecked() ? modelClass : CodeCheckModel.class);
-        } catch (Exception e) {
-            callErrorOccurred(e, ErrorOccurredHandler.Type.RECEIVE);
-        }
+    /**
+     * Returns the {@link Flow.Publisher} of the received models, an alternative to
+     * {@link ReceiveHandler#onDataReceived(IModel)} with demand-based backpressure. The publisher is created on the
+     * first call with the receive executor, buffer size and overflow policy of this client. Every model that is
+     * passed to {@link ReceiveHandler#onDataReceived(IModel)} is also published. Once the client is disconnected,
+     * the publisher completes its subscribers, and {@link #startAndConnect()} creates a new publisher on the next call.
+     * @return the publisher of the received models.
+     */
+    public synchronized ReceivePublisher<T> getReceivePublisher() {
+        if(receivePublisher == null)
+            receivePublisher = new ReceivePublisher<>(receiveExecutor, receiveBufferSize, receiveOverflowPolicy, new PublisherBackpressure());
 
-        return null;
+        return receivePublisher;
     }
 
     /**
-     * Waits the current thread until the handshake completes. If the handshake is already completed, it
-     * will not pause the thread.
-     * <br>
-     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
-     * is called if there is already a thread waiting for the handshake to complete.
-     * In this case, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#HANDSHAKE}.
-     * @throws InterruptedException if any thread interrupted the current thread before or while the current thread
-     *                              was waiting. The <em>interrupted status</em> of the current thread is cleared
-     *                              when this exception is thrown.
+     * @return the {@link Executor} the subscribers of the {@link #getReceivePublisher()} are signalled on
+     * (default: {@link ForkJoinPool#commonPool()}).
      */
-    public void waitForHandshake() throws InterruptedException {
-        if(isHandshakeDone())
-            return;
+    public Executor getReceiveExecutor() {
+        return receiveExecutor;
+    }
 
-        if(waiterThread != null){
-            callErrorOccurred(new IllegalStateException("there is already a thread waiting for the handshake to complete"), ErrorOccurredHandler.Type.HANDSHAKE);
-            return;
-        }
+    /**
+     * Sets the {@link Executor} the subscribers of the {@link #getReceivePublisher()} are signalled on, so slow
+     * subscribers do not run on the thread that reads from the connection. Must be set before
+     * {@link #getReceivePublisher()} is called.
+     * @param receiveExecutor the executor.
+     */
+    public void setReceiveExecutor(Executor receiveExecutor) {
+        this.receiveExecutor = Objects.requireNonNull(receiveExecutor);
+    }
 
-        waiterThread = Thread.currentThread();
-        synchronized (waiterThread){
-            waiterThread.wait();
-        }
+    /**
+     * @return the maximum number of models queued per subscriber of the {@link #getReceivePublisher()}
+     * (default: {@link TcpClient#DEFAULT_RECEIVE_BUFFER_SIZE}).
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
     }
 
     /**
-     * Notifies a thread waiting for the handshake to complete.
+     * Sets the maximum number of models queued per subscriber of the {@link #getReceivePublisher()}. Must be set
+     * before {@link #getReceivePublisher()} is called.
+     * @param receiveBufferSize the maximum number of queued models, at least 1.
      */
-    private void notifyWaiterThread(){
-        if(waiterThread == null)
-            return;
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if(receiveBufferSize < 1)
+            throw new IllegalArgumentException("receiveBufferSize must be at least 1");
 
-        synchronized (waiterThread){
-            waiterThread.notify();
-        }
+        this.receiveBufferSize = receiveBufferSize;
+    }
 
-        waiterThread = null;
+    /**
+     * @return what happens if a model is received while the queue of a subscriber is full
+     * (default: {@link ReceivePublisher.OverflowPolicy#BLOCK}).
+     */
+    public ReceivePublisher.OverflowPolicy getReceiveOverflowPolicy() {
+        return receiveOverflowPolicy;
     }
 
     /**
-     * Sends the code to enable the connection, allowing requests and responses from the server.
-     * @param code the code to send
+     * Sets what happens if a model is received while the queue of a subscriber of the {@link #getReceivePublisher()}
+     * is full. Must be set before {@link #getReceivePublisher()} is called.
+     * @param receiveOverflowPolicy the overflow policy.
      */
-    public void sendCode(String code){
-        CodeCheckModel codeCheckModel = new CodeCheckModel();
-        codeCheckModel.setCode(code);
-        send(codeCheckModel, aesKey);
+    public void setReceiveOverflowPolicy(ReceivePublisher.OverflowPolicy receiveOverflowPolicy) {
+        this.receiveOverflowPolicy = Objects.requireNonNull(receiveOverflowPolicy);
     }
 
     /**
-     * Class extends {@link Thread} used to handle the communication between the server and this client.
-     * If the code evaluation is received, the class will call {@link ReceiveHandler#onCodeEvaluationReceived(boolean, TcpClient)}
-     * and if data is received, the class will call {@link ReceiveHandler#onDataReceived(IModel)}. It also checks if the
-     * connection is enabled and allow or disallow the communication to the server.
+     * @return the {@link Executor} received frames are decrypted and decoded on, {@code null} if they are decoded by
+     * the thread that reads from the connection (default: {@code null}).
      */
-    private class ClientHandler extends Thread{
+    public Executor getDecodeExecutor() {
+        return decodeExecutor;
+    }
 
-        @Override
-        public void run() {
-            running = true;
+    /**
+     * Sets the {@link Executor} received frames are decrypted and decoded on once the connection is enabled. The
+     * thread that reads from the connection then only checks the nonce of a frame and copies it, and the workers
+     * decode up to {@link #getMaxPendingDecodes()} frames in parallel. The order the decoded models are dispatched in
+     * is set by {@link #setDecodeOrdering(DecodeOrdering)}. Must be set before {@link #startAndConnect()}.
+     * @param decodeExecutor the executor, {@code null} to decode on the thread that reads from the connection.
+     */
+    public void setDecodeExecutor(Executor decodeExecutor) {
+        this.decodeExecutor = decodeExecutor;
+    }
 
-            try {
-                inputStream = new DataInputStream(client.getInputStream());
-                outputStream = new DataOutputStream(client.getOutputStream());
+    /**
+     * @return the order models decoded by the {@link #getDecodeExecutor()} are dispatched in
+     * (default: {@link DecodeOrdering#STRICT}).
+     */
+    public DecodeOrdering getDecodeOrdering() {
+        return decodeOrdering;
+    }
 
-                doHandshake();
-                notifyWaiterThread();
-            } catch (IOException e) {
-                callErrorOccurred(e, ErrorOccurredHandler.Type.HANDSHAKE);
-            }
+    /**
+     * Sets the order models decoded by the {@link #getDecodeExecutor()} are dispatched in. Must be set before
+     * {@link #startAndConnect()}.
+     * @param decodeOrdering the ordering.
+     */
+    public void setDecodeOrdering(DecodeOrdering decodeOrdering) {
+        this.decodeOrdering = Objects.requireNonNull(decodeOrdering);
+    }
 
-            while (isRunning()){
-                IModel model = receive();
-                if(model == null)
-                    return;
+    /**
+     * @return the maximum number of frames that are decoded or wait to be dispatched at the same time
+     * (default: {@link TcpClient#DEFAULT_MAX_PENDING_DECODES}).
+     */
+    public int getMaxPendingDecodes() {
+        return maxPendingDecodes;
+    }
+
+    /**
+     * Sets the maximum number of frames that are decoded by the {@link #getDecodeExecutor()} or wait to be
+     * dispatched at the same time. If it is reached, reading from the connection is paused until a frame was
+     * dispatched, so the server is slowed down by TCP flow control while the thread that reads, e.g. the
+     * {@link NioEventLoop}, keeps serving other connections. Must be set before {@link #startAndConnect()}.
+     * @param maxPendingDecodes the maximum number of pending frames, at least 1 and at most
+     *                          {@link RsaAesCryptography#REPLAY_WINDOW}, so no pending frame falls out of the replay
+     *                          window.
+     */
+    public void setMaxPendingDecodes(int maxPendingDecodes) {
+        if(maxPendingDecodes < 1 || maxPendingDecodes > RsaAesCryptography.REPLAY_WINDOW)
+            throw new IllegalArgumentException("maxPendingDecodes must be between 1 and " + RsaAesCryptography.REPLAY_WINDOW);
 
-                if(!codeChecked){
-                    codeChecked = ((CodeCheckModel)model).isCodeCorrect();
+        this.maxPendingDecodes = maxPendingDecodes;
+    }
 
-                    if(getReceiveHandler() != null)
-                        getReceiveHandler().onCodeEvaluationReceived(codeChecked, TcpClient.this);
+    /**
+     * @return the {@link ReconnectPolicy} used after the connection was lost, {@code null} if the client does not
+     * reconnect (default: {@code null}).
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
 
-                    continue;
-                }
+    /**
+     * Sets the {@link ReconnectPolicy} used after an established connection was lost. The client then reconnects
+     * in the background, repeats the handshake and enables the connection again, either by resuming the session or
+     * by sending the code last passed into {@link #sendCode(String)}. Models sent in the meantime are buffered and
+     * sent once the connection is enabled again, see {@link #setSendBufferCapacity(int)}.
+     * @param reconnectPolicy the policy, {@code null} to not reconnect.
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
 
-                if(getReceiveHandler() != null)
-                    getReceiveHandler().onDataReceived(modelClass.cast(model));
-            }
+    /**
+     * @return the maximum number of models that are buffered while the client reconnects
+     * (default: {@link TcpClient#DEFAULT_SEND_BUFFER_CAPACITY}).
+     */
+    public int getSendBufferCapacity() {
+        return sendBufferCapacity;
+    }
+
+    /**
+     * Sets the maximum number of models that are buffered while the client reconnects. Sending fails with an
+     * {@link IllegalStateException} if the buffer is full.
+     * @param sendBufferCapacity the maximum number of buffered models, at least 0.
+     */
+    public void setSendBufferCapacity(int sendBufferCapacity) {
+        if(sendBufferCapacity < 0)
+            throw new IllegalArgumentException("sendBufferCapacity must be at least 0");
+
+        this.sendBufferCapacity = sendBufferCapacity;
+    }
+
+    /**
+     * @return true if the connection was lost and the client is reconnecting, false otherwise.
+     */
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * @return true if the handshake sent a session ticket, so the server confirms the resumed session with a code
+     * evaluation without {@link #sendCode(String)}, false otherwise.
+     */
+    public boolean isResumingSession() {
+        return resumingTicket != null;
+    }
+
+    /**
+     * @return true if {@link HandshakeModel.Capability#ENVELOPE} is requested when the server supports it
+     * (default: true), false otherwise.
+     */
+    public boolean isEnvelopeEnabled() {
+        return envelopeEnabled;
+    }
+
+    /**
+     * Sets whether data models should be wrapped in an {@link Envelope} if the server advertises
+     * {@link HandshakeModel.Capability#ENVELOPE} during the handshake. The envelope is required by
+     * {@link #request(IModel)}. Must be set before {@link #startAndConnect()}.
+     * @param envelopeEnabled true to use envelopes if possible, false to always send plain models.
+     */
+    public void setEnvelopeEnabled(boolean envelopeEnabled) {
+        this.envelopeEnabled = envelopeEnabled;
+    }
+
+    /**
+     * @return true if both sides negotiated {@link HandshakeModel.Capability#ENVELOPE}, so {@link #request(IModel)}
+     * can be used, false otherwise.
+     */
+    public boolean isEnvelopeNegotiated() {
+        return envelopeNegotiated;
+    }
+
+    /**
+     * @return the time in milliseconds after which {@link #request(IModel)} fails if no response was received
+     * (default: {@link TcpClient#DEFAULT_REQUEST_TIMEOUT}).
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets the timeout used by {@link #request(IModel)}.
+     * @param requestTimeout the timeout in milliseconds, 0 or less to wait for a response until the connection is closed.
+     */
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @return the number of requests that are waiting for a response.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * @return the number of sends and requests buffered while reconnecting.
+     */
+    public int getSendBufferSize() {
+        synchronized (sendBuffer){
+            return sendBuffer.size();
+        }
+    }
+
+    /**
+     * @return the number of received frames that are decoded or wait to be dispatched by the decode executor.
+     */
+    public int getPendingDecodeCount() {
+        DecodePipeline pipeline = decodePipeline;
+        return pipeline == null ? 0 : pipeline.getPendingCount();
+    }
+
+    /**
+     * @return the {@link TransportMode} used for the connection (default: {@link TransportMode#BLOCKING}).
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Sets the {@link TransportMode} used for the connection. Must be set before {@link #startAndConnect()}.
+     * In {@link TransportMode#NIO}, the {@link ReceiveHandler} is called on a thread of the {@link NioEventLoop}
+     * that is shared with other connections, so it should return quickly.
+     * @param transportMode the transport mode to use.
+     * @see #setNioEventLoop(NioEventLoop)
+     */
+    public void setTransportMode(TransportMode transportMode) {
+        this.transportMode = Objects.requireNonNull(transportMode);
+    }
+
+    /**
+     * @return the {@link NioEventLoop} used in {@link TransportMode#NIO}, {@code null} if
+     * {@link NioEventLoop#getDefault()} is used.
+     */
+    public NioEventLoop getNioEventLoop() {
+        return nioEventLoop;
+    }
+
+    /**
+     * Sets the {@link NioEventLoop} that serves the connection in {@link TransportMode#NIO}. If no event loop is
+     * set, {@link NioEventLoop#getDefault()} is used. Must be set before {@link #startAndConnect()}.
+     * @param nioEventLoop the event loop to use.
+     */
+    public void setNioEventLoop(NioEventLoop nioEventLoop) {
+        this.nioEventLoop = nioEventLoop;
+    }
+
+    /**
+     * @return the {@link ThreadFactory} that creates the reading and the writing thread in {@link TransportMode#BLOCKING}.
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the {@link ThreadFactory} that creates the reading and the writing thread in {@link TransportMode#BLOCKING}.
+     * The default creates platform threads. Use {@link ThreadFactories#virtual(String)} to use virtual threads,
+     * which park cheaply while blocked. Must be set before {@link #startAndConnect()}.
+     * @param threadFactory the thread factory to use.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = Objects.requireNonNull(threadFactory);
+    }
+
+    /**
+     * @return the {@link BufferPool} frames are read into and encrypted into (default: {@link BufferPool#getDefault()}).
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the {@link BufferPool} that provides the buffers of received and sent frames. Received frames are read,
+     * decrypted in place and parsed from a pooled buffer, and sent frames are encrypted into a pooled buffer that is
+     * given back once it was written. A pool with direct buffers saves a copy in {@link TransportMode#NIO}.
+     * Must be set before {@link #startAndConnect()}.
+     * @param bufferPool the buffer pool to use.
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = Objects.requireNonNull(bufferPool);
+    }
+
+    /**
+     * @return the maximum number of bytes of a received frame (default: {@link TcpClient#DEFAULT_MAX_FRAME_SIZE}).
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes a frame received from the server may have. The length prefix of every frame
+     * is checked before a buffer is allocated for it, and the connection is closed if a frame is larger, so a broken
+     * or hostile server cannot make the client allocate arbitrary amounts of memory.
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
+     * is called with {@link ErrorOccurredHandler.Type#RECEIVE} in this case. Must be set before {@link #startAndConnect()}.
+     * @param maxFrameSize the maximum frame size in bytes.
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if(maxFrameSize <= 0)
+            throw new IllegalArgumentException("maxFrameSize must be positive");
+
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * @return the {@link Codec} that is used if the server supports it (default: {@link JsonCodec}).
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the {@link Codec} that encodes the models exchanged after the handshake. The codec is only used if the
+     * server lists its name during the handshake, otherwise JSON is used. The handshake itself is always JSON.
+     * Must be set before {@link #startAndConnect()}.
+     * @param codec the codec to use.
+     * @see GsonRegistry#getCborCodec()
+     */
+    public void setCodec(Codec codec) {
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * @return the {@link Codec} both sides negotiated during the handshake. Before the handshake is done, this is
+     * always {@link JsonCodec}.
+     */
+    public Codec getSessionCodec() {
+        return sessionCodec;
+    }
+
+    /**
+     * @return the {@link Compression}s that are offered to the server, in order of preference
+     * (default: {@link Compression#loadInstalled()}).
+     */
+    public List<Compression> getCompressions() {
+        return compressions;
+    }
+
+    /**
+     * Sets the {@link Compression}s that may be used for the frames exchanged after the handshake. The first
+     * compression the server lists during the handshake is used, if the server lists none of them, frames are not
+     * compressed. Must be set before {@link #startAndConnect()}.
+     * @param compressions the compressions in order of preference, empty to disable compression.
+     */
+    public void setCompressions(List<Compression> compressions) {
+        this.compressions = List.copyOf(compressions);
+    }
+
+    /**
+     * @return the number of bytes an encoded model must exceed to be compressed
+     * (default: {@link TcpClient#DEFAULT_COMPRESSION_THRESHOLD}).
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the size above which encoded models are compressed. Smaller models are sent uncompressed, since compressing
+     * them costs more time than it saves. A compressed model is also sent uncompressed if it did not get smaller.
+     * @param compressionThreshold the threshold in bytes.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return the {@link Compression} both sides negotiated during the handshake, {@code null} if frames are not
+     * compressed.
+     */
+    public Compression getSessionCompression() {
+        return sessionCompression;
+    }
+
+    /**
+     * Start the client and connect it to the server specified in the constructor.
+     * @throws IOException if an error occurs during the connection.
+     * @see #disconnect()
+     */
+    public void startAndConnect() throws IOException {
+        closed = false;
+        synchronized (this){
+            if(receivePublisher != null && receivePublisher.isClosed())
+                receivePublisher = null;
+        }
+
+        connect();
+    }
+
+    /**
+     * Opens a new {@link Transport} to the server and starts reading from it.
+     * @throws IOException if an error occurs during the connection.
+     */
+    private void connect() throws IOException {
+        connectStart = System.nanoTime();
+        sessionReady = new CompletableFuture<>();
+        DecodePipeline previousPipeline = decodePipeline;
+        if(previousPipeline != null)
+            previousPipeline.close();
+        decodePipeline = null;
+
+        FrameListener listener = new FrameListener();
+        frameListener = listener;
+        Transport newTransport;
+        if(transportMode == TransportMode.NIO)
+            newTransport = new NioTransport(nioEventLoop == null ? NioEventLoop.getDefault() : nioEventLoop, listener, bufferPool, maxFrameSize);
+        else
+            newTransport = new BlockingTransport(listener, threadFactory, bufferPool, maxFrameSize);
+
+        // subscribers that are still full keep the new connection paused
+        synchronized (receivePauseLock){
+            transport = newTransport;
+            for (int i = 0; i < receivePauses; i++)
+                newTransport.pauseReading();
+        }
+
+        transport.connect(address, timeout);
+
+        running.set(true);
+        transport.start();
+    }
+
+    /**
+     * Disconnect and stop the client. Models that were sent before are still written, for at most
+     * {@link #getTimeout()} milliseconds, or {@link #DEFAULT_TIMEOUT} if the timeout is 0, before the connection is
+     * closed. If an I/O error occurs when closing the socket, it will call
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}.
+     * When such an error occurs, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#DISCONNECT}.
+     * @see #startAndConnect()
+     */
+    public void disconnect(){
+        if(instance == this)
+            instance = null;
+
+        closed = true;
+        if(isReconnecting())
+            stopReconnecting(new ClosedChannelException());
+
+        closeConnection(true);
+        closeReceivePublisher(null);
+    }
+
+    /**
+     * Completes the subscribers of the {@link #getReceivePublisher()} once they received the queued models.
+     * @param cause the reason the connection was closed, {@code null} if it was closed by the client.
+     */
+    private void closeReceivePublisher(Exception cause){
+        ReceivePublisher<T> publisher = receivePublisher;
+        if(publisher != null)
+            publisher.close(cause);
+    }
+
+    /**
+     * Passes a received model to the {@link #getReceivePublisher()} and the {@link ReceiveHandler}.
+     * @param model the received model.
+     */
+    private void dispatch(T model){
+        ReceivePublisher<T> publisher = receivePublisher;
+        if(publisher != null)
+            publisher.publish(model);
+
+        if(getReceiveHandler() != null)
+            getReceiveHandler().onDataReceived(model);
+    }
+
+    /**
+     * Closes the current connection at once, without stopping a reconnect.
+     * @see #closeConnection(boolean)
+     */
+    private void closeConnection(){
+        closeConnection(false);
+    }
+
+    /**
+     * Closes the current connection without stopping a reconnect. Requests are only failed if the client is not
+     * reconnecting, since the pending requests of a reconnecting client are buffered and were not sent yet.
+     * @param drain true to write the frames that were already queued first, false to fail them.
+     */
+    private void closeConnection(boolean drain){
+        sessionReady.completeExceptionally(new ClosedChannelException());
+        stopKeepAlive(new ClosedChannelException());
+        if(transport == null || !running.compareAndSet(true, false))
+            return;
+
+        try {
+            if(drain)
+                transport.close(timeout > 0 ? timeout : DEFAULT_TIMEOUT);
+            else
+                transport.abort();
+        } catch (IOException e) {
+            callErrorOccurred(e, ErrorOccurredHandler.Type.DISCONNECT);
+        }
+
+        if(!isReconnecting())
+            failPendingRequests(new ClosedChannelException());
+        closeCompressors();
+    }
+
+    /**
+     * Starts a thread that reconnects with the {@link ReconnectPolicy}. Models sent from now on are buffered.
+     */
+    private void startReconnecting(){
+        synchronized (sendBuffer){
+            reconnecting = true;
+        }
+
+        Thread thread = threadFactory.newThread(this::reconnect);
+        reconnectThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Reconnects until the connection is enabled again, the {@link ReconnectPolicy} gives up or
+     * {@link #disconnect()} is called. Every attempt opens a new connection with a new AES key and has
+     * {@link #getTimeout()} milliseconds to complete the handshake and the code check, or as long as it takes if
+     * the timeout is 0, like the timeout of the socket.
+     */
+    private void reconnect(){
+        ReconnectPolicy policy = reconnectPolicy;
+        Exception cause = new ClosedChannelException();
+        for (int attempt = 0; policy != null && policy.canRetry(attempt); attempt++){
+            try {
+                Thread.sleep(policy.getDelay(attempt));
+                if(closed)
+                    return;
+
+                resetSession();
+                connect();
+                if(closed){
+                    closeConnection();
+                    return;
+                }
+
+                if(timeout > 0)
+                    sessionReady.get(timeout, TimeUnit.MILLISECONDS);
+                else
+                    sessionReady.get();
+
+                if(replaySendBuffer())
+                    return;
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                closeConnection();
+            } catch (IOException | GeneralSecurityException | TimeoutException e) {
+                cause = e;
+                closeConnection();
+            }
+        }
+
+        if(closed)
+            return;
+
+        stopReconnecting(cause);
+        failPendingRequests(cause);
+        closeReceivePublisher(cause);
+        callErrorOccurred(cause, ErrorOccurredHandler.Type.RECONNECT);
+    }
+
+    /**
+     * Stops reconnecting and fails every buffered model.
+     * @param cause the reason the buffered models will not be sent.
+     */
+    private void stopReconnecting(Exception cause){
+        Thread thread = reconnectThread;
+        if(thread != null && thread != Thread.currentThread())
+            thread.interrupt();
+
+        reconnectThread = null;
+        synchronized (sendBuffer){
+            reconnecting = false;
+            BufferedSend<T> bufferedSend;
+            while ((bufferedSend = sendBuffer.poll()) != null)
+                bufferedSend.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Sends the buffered models in the order they were sent and stops buffering, unless the connection was lost
+     * again in the meantime.
+     * @return true if the connection is still enabled and the client stopped reconnecting, false otherwise.
+     */
+    private boolean replaySendBuffer(){
+        synchronized (sendBuffer){
+            if(!isRunning())
+                return false;
+
+            BufferedSend<T> bufferedSend;
+            while ((bufferedSend = sendBuffer.poll()) != null){
+                CompletableFuture<Void> future = bufferedSend.correlationId == null
+                        ? sendNow(bufferedSend.model)
+                        : sendRequest(bufferedSend.correlationId, bufferedSend.model);
+
+                CompletableFuture<Void> buffered = bufferedSend.future;
+                future.whenComplete((ignored, throwable) -> {
+                    if(throwable == null)
+                        buffered.complete(null);
+                    else
+                        buffered.completeExceptionally(throwable);
+                });
+            }
+
+            if(!isRunning())
+                return false;
+
+            reconnecting = false;
+            reconnectThread = null;
+            return true;
+        }
+    }
+
+    /**
+     * Buffers a model while the client is reconnecting.
+     * @param model the model to send.
+     * @param correlationId the correlation id of a request, {@code null} for a model sent by {@link #sendAsync(IModel)}.
+     * @return a future that completes once the model was written after the reconnect, or {@code null} if the client
+     * is not reconnecting anymore.
+     */
+    private CompletableFuture<Void> bufferSend(T model, Long correlationId){
+        synchronized (sendBuffer){
+            if(!isReconnecting())
+                return null;
+
+            if(sendBuffer.size() >= sendBufferCapacity)
+                return CompletableFuture.failedFuture(new IllegalStateException("the send buffer is full while reconnecting"));
+
+            BufferedSend<T> bufferedSend = new BufferedSend<>(model, correlationId);
+            sendBuffer.add(bufferedSend);
+            return bufferedSend.future;
+        }
+    }
+
+    /**
+     * Generates a new AES key and resets the state negotiated by the previous connection.
+     * @throws GeneralSecurityException if no AES key can be generated.
+     */
+    private void resetSession() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        aesKey = keyGenerator.generateKey();
+        sessionCryptography = new RsaAesCryptography(aesKey);
+
+        handshakeDone = false;
+        codeChecked = false;
+        envelopeNegotiated = false;
+        resumptionNegotiated = false;
+        pingNegotiated = false;
+        resumingTicket = null;
+        sessionCodec = jsonCodec;
+        sessionCompression = null;
+        closeCompressors();
+    }
+
+    /**
+     * Completes every request that is waiting for a response exceptionally.
+     * @param cause the reason no response will be received.
+     */
+    private void failPendingRequests(Exception cause){
+        for (CompletableFuture<T> request : new ArrayList<>(pendingRequests.values()))
+            request.completeExceptionally(cause);
+    }
+
+    /**
+     * Releases the {@link Compressor}s of the connection. Compressors that are in use by another thread are closed
+     * by it once the session {@link Compression} is no longer the one they were created by.
+     */
+    private void closeCompressors(){
+        Compressor compressor;
+        while ((compressor = compressors.poll()) != null)
+            compressor.close();
+        while ((compressor = decompressors.poll()) != null)
+            compressor.close();
+    }
+
+    /**
+     * Gives a {@link Compressor} back to its queue, or closes it if the session {@link Compression} changed while
+     * it was in use, so a later session never gets a compressor of another compression.
+     * @param queue the compressors or decompressors of the connection.
+     * @param compressor the compressor.
+     * @param compression the compression the compressor was taken for.
+     */
+    private void giveBack(Queue<Compressor> queue, Compressor compressor, Compression compression){
+        if(compression == sessionCompression)
+            queue.offer(compressor);
+        else
+            compressor.close();
+    }
+
+    /**
+     * Stores the session ticket issued with a correct code evaluation in the {@link SessionTicketCache}, together with
+     * the AES key of this session. A ticket that was rejected by the server is removed from the cache.
+     * @param codeCheckModel the code evaluation of the server.
+     */
+    private void updateSessionTicket(CodeCheckModel codeCheckModel){
+        EndpointAddress endpoint = getRemoteAddress();
+        if(!codeCheckModel.isCodeCorrect()){
+            if(resumingTicket != null)
+                sessionTicketCache.remove(endpoint, resumingTicket);
+
+            return;
+        }
+
+        if(resumptionNegotiated && codeCheckModel.getSessionTicket() != null && codeCheckModel.getSessionLifetime() > 0)
+            sessionTicketCache.put(endpoint, new SessionTicket(codeCheckModel.getSessionTicket(), aesKey, codeCheckModel.getSessionLifetime()));
+    }
+
+    /**
+     * Starts the handshake with the server to secure the connection. To do this, it obtains an RSA public key from
+     * the server and generates an AES key, which is encrypted using the RSA public key, and then sends the
+     * encrypted AES key back to the server. The RSA block holds nothing but the AES key, since RSA-OAEP with SHA-512
+     * fits at most 126 bytes with a 2048-bit key. If the server listed any capability, codec or compression, the
+     * selected ones follow in a second frame, the first frame encrypted with the AES key in
+     * {@link RsaAesCryptography.AesMode#ECB}. If both sides support it, the session is switched to
+     * {@link RsaAesCryptography.AesMode#GCM} afterwards.
+     * <br>
+     * If both sides support {@link HandshakeModel.Capability#SESSION_RESUMPTION} and the {@link SessionTicketCache}
+     * holds a ticket for the server, the RSA encryption is skipped: the ticket is sent together with a random nonce,
+     * and the AES key of the session is derived from both with {@link SessionTicket#deriveKey(byte[])}.
+     * <br>
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
+     * is called if the server does not send valid RSA key information.
+     * {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#HANDSHAKE}.
+     * @param frame the first frame received from the server, containing the RSA key information.
+     */
+    private void doHandshake(ByteBuffer frame) {
+        if(handshakeDone)
+            return;
+
+        HandshakeModel receivedModel;
+        try {
+            receivedModel = gson.fromJson(new Utf8BufferReader(frame), HandshakeModel.class);
+        } catch (JsonParseException e) {
+            callErrorOccurred(e, ErrorOccurredHandler.Type.HANDSHAKE);
+            return;
+        }
+
+        if(receivedModel == null || receivedModel.getRsaKeyInformation() == null){
+            callErrorOccurred(new NullPointerException("received no rsa key information from the server while handshaking"), ErrorOccurredHandler.Type.HANDSHAKE);
+            return;
+        }
+
+        HandshakeModel sendModel = new HandshakeModel();
+
+        boolean gcm = aesGcmEnabled && receivedModel.hasCapability(HandshakeModel.Capability.AES_GCM);
+        if(gcm)
+            sendModel.addCapability(HandshakeModel.Capability.AES_GCM);
+
+        boolean envelope = envelopeEnabled && receivedModel.hasCapability(HandshakeModel.Capability.ENVELOPE);
+        if(envelope)
+            sendModel.addCapability(HandshakeModel.Capability.ENVELOPE);
+
+        boolean ping = envelope && receivedModel.hasCapability(HandshakeModel.Capability.PING);
+        if(ping)
+            sendModel.addCapability(HandshakeModel.Capability.PING);
+
+        Codec negotiatedCodec = JsonCodec.NAME.equals(codec.getName()) ? codec : jsonCodec;
+        if(negotiatedCodec != codec && receivedModel.hasCodec(codec.getName())){
+            sendModel.addCodec(codec.getName());
+            negotiatedCodec = codec;
+        }
+
+        Compression negotiatedCompression = null;
+        for (Compression compression : compressions) {
+            if(receivedModel.hasCompression(compression.getName())){
+                sendModel.addCompression(compression.getName());
+                negotiatedCompression = compression;
+                break;
+            }
+        }
+
+        boolean resumption = sessionResumptionEnabled && receivedModel.hasCapability(HandshakeModel.Capability.SESSION_RESUMPTION);
+        if(resumption)
+            sendModel.addCapability(HandshakeModel.Capability.SESSION_RESUMPTION);
+
+        SessionTicket ticket = resumption ? sessionTicketCache.get(getRemoteAddress()) : null;
+        try {
+            if(ticket != null){
+                byte[] nonce = new byte[RESUMPTION_NONCE_LENGTH];
+                RANDOM.nextBytes(nonce);
+                sendModel.setSessionTicket(ticket.getTicket());
+                sendModel.setResumptionNonce(nonce);
+                aesKey = ticket.deriveKey(nonce);
+
+                reportSendFailure(send(sendModel, null, jsonCodec, null));
+            }else{
+                PublicKey publicKey = publicKeyCache.getPublicKey(getRemoteAddress(), receivedModel.getRsaKeyInformation());
+                HandshakeModel keyModel = new HandshakeModel();
+                keyModel.setAesKey(aesKey.getEncoded());
+                int keyModelLength = gson.toJson(keyModel).length();
+                int maxLength = RsaAesCryptography.getMaxRsaInputLength(publicKey);
+                if(keyModelLength > maxLength)
+                    throw new IllegalBlockSizeException("the handshake model is " + keyModelLength + " bytes long, but the rsa key of the server fits at most " + maxLength + " bytes");
+
+                reportSendFailure(send(keyModel, new RsaAesCryptography(publicKey), jsonCodec, null));
+                if(receivedModel.hasSelections())
+                    reportSendFailure(send(sendModel, sessionCryptography, jsonCodec, null));
+            }
+
+            if(gcm || ticket != null)
+                sessionCryptography = new RsaAesCryptography(aesKey, gcm ? RsaAesCryptography.AesMode.GCM : RsaAesCryptography.AesMode.ECB);
+        } catch (GeneralSecurityException e) {
+            callErrorOccurred(e, ErrorOccurredHandler.Type.HANDSHAKE);
+            return;
+        }
+
+        resumptionNegotiated = resumption;
+        resumingTicket = ticket;
+        envelopeNegotiated = envelope;
+        pingNegotiated = ping;
+        sessionCodec = negotiatedCodec;
+        sessionCompression = negotiatedCompression;
+        handshakeDone = true;
+        metrics.recordHandshake(System.nanoTime() - connectStart);
+    }
+
+    /**
+     * @return true if the client is running, false otherwise.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return true if the handshake was performed and successful, false otherwise.
+     */
+    public boolean isHandshakeDone() {
+        return handshakeDone;
+    }
+
+    /**
+     * @return true if the code has been reviewed and is correct, false otherwise.
+     */
+    public boolean isCodeChecked() {
+        return codeChecked;
+    }
+
+    /**
+     * Sends a JSON model that implements the {@link IModel} interface to the server. The parsed model will be
+     * encrypted with an AES key. In order to be able to send data you must enable the connection
+     * by calling {@link #sendCode(String)}.
+     * <br>
+     * The model is queued and written in the background, see {@link #sendAsync(IModel)}.
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
+     * is called if the handshake is not yet complete, the connection is not enabled or the model cannot be written.
+     * {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#SEND}.
+     * @param model JSON model to send.
+     */
+    public void send(T model){
+        reportSendFailure(sendAsync(model));
+    }
+
+    /**
+     * Sends a JSON model that implements the {@link IModel} interface to the server without waiting for it to be
+     * written. The model is serialized and encrypted on the calling thread and then queued. A single writer per
+     * connection drains the queue and coalesces the queued frames into as few socket writes as possible, so
+     * frames sent by many threads never interleave and are written in the order this method was called.
+     * <br>
+     * Unlike {@link #send(IModel)}, failures are not passed to the {@link ErrorOccurredHandler}, but complete the
+     * returned future exceptionally.
+     * @param model JSON model to send.
+     * If the client is reconnecting, the model is buffered and sent once the connection is enabled again.
+     * @return a future that completes once the model was written to the connection, or completes exceptionally if
+     * the handshake is not yet complete, the connection is not enabled or the model cannot be written.
+     */
+    public CompletableFuture<Void> sendAsync(T model){
+        if(isReconnecting()){
+            CompletableFuture<Void> buffered = bufferSend(model, null);
+            if(buffered != null)
+                return buffered;
+        }
+
+        return sendNow(model);
+    }
+
+    /**
+     * Sends a model on the current connection.
+     * @param model JSON model to send.
+     * @return the future described by {@link #sendAsync(IModel)}.
+     */
+    private CompletableFuture<Void> sendNow(T model){
+        if(!isHandshakeDone())
+            return CompletableFuture.failedFuture(new IllegalStateException("attempting to send data, but the connection has not yet completed a handshake"));
+
+        if(!codeChecked && !((model instanceof HandshakeModel) || (model instanceof CodeCheckModel)))
+            return CompletableFuture.failedFuture(new IllegalStateException("Enable the connection by passing a code into sendCode(String)"));
+
+        if(codeChecked && envelopeNegotiated)
+            return sendSession(new Envelope<>(null, model));
+
+        return sendSession(model);
+    }
+
+    /**
+     * Sends a request with the {@link #getRequestTimeout()} of this client.
+     * @param model JSON model to send.
+     * @return a future that completes with the response of the server.
+     * @see #request(IModel, long)
+     */
+    public CompletableFuture<T> request(T model){
+        return request(model, requestTimeout);
+    }
+
+    /**
+     * Sends a JSON model as a request and returns a future for the response of the server. The model is wrapped in
+     * an {@link Envelope} with a new correlation id and the response is the received model whose envelope carries
+     * the same id. Any number of requests can be in flight at the same time, responses may arrive in any order.
+     * Received models that do not belong to a pending request are passed to
+     * {@link ReceiveHandler#onDataReceived(IModel)} as usual.
+     * <br>
+     * The returned future is completed on the thread that reads from the connection, so dependent actions should
+     * return quickly. It completes exceptionally with a {@link java.util.concurrent.TimeoutException} if no
+     * response was received within the timeout, with a {@link ClosedChannelException} if the client is disconnected
+     * and with an {@link IllegalStateException} if the code check has not passed or the server does not support
+     * {@link HandshakeModel.Capability#ENVELOPE}. If the client is reconnecting, the request is buffered and sent
+     * once the connection is enabled again; the timeout includes the time it is buffered.
+     * @param model JSON model to send.
+     * @param timeout the time in milliseconds to wait for the response, 0 or less to wait until the connection is closed.
+     * @return a future that completes with the response of the server.
+     */
+    public CompletableFuture<T> request(T model, long timeout){
+        boolean buffered = isReconnecting();
+        if(!buffered && !isHandshakeDone())
+            return CompletableFuture.failedFuture(new IllegalStateException("attempting to send data, but the connection has not yet completed a handshake"));
+
+        if(!buffered && !codeChecked)
+            return CompletableFuture.failedFuture(new IllegalStateException("Enable the connection by passing a code into sendCode(String)"));
+
+        long correlationId = nextCorrelationId.incrementAndGet();
+        CompletableFuture<T> response = new CompletableFuture<>();
+        long start = System.nanoTime();
+        pendingRequests.put(correlationId, response);
+        response.whenComplete((result, throwable) -> {
+            pendingRequests.remove(correlationId);
+            if(throwable == null)
+                metrics.recordResponseTime(System.nanoTime() - start);
+        });
+
+        if(timeout > 0)
+            response.orTimeout(timeout, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Void> sent = buffered ? bufferSend(model, correlationId) : null;
+        if(sent == null)
+            sent = sendRequest(correlationId, model);
+
+        sent.whenComplete((ignored, throwable) -> {
+            if(throwable != null)
+                response.completeExceptionally(throwable);
+        });
+
+        // the connection may have been closed before the request was registered
+        if(!isRunning() && !isReconnecting())
+            response.completeExceptionally(new ClosedChannelException());
+
+        return response;
+    }
+
+    /**
+     * Sends a request that was registered as pending on the current connection.
+     * @param correlationId the correlation id of the request.
+     * @param model JSON model to send.
+     * @return the future returned by {@link #sendSession(IModel)}.
+     */
+    private CompletableFuture<Void> sendRequest(long correlationId, T model){
+        if(!envelopeNegotiated)
+            return CompletableFuture.failedFuture(new IllegalStateException("the server does not support correlated requests"));
+
+        return sendSession(new Envelope<>(correlationId, model));
+    }
+
+    /**
+     * Sends a model with the cryptography, codec and compression of the session.
+     * @param model model to send.
+     * @return the future returned by {@link #send(IModel, RsaAesCryptography, Codec, Compression)}.
+     */
+    private <E extends IModel> CompletableFuture<Void> sendSession(E model){
+        return send(model, sessionCryptography, sessionCodec, sessionCompression);
+    }
+
+    /**
+     * Sends a model that implements the {@link IModel} interface to the server,
+     * requires a {@link RsaAesCryptography} bound to the key to encrypt the data.
+     * <br>
+     * The model is encoded into a pooled buffer, compressed if it exceeds the {@link #getCompressionThreshold()},
+     * and encrypted in place. In
+     * {@link RsaAesCryptography.AesMode#GCM} the frame is encrypted and queued while holding a lock, so the
+     * nonces reach the server in increasing order. Otherwise frames are encrypted concurrently.
+     *
+     * @param model model to send.
+     * @param cryptography cryptography bound to the key to encrypt, {@code null} to send the model unencrypted.
+     * @param codec the codec the model is encoded with.
+     * @param compression the negotiated compression, {@code null} if the frame has no compression flag.
+     * @return a future that completes once the frame was written, or completes exceptionally if
+     * {@link #isRunning()} returns false or an exception occurs while encoding, encrypting or writing data.
+     * @see #sendAsync(IModel)
+     */
+    private <E extends IModel> CompletableFuture<Void> send(E model, RsaAesCryptography cryptography, Codec codec, Compression compression){
+        if(!isRunning())
+            return CompletableFuture.failedFuture(new IllegalStateException("Client is not running"));
+
+        int offset = Integer.BYTES + (cryptography == null ? 0 : cryptography.getInPlaceOffset());
+        BufferOutputStream encoded = new BufferOutputStream(bufferPool, offset);
+        try {
+            if(compression != null)
+                encoded.write(UNCOMPRESSED);
+
+            codec.encode(model, encoded);
+            if(compression != null && encoded.size() - 1 > compressionThreshold)
+                encoded = compress(encoded, compression);
+
+            if(cryptography == null || cryptography.getAesMode() != RsaAesCryptography.AesMode.GCM)
+                return write(encodeFrame(encoded, cryptography));
+
+            synchronized (sendLock){
+                return write(encodeFrame(encoded, cryptography));
+            }
+        } catch (GeneralSecurityException | IOException e) {
+            encoded.release();
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            encoded.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses an encoded model into a new stream with the same offset. The compressor is taken from the compressors
+     * of the connection and given back afterwards.
+     * @param encoded the encoded model, starting with the {@link #UNCOMPRESSED} flag.
+     * @param compression the negotiated compression.
+     * @return the stream holding the {@link #COMPRESSED} flag and the compressed model, or {@code encoded} if the
+     * model did not get smaller. The other stream is released.
+     */
+    private BufferOutputStream compress(BufferOutputStream encoded, Compression compression){
+        Compressor compressor = compressors.poll();
+        if(compressor == null)
+            compressor = compression.newCompressor();
+
+        BufferOutputStream compressed = new BufferOutputStream(bufferPool, encoded.getOffset(), encoded.getOffset() + encoded.size());
+        try {
+            compressed.write(COMPRESSED);
+            ByteBuffer data = encoded.ensureRemaining(0).duplicate().flip().position(encoded.getOffset() + 1);
+            compressor.compress(data, compressed);
+        } catch (RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            giveBack(compressors, compressor, compression);
+        }
+
+        if(compressed.size() >= encoded.size()){
+            compressed.release();
+            return encoded;
+        }
+
+        encoded.release();
+        return compressed;
+    }
+
+    /**
+     * Encrypts an encoded model in place into a length-prefixed frame.
+     * @param encoded the stream the model was encoded to, its offset leaves room for the length prefix and
+     *                {@link RsaAesCryptography#getInPlaceOffset()}.
+     * @param cryptography cryptography bound to the key to encrypt, {@code null} to only prefix the length.
+     * @return the frame, ready to be written.
+     * @throws GeneralSecurityException if the data cannot be encrypted.
+     */
+    private ByteBuffer encodeFrame(BufferOutputStream encoded, RsaAesCryptography cryptography) throws GeneralSecurityException {
+        if(cryptography == null){
+            int length = encoded.size();
+            return encoded.getBuffer().putInt(0, length).flip();
+        }
+
+        encoded.ensureCapacity(Integer.BYTES + cryptography.getEncryptedSize(encoded.size()));
+        ByteBuffer frame = encoded.getBuffer();
+        try {
+            ByteBuffer data = frame.duplicate().flip().position(encoded.getOffset());
+            frame.position(Integer.BYTES);
+
+            long start = System.nanoTime();
+            int length = cryptography.encrypt(data, frame);
+            metrics.recordEncrypt(System.nanoTime() - start);
+            frame.putInt(0, length);
+            frame.flip();
+            return frame;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            bufferPool.release(frame);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a frame and gives its buffer back to the {@link BufferPool} once it was written or failed.
+     * @param frame the frame returned by {@link #encodeFrame(BufferOutputStream, RsaAesCryptography)}.
+     * @return the future returned by {@link Transport#write(ByteBuffer)}.
+     */
+    private CompletableFuture<Void> write(ByteBuffer frame){
+        int size = frame.remaining();
+        return transport.write(frame).whenComplete((ignored, throwable) -> {
+            bufferPool.release(frame);
+            if(throwable == null)
+                metrics.recordSent(size);
+        });
+    }
+
+    /**
+     * Calls {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
+     * with {@link ErrorOccurredHandler.Type#SEND} if a send fails.
+     * @param future the future returned by {@link #send(IModel, RsaAesCryptography, Codec, Compression)}.
+     */
+    private void reportSendFailure(CompletableFuture<Void> future){
+        future.whenComplete((ignored, throwable) -> {
+            if(throwable == null)
+                return;
+
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            callErrorOccurred(cause instanceof Exception ? (Exception) cause : new CompletionException(cause), ErrorOccurredHandler.Type.SEND);
+        });
+    }
+
+    /**
+     * Decrypts a frame received from the server. If an error occurs, it will call
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}.
+     * When such an error occurs, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#RECEIVE}
+     * and the function will return {@code null}.
+     * @param frame the encrypted frame, it is decrypted in place and decoded by the session {@link Codec} without
+     *              copying it.
+     * @param nonceAccepted true if the nonce of the frame was checked by
+     *                      {@link RsaAesCryptography#acceptNonce(ByteBuffer)} already, false otherwise.
+     * @return a {@link IModel} that represents the model sent by the server.
+     */
+    private IModel receive(ByteBuffer frame, boolean nonceAccepted){
+        try {
+            ByteBuffer decrypted = frame.slice();
+            long start = System.nanoTime();
+            if(nonceAccepted)
+                sessionCryptography.decryptAccepted(frame, decrypted);
+            else
+                sessionCryptography.decrypt(frame, decrypted);
+            metrics.recordDecrypt(System.nanoTime() - start);
+            decrypted.flip();
+
+            Type type = !isCodeChecked() ? CodeCheckModel.class : envelopeNegotiated ? envelopeType : modelClass;
+            return decode(decrypted, type);
+        } catch (Exception e) {
+            callErrorOccurred(e, ErrorOccurredHandler.Type.RECEIVE);
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes a decrypted frame with the session {@link Codec}. If a compression was negotiated, the frame starts with
+     * a flag and is decompressed into a pooled buffer first. The decompressor is taken from the decompressors of the
+     * connection and given back afterwards, so frames can be decoded in parallel.
+     * @param data the decrypted frame.
+     * @param type the type of the model.
+     * @return the decoded model.
+     * @throws IOException if the frame cannot be decompressed or decoded.
+     */
+    private IModel decode(ByteBuffer data, Type type) throws IOException {
+        Compression compression = sessionCompression;
+        if(compression == null)
+            return sessionCodec.decode(data, type);
+
+        byte flag = data.get();
+        if(flag == UNCOMPRESSED)
+            return sessionCodec.decode(data, type);
+
+        if(flag != COMPRESSED)
+            throw new IOException("received a frame with the unknown compression flag " + flag);
+
+        Compressor decompressor = decompressors.poll();
+        if(decompressor == null)
+            decompressor = compression.newCompressor();
+
+        BufferOutputStream decompressed = new BufferOutputStream(bufferPool, 0);
+        ByteBuffer buffer = null;
+        try {
+            decompressor.decompress(data, decompressed, maxFrameSize);
+            buffer = decompressed.getBuffer().flip();
+            return sessionCodec.decode(buffer, type);
+        } finally {
+            giveBack(decompressors, decompressor, compression);
+            decompressed.release();
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Waits the current thread until the handshake completes. If the handshake is already completed, it
+     * will not pause the thread.
+     * <br>
+     * {@link de.offrange.client.listeners.ErrorOccurredHandler#onErrorOccurred(Client, Exception, ErrorOccurredHandler.Type)}
+     * is called if there is already a thread waiting for the handshake to complete.
+     * In this case, {@link ErrorOccurredHandler.Type} will be {@link ErrorOccurredHandler.Type#HANDSHAKE}.
+     * @throws InterruptedException if any thread interrupted the current thread before or while the current thread
+     *                              was waiting. The <em>interrupted status</em> of the current thread is cleared
+     *                              when this exception is thrown.
+     */
+    public void waitForHandshake() throws InterruptedException {
+        if(isHandshakeDone())
+            return;
+
+        if(waiterThread != null){
+            callErrorOccurred(new IllegalStateException("there is already a thread waiting for the handshake to complete"), ErrorOccurredHandler.Type.HANDSHAKE);
+            return;
+        }
+
+        waiterThread = Thread.currentThread();
+        synchronized (waiterThread){
+            waiterThread.wait();
+        }
+    }
+
+    /**
+     * Notifies a thread waiting for the handshake to complete.
+     */
+    private void notifyWaiterThread(){
+        if(waiterThread == null)
+            return;
+
+        synchronized (waiterThread){
+            waiterThread.notify();
+        }
+
+        waiterThread = null;
+    }
+
+    /**
+     * Sends the code to enable the connection, allowing requests and responses from the server. Does nothing if
+     * {@link #isResumingSession()} returns true, since the server confirms a resumed session on its own.
+     * @param code the code to send
+     */
+    public void sendCode(String code){
+        this.code = code;
+        if(isResumingSession())
+            return;
+
+        CodeCheckModel codeCheckModel = new CodeCheckModel();
+        codeCheckModel.setCode(code);
+        reportSendFailure(sendSession(codeCheckModel));
+    }
+
+    /**
+     * Class used to handle the communication between the server and this client. It receives every frame read by
+     * the {@link Transport}: the first frame completes the handshake, the following frames are decrypted.
+     * If the code evaluation is received, the class will call {@link ReceiveHandler#onCodeEvaluationReceived(boolean, TcpClient)}
+     * and if data is received, the class will call {@link ReceiveHandler#onDataReceived(IModel)}. It also checks if the
+     * connection is enabled and allow or disallow the communication to the server.
+     * <br>
+     * With a {@link #getDecodeExecutor()}, the frames received after the code check are decoded by a
+     * {@link DecodePipeline} that calls back into this class.
+     */
+    private class FrameListener implements Transport.Listener, DecodePipeline.Stage{
+
+        @Override
+        public void onFrame(ByteBuffer frame) {
+            if(!isRunning())
+                return;
+
+            metrics.recordReceived(Integer.BYTES + frame.remaining());
+
+            if(!handshakeDone){
+                doHandshake(frame);
+                notifyWaiterThread();
+
+                if(!handshakeDone){
+                    if(isReconnecting())
+                        closeConnection();
+                    else
+                        disconnect();
+                }else if(isReconnecting() && code != null){
+                    sendCode(code);
+                }
+                return;
+            }
+
+            if(codeChecked && decodeExecutor != null){
+                submit(frame);
+                return;
+            }
+
+            IModel model = receive(frame, false);
+            if(model == null)
+                return;
+
+            if(!codeChecked){
+                CodeCheckModel codeCheckModel = (CodeCheckModel) model;
+                codeChecked = codeCheckModel.isCodeCorrect();
+                updateSessionTicket(codeCheckModel);
+                if(codeChecked){
+                    sessionReady.complete(null);
+                    startKeepAlive();
+                }else
+                    sessionReady.completeExceptionally(new IOException("the server rejected the code"));
+
+                if(getReceiveHandler() != null)
+                    getReceiveHandler().onCodeEvaluationReceived(codeChecked, TcpClient.this);
+
+                return;
+            }
+
+            onDecoded(model);
+        }
+
+        /**
+         * Checks the nonce of a frame in the order the frames were received and submits it to the
+         * {@link DecodePipeline} of the connection. The counter is remembered once the frame was authenticated.
+         * @param frame the encrypted frame.
+         */
+        private void submit(ByteBuffer frame){
+            try {
+                sessionCryptography.acceptNonce(frame);
+            } catch (GeneralSecurityException e) {
+                callErrorOccurred(e, ErrorOccurredHandler.Type.RECEIVE);
+                return;
+            }
+
+            DecodePipeline pipeline = decodePipeline;
+            if(pipeline == null){
+                pipeline = new DecodePipeline(decodeExecutor, bufferPool, transport, maxPendingDecodes, decodeOrdering, this);
+                decodePipeline = pipeline;
+            }
+
+            pipeline.submit(frame);
+        }
+
+        @Override
+        public IModel decode(ByteBuffer frame) {
+            return receive(frame, true);
+        }
+
+        @Override
+        public boolean completeRequest(IModel model) {
+            if(!(model instanceof Envelope))
+                return false;
+
+            if(onPong((Envelope<?>) model))
+                return true;
+
+            Long correlationId = ((Envelope<?>) model).getCorrelationId();
+            CompletableFuture<T> request = correlationId == null ? null : pendingRequests.remove(correlationId);
+            if(request == null)
+                return false;
+
+            request.complete(modelClass.cast(((Envelope<?>) model).getPayload()));
+            return true;
+        }
+
+        @Override
+        public void onDecoded(IModel model) {
+            if(model instanceof Envelope){
+                onEnvelope((Envelope<?>) model);
+                return;
+            }
+
+            dispatch(modelClass.cast(model));
+        }
+
+        @Override
+        public void onError(Exception e) {
+            callErrorOccurred(e, ErrorOccurredHandler.Type.RECEIVE);
+        }
+
+        /**
+         * Completes the request the envelope responds to, or passes its payload to
+         * {@link ReceiveHandler#onDataReceived(IModel)} if it does not belong to a pending request.
+         * @param envelope the received envelope.
+         */
+        private void onEnvelope(Envelope<?> envelope){
+            if(onPong(envelope))
+                return;
+
+            T payload = modelClass.cast(envelope.getPayload());
+            Long correlationId = envelope.getCorrelationId();
+
+            CompletableFuture<T> request = correlationId == null ? null : pendingRequests.remove(correlationId);
+            if(request != null){
+                request.complete(payload);
+                return;
+            }
+
+            dispatch(payload);
+        }
+
+        /**
+         * Completes the ping a pong answers and records its round-trip time.
+         * @param envelope the received envelope.
+         * @return true if the envelope is a pong, false otherwise.
+         */
+        private boolean onPong(Envelope<?> envelope){
+            Long timestamp = envelope.getPong();
+            if(timestamp == null)
+                return false;
+
+            CompletableFuture<Long> pong = pendingPings.remove(timestamp);
+            if(pong != null){
+                long rtt = System.nanoTime() - timestamp;
+                rttEstimator.record(rtt);
+                metrics.recordRoundTrip(rtt);
+                pong.complete(rtt);
+            }
+            return true;
+        }
+
+        @Override
+        public void onClosed(Exception cause) {
+            // The reader of the transport and the keepalive can both report the close, only the first one counts.
+            if(!running.compareAndSet(true, false))
+                return;
+
+            if(resumingTicket != null && !codeChecked)
+                sessionTicketCache.remove(getRemoteAddress(), resumingTicket);
+
+            sessionReady.completeExceptionally(cause);
+            stopKeepAlive(cause);
+            boolean reconnectAttempt;
+            synchronized (sendBuffer){
+                reconnectAttempt = reconnecting;
+            }
+
+            closeCompressors();
+            if(reconnectAttempt)
+                return;
+
+            failPendingRequests(cause);
+            callErrorOccurred(cause, ErrorOccurredHandler.Type.RECEIVE);
+
+            if(reconnectPolicy != null && codeChecked && !closed)
+                startReconnecting();
+            else
+                closeReceivePublisher(cause);
+        }
+    }
+
+    /**
+     * Class that pauses reading from the current connection for the subscribers of the {@link #getReceivePublisher()}.
+     * The pauses outlive a connection, so a reconnected client stays paused until the subscribers caught up.
+     */
+    private class PublisherBackpressure implements ReceivePublisher.Backpressure{
+
+        @Override
+        public void pause() {
+            synchronized (receivePauseLock){
+                receivePauses++;
+                if(transport != null)
+                    transport.pauseReading();
+            }
+        }
+
+        @Override
+        public void resume() {
+            synchronized (receivePauseLock){
+                receivePauses--;
+                if(transport != null)
+                    transport.resumeReading();
+            }
+        }
+    }
+
+    /**
+     * Class that holds a model sent while the client is reconnecting.
+     */
+    private static final class BufferedSend<T>{
+        private final T model;
+        private final Long correlationId;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private BufferedSend(T model, Long correlationId) {
+            this.model = model;
+            this.correlationId = correlationId;
         }
     }
 }
@@ -0,0 +1,469 @@
+package de.offrange.client.tcp;
+
+import de.offrange.client.ThreadFactories;
+import de.offrange.client.models.IModel;
+import de.offrange.client.udp.endpoint.EndpointAddress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that opens, tracks and reuses {@link TcpClient} sessions for any number of endpoints. Every
+ * {@link EndpointAddress} gets up to {@link #getMaxConnections()} sessions. A session is handed out by
+ * {@link #acquire(EndpointAddress)} and must be given back with {@link #release(TcpClient)}.
+ * <br>
+ * A new session is only opened if every open session of the endpoint is in use. Otherwise an open session is
+ * selected with the {@link SelectionStrategy}. Sessions that are neither running nor reconnecting are removed, and
+ * sessions that were not used for {@link #getIdleTimeout()} milliseconds are disconnected by a background health
+ * check.
+ * <br>
+ * Unlike {@link TcpClient#getInstance()}, a pool holds no global state, so any number of pools can be used in one
+ * process.
+ * @param <T> the model that represents the server requests and responses.
+ */
+public class TcpClientPool<T extends IModel> implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60_000;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5_000;
+
+    private final Class<T> modelClass;
+    private final SessionInitializer<T> sessionInitializer;
+
+    private final Map<EndpointAddress, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<TcpClient<T>, Session> sessions = new ConcurrentHashMap<>();
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    private SelectionStrategy selectionStrategy = SelectionStrategy.LEAST_LOADED;
+
+    private ScheduledExecutorService healthChecker;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a TcpClientPool instance.
+     * @param modelClass the model class that specifies the JSON data from the server.
+     * @param sessionInitializer the {@link SessionInitializer} that connects every new session.
+     */
+    public TcpClientPool(Class<T> modelClass, SessionInitializer<T> sessionInitializer) {
+        this.modelClass = Objects.requireNonNull(modelClass);
+        this.sessionInitializer = Objects.requireNonNull(sessionInitializer);
+    }
+
+    /**
+     * @return the maximum number of sessions per endpoint (default: {@link #DEFAULT_MAX_CONNECTIONS}).
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of sessions that are opened per endpoint. If every session is in use and the maximum
+     * is reached, sessions are shared by several callers.
+     * @param maxConnections the maximum number of sessions per endpoint, at least 1.
+     */
+    public void setMaxConnections(int maxConnections) {
+        if(maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return the time in milliseconds after which an unused session is disconnected
+     * (default: {@link #DEFAULT_IDLE_TIMEOUT}).
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time after which a session that is not acquired by anyone is disconnected and removed.
+     * @param idleTimeout the idle timeout in milliseconds, 0 or less to never evict idle sessions.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the interval in milliseconds of the background health check
+     * (default: {@link #DEFAULT_HEALTH_CHECK_INTERVAL}).
+     */
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Sets the interval of the background health check that removes dead and idle sessions. Must be set before
+     * the first call of {@link #acquire(EndpointAddress)}.
+     * @param healthCheckInterval the interval in milliseconds.
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        if(healthCheckInterval <= 0)
+            throw new IllegalArgumentException("healthCheckInterval must be positive");
+
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * @return the {@link SelectionStrategy} used if no session is free (default: {@link SelectionStrategy#LEAST_LOADED}).
+     */
+    public SelectionStrategy getSelectionStrategy() {
+        return selectionStrategy;
+    }
+
+    /**
+     * Sets the {@link SelectionStrategy} that picks one of the open sessions of an endpoint.
+     * @param selectionStrategy the strategy to use.
+     */
+    public void setSelectionStrategy(SelectionStrategy selectionStrategy) {
+        this.selectionStrategy = Objects.requireNonNull(selectionStrategy);
+    }
+
+    /**
+     * Returns a session for an endpoint. If no open session is free and the endpoint has less than
+     * {@link #getMaxConnections()} sessions, a new session is created and passed to the {@link SessionInitializer}
+     * on the calling thread. Otherwise an open session is selected with the {@link SelectionStrategy}. If every
+     * session of the endpoint is still being opened by other callers, this method waits for one of them.
+     * <br>
+     * The {@link SessionInitializer} is called without holding any lock of the pool, so sessions to the same
+     * endpoint are opened in parallel and the health check is not delayed by a slow handshake.
+     * @param address the endpoint to get a session for.
+     * @return a running session. It must be given back with {@link #release(TcpClient)}.
+     * @throws IOException if a new session cannot be connected.
+     * @throws InterruptedException if the calling thread was interrupted while a new session was initialized.
+     */
+    public TcpClient<T> acquire(EndpointAddress address) throws IOException, InterruptedException {
+        if(closed)
+            throw new IllegalStateException("the pool is closed");
+
+        startHealthChecker();
+
+        while (true){
+            Endpoint endpoint = endpoints.computeIfAbsent(address, Endpoint::new);
+            synchronized (endpoint){
+                if(endpoint.retired)
+                    continue;
+
+                Session session = endpoint.acquire();
+                if(session != null)
+                    return session.client;
+
+                if(!endpoint.reserve()){
+                    endpoint.wait();
+                    continue;
+                }
+            }
+
+            return endpoint.open().client;
+        }
+    }
+
+    /**
+     * Gives back a session returned by {@link #acquire(EndpointAddress)}. The session stays open for other callers.
+     * @param client the session to give back.
+     */
+    public void release(TcpClient<T> client){
+        Session session = sessions.get(client);
+        if(session == null)
+            return;
+
+        session.lastUsed = System.nanoTime();
+        session.leases.updateAndGet(leases -> Math.max(0, leases - 1));
+    }
+
+    /**
+     * Removes a session from the pool and disconnects it, e.g. because it is known to be broken.
+     * @param client the session to remove.
+     */
+    public void invalidate(TcpClient<T> client){
+        Session session = sessions.remove(client);
+        if(session == null)
+            return;
+
+        session.endpoint.sessions.remove(session);
+        client.disconnect();
+    }
+
+    /**
+     * @param address the endpoint.
+     * @return the number of open sessions of the endpoint.
+     */
+    public int getConnectionCount(EndpointAddress address){
+        Endpoint endpoint = endpoints.get(address);
+        return endpoint == null ? 0 : endpoint.sessions.size();
+    }
+
+    /**
+     * @return the number of open sessions of every endpoint.
+     */
+    public int getConnectionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * @return a snapshot of every endpoint that has or had sessions in this pool.
+     */
+    public List<EndpointAddress> getEndpoints(){
+        return new ArrayList<>(endpoints.keySet());
+    }
+
+    /**
+     * Removes sessions that are neither running nor reconnecting and disconnects sessions that exceeded the idle timeout.
+     * This is done periodically in the background, but can also be called directly.
+     */
+    public void checkHealth(){
+        long now = System.nanoTime();
+        for (Endpoint endpoint : endpoints.values()){
+            synchronized (endpoint){
+                for (Session session : endpoint.sessions){
+                    boolean idle = idleTimeout > 0 && session.leases.get() == 0
+                            && now - session.lastUsed > TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+
+                    if(idle || !session.isAlive())
+                        invalidate(session.client);
+                }
+
+                if(endpoint.sessions.isEmpty() && endpoint.opening == 0){
+                    endpoint.retired = true;
+                    endpoints.remove(endpoint.address, endpoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnects every session and stops the health check. The pool cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this){
+            if(healthChecker != null)
+                healthChecker.shutdownNow();
+        }
+
+        for (TcpClient<T> client : new ArrayList<>(sessions.keySet()))
+            invalidate(client);
+
+        endpoints.clear();
+    }
+
+    private synchronized void startHealthChecker(){
+        if(healthChecker != null)
+            return;
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(ThreadFactories.platform("tcp-client-pool-health-check", true));
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Interface used to connect the sessions created by a {@link TcpClientPool}.
+     * @param <T> the model that represents the server requests and responses.
+     */
+    @FunctionalInterface
+    public interface SessionInitializer<T extends IModel>{
+
+        /**
+         * Called for every new session. The implementation sets the handlers and options of the client, calls
+         * {@link TcpClient#startAndConnect()} and should return once the session is usable, e.g. after the handshake
+         * and the code check completed.
+         * @param client the new, unconnected client.
+         * @throws IOException if the session cannot be connected.
+         * @throws InterruptedException if the thread was interrupted while waiting for the session.
+         */
+        void initialize(TcpClient<T> client) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Enum representing the way an open session is selected if no session of an endpoint is free.
+     */
+    public enum SelectionStrategy{
+        /**
+         * The sessions are used in turns.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * The session with the fewest callers is used.
+         */
+        LEAST_LOADED,
+
+        /**
+         * The session with the lowest average round-trip time of its keepalive pings is used, see
+         * {@link TcpClient#getRttEstimator()}. Sessions without a measured round-trip time are used last, and the
+         * session with the fewest callers is used among equally fast ones.
+         */
+        LEAST_LATENCY
+    }
+
+    /**
+     * Class that holds the sessions of one endpoint. Sessions are selected and slots for new sessions are reserved
+     * while holding the lock of this object, but sessions are initialized without it. An endpoint without sessions
+     * and without sessions being opened is retired by the health check and replaced on the next
+     * {@link #acquire(EndpointAddress)}.
+     */
+    private class Endpoint{
+
+        private final EndpointAddress address;
+        private final List<Session> sessions = new CopyOnWriteArrayList<>();
+        private int nextSession;
+        private int opening;
+        private boolean retired;
+
+        private Endpoint(EndpointAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Selects a free session, or any session with the {@link SelectionStrategy} if no slot is left for a new
+         * session. Must be called while holding the lock of this object.
+         * @return the selected session with a lease taken, {@code null} if a new session should be opened.
+         */
+        private Session acquire(){
+            removeDead();
+
+            Session session = selectFree();
+            if(session == null && sessions.size() + opening >= maxConnections)
+                session = select(selectionStrategy);
+
+            if(session == null)
+                return null;
+
+            session.leases.incrementAndGet();
+            session.lastUsed = System.nanoTime();
+            return session;
+        }
+
+        /**
+         * Reserves a slot for a new session, which has to be opened with {@link #open()}. Must be called while
+         * holding the lock of this object.
+         * @return true if a slot was reserved, false if every slot is taken by sessions that are being opened.
+         */
+        private boolean reserve(){
+            if(sessions.size() + opening >= maxConnections)
+                return false;
+
+            opening++;
+            return true;
+        }
+
+        private void removeDead(){
+            for (Session session : sessions){
+                if(!session.isAlive())
+                    invalidate(session.client);
+            }
+        }
+
+        private Session selectFree(){
+            for (Session session : sessions){
+                if(session.leases.get() == 0)
+                    return session;
+            }
+
+            return null;
+        }
+
+        private Session select(SelectionStrategy strategy){
+            if(sessions.isEmpty())
+                return null;
+
+            if(strategy == SelectionStrategy.ROUND_ROBIN)
+                return sessions.get(Math.floorMod(nextSession++, sessions.size()));
+
+            Session selected = null;
+            long selectedLatency = Long.MAX_VALUE;
+            for (Session session : sessions){
+                long latency = strategy == SelectionStrategy.LEAST_LATENCY ? session.getLatency() : 0;
+                if(selected == null || latency < selectedLatency
+                        || (latency == selectedLatency && session.leases.get() < selected.leases.get())){
+                    selected = session;
+                    selectedLatency = latency;
+                }
+            }
+
+            return selected;
+        }
+
+        /**
+         * Opens a new session in a slot reserved by {@link #reserve()}, without holding the lock of this object, and
+         * publishes it with a lease taken. The slot is given back if the session cannot be opened.
+         * @return the new session.
+         * @throws IOException if the session cannot be connected.
+         * @throws InterruptedException if the thread was interrupted while the session was initialized.
+         */
+        private Session open() throws IOException, InterruptedException {
+            TcpClient<T> client = new TcpClient<>(address, modelClass, false);
+            try {
+                sessionInitializer.initialize(client);
+                if(!client.isRunning())
+                    throw new IOException("the session to " + address + " was closed while it was initialized");
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                client.disconnect();
+                synchronized (this){
+                    opening--;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            Session session = new Session(this, client);
+            session.leases.incrementAndGet();
+            synchronized (this){
+                sessions.add(session);
+                TcpClientPool.this.sessions.put(client, session);
+                opening--;
+                notifyAll();
+            }
+
+            if(closed){
+                invalidate(client);
+                throw new IllegalStateException("the pool was closed while the session was initialized");
+            }
+
+            return session;
+        }
+    }
+
+    /**
+     * Class that holds one session and the number of callers using it.
+     */
+    private class Session{
+
+        private final Endpoint endpoint;
+        private final TcpClient<T> client;
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile long lastUsed = System.nanoTime();
+
+        private Session(Endpoint endpoint, TcpClient<T> client) {
+            this.endpoint = endpoint;
+            this.client = client;
+        }
+
+        /**
+         * @return true if the client is running or reconnecting, since models sent while it reconnects are buffered.
+         */
+        private boolean isAlive(){
+            return client.isRunning() || client.isReconnecting();
+        }
+
+        /**
+         * @return the average round-trip time of the client in nanoseconds, {@link Long#MAX_VALUE} if none was measured.
+         */
+        private long getLatency(){
+            long average = client.getRttEstimator().getAverage();
+            return average < 0 ? Long.MAX_VALUE : average;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.offrange.client.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface that represents the connection of a {@link TcpClient} to the server. A transport reads length-prefixed
+ * frames from the server and passes them to its {@link Listener}, and writes frames to the server.
+ * @see TransportMode
+ */
+interface Transport {
+
+    /**
+     * Maximum number of queued frames that are coalesced into one batch.
+     */
+    int MAX_BATCH_FRAMES = 64;
+
+    /**
+     * Connects to the server. No frame is read before {@link #start()} is called.
+     * @param address the address of the server.
+     * @param timeout the connect timeout in milliseconds.
+     * @throws IOException if an error occurs during the connection.
+     */
+    void connect(InetSocketAddress address, int timeout) throws IOException;
+
+    /**
+     * Starts reading frames from the server.
+     */
+    void start();
+
+    /**
+     * Queues a frame to be written to the server. Frames are written in the order they were queued and never
+     * interleave. Frames that are queued while earlier frames are still being written are coalesced into as few
+     * writes as possible.
+     * @param frame the frame including its length prefix, from its position to its limit. It must not be modified
+     *              until the returned future completes.
+     * @return a future that completes once the frame was written, or completes exceptionally if the connection is
+     * closed or an error occurs while writing.
+     */
+    CompletableFuture<Void> write(ByteBuffer frame);
+
+    /**
+     * Stops passing frames to the {@link Listener} until {@link #resumeReading()} was called as often as this
+     * method, so the server is slowed down by TCP flow control. Unlike blocking in
+     * {@link Listener#onFrame(ByteBuffer)}, this never holds a thread that other connections depend on. If it is
+     * called by the listener, no further frame is passed to it. If it is called by another thread, the frame that is
+     * currently passed to the listener may still complete. Can be called by any thread.
+     */
+    void pauseReading();
+
+    /**
+     * Undoes one call of {@link #pauseReading()}. Reading resumes once every pause was undone. Can be called by any
+     * thread.
+     */
+    void resumeReading();
+
+    /**
+     * Closes the connection gracefully. Frames are no longer read and no more frames are accepted, but the frames
+     * that were queued before are written first. Frames that were not written within the drain timeout are
+     * completed exceptionally. The {@link Listener} is not notified about a close initiated by this method.
+     * @param drainTimeout the maximum time in milliseconds to wait for the queued frames to be written.
+     * @throws IOException if an I/O error occurs when closing the connection.
+     */
+    void close(long drainTimeout) throws IOException;
+
+    /**
+     * Closes the connection at once. Frames that were not written yet are completed exceptionally. The
+     * {@link Listener} is not notified about a close initiated by this method.
+     * @throws IOException if an I/O error occurs when closing the connection.
+     */
+    void abort() throws IOException;
+
+    /**
+     * Validates the length prefix of a received frame before a buffer is allocated for it.
+     * @param length the length read from the frame header.
+     * @param maxFrameSize the maximum number of bytes a frame may have.
+     * @return {@code length}.
+     * @throws IOException if the length is negative or exceeds {@code maxFrameSize}.
+     */
+    static int checkFrameLength(int length, int maxFrameSize) throws IOException {
+        if(length < 0)
+            throw new IOException("received a frame with a negative length");
+
+        if(length > maxFrameSize)
+            throw new IOException("received a frame of " + length + " bytes, which exceeds the maximum frame size of " + maxFrameSize + " bytes");
+
+        return length;
+    }
+
+    /**
+     * Interface used to process the frames read by a {@link Transport}.
+     */
+    interface Listener{
+
+        /**
+         * Called for every frame received from the server, in the order the frames were received.
+         * @param frame the content of the frame without its length prefix, from its position to its limit. The
+         *              buffer is taken from a {@link de.offrange.client.BufferPool} and reused after this method
+         *              returns, so it must not be kept. It may be modified, e.g. to decrypt it in place.
+         */
+        void onFrame(ByteBuffer frame);
+
+        /**
+         * Called once if the connection was closed by the server or failed.
+         * @param cause the exception that closed the connection.
+         */
+        void onClosed(Exception cause);
+    }
+}
@@ -0,0 +1,18 @@
+package de.offrange.client.tcp;
+
+/**
+ * Enum representing the way a {@link TcpClient} performs its network I/O.
+ * @see TcpClient#setTransportMode(TransportMode)
+ */
+public enum TransportMode {
+    /**
+     * Uses a blocking {@link java.net.Socket} and one reading and one writing thread per connection.
+     */
+    BLOCKING,
+
+    /**
+     * Uses a non-blocking {@link java.nio.channels.SocketChannel} that is served by a {@link NioEventLoop}, so many
+     * connections share one or a few selector threads.
+     */
+    NIO
+}
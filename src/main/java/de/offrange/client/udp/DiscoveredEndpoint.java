@@ -9,6 +9,7 @@ public class DiscoveredEndpoint {
 
     private String name;
     private EndpointAddress address;
+    private volatile long lastSeen;
 
     /**
      * Constructs a new DiscoveredEndpoint instance with a name and the address of the endpoint.
@@ -18,6 +19,7 @@ public class DiscoveredEndpoint {
     public DiscoveredEndpoint(String name, EndpointAddress address) {
         this.name = name;
         this.address = address;
+        this.lastSeen = System.nanoTime();
     }
 
     /**
@@ -33,4 +35,19 @@ public class DiscoveredEndpoint {
     public EndpointAddress getAddress() {
         return address;
     }
+
+    /**
+     * @return the {@link System#nanoTime()} the endpoint last responded at.
+     */
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * Refreshes the time the endpoint last responded at.
+     * @param lastSeen the {@link System#nanoTime()} of the response.
+     */
+    void setLastSeen(long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
 }
@@ -1,22 +1,40 @@
 package de.offrange.client.udp;
 
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import de.offrange.client.BufferOutputStream;
+import de.offrange.client.BufferPool;
 import de.offrange.client.Client;
-import de.offrange.client.gson.ByteArrayTypeAdapter;
+import de.offrange.client.ThreadFactories;
+import de.offrange.client.codec.Codec;
+import de.offrange.client.codec.JsonCodec;
+import de.offrange.client.gson.GsonRegistry;
 import de.offrange.client.listeners.DiscoveryHandler;
 import de.offrange.client.listeners.ErrorOccurredHandler;
+import de.offrange.client.metrics.ClientMetrics;
 import de.offrange.client.models.UdpModel;
+import de.offrange.client.udp.endpoint.EndpointAddress;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class used to discover open UDP servers on the local network.
@@ -27,32 +45,54 @@ public class DiscoveryClient implements Client {
     public static final String DEFAULT_NAME = "udp-discover-client";
     public static final int DEFAULT_TIMEOUT = 500;
     public static final int DEFAULT_DISCOVERY_TIME = 5000;
+    public static final int DEFAULT_ANNOUNCE_INTERVAL = 10_000;
+    public static final int DEFAULT_ENDPOINT_TTL = 30_000;
+    public static final String DEFAULT_MULTICAST_GROUP = "239.255.77.77";
+    public static final int DEFAULT_RETRANSMISSIONS = 2;
+    public static final int DEFAULT_RETRANSMIT_INTERVAL = 100;
 
-    private final Gson gson;
+    private static final double ANNOUNCE_JITTER = 0.2;
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final BufferPool RECEIVE_BUFFERS = new BufferPool(true, 65536, 65536, 4 * 65536);
+    private static final int TRANSMIT_HISTORY = 64;
+    private static final long MIN_QUIET_PERIOD = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int QUIET_PERIOD_FACTOR = 4;
 
-    private DatagramSocket udp;
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = ThreadFactories.platform("discovery-client", false);
+
+    private Codec codec;
+
+    private volatile Selector selector;
     private int timeout;
 
-    private boolean discovering;
+    private volatile boolean discovering;
 
     private final int port;
     private int discoveryTime;
+    private int announceInterval = DEFAULT_ANNOUNCE_INTERVAL;
+    private int endpointTtl = DEFAULT_ENDPOINT_TTL;
+    private int retransmissions = DEFAULT_RETRANSMISSIONS;
+    private int retransmitInterval = DEFAULT_RETRANSMIT_INTERVAL;
+    private boolean adaptiveFinish = true;
     private String name;
 
     private DiscoveryHandler discoveryHandler;
     private ErrorOccurredHandler errorOccurredHandler;
 
+    private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
+    private ClientMetrics metrics = ClientMetrics.getGlobal();
+    private EndpointRegistry endpointRegistry = new EndpointRegistry();
+    private DiscoveryMode discoveryMode = DiscoveryMode.SUBNET_BROADCAST;
+    private InetAddress multicastGroup;
+    private List<NetworkInterface> networkInterfaces;
+
     /**
      * Constructs a DiscoveryClient instance with a port.
      * @param port used to discover a UDP server.
      */
     public DiscoveryClient(int port) {
         this.port = port;
-        gson = new GsonBuilder()
-                .disableHtmlEscaping()
-                .registerTypeAdapter(byte[].class, new ByteArrayTypeAdapter())
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .create();
+        codec = GsonRegistry.getDefault().getJsonCodec();
 
         name = DEFAULT_NAME;
         discoveryTime = DEFAULT_DISCOVERY_TIME;
@@ -95,6 +135,185 @@ public class DiscoveryClient implements Client {
         this.discoveryTime = discoveryTime;
     }
 
+    /**
+     * @return the time between two discovery requests of a continuous discovery.
+     * @see #setAnnounceInterval(int)
+     */
+    public int getAnnounceInterval() {
+        return announceInterval;
+    }
+
+    /**
+     * Used to set the time between two discovery requests of {@link #startContinuousDiscovery()}. Every request
+     * refreshes the endpoints that respond to it. It is optional since {@link #DEFAULT_ANNOUNCE_INTERVAL} is set by
+     * default.
+     * @param announceInterval the interval in milliseconds, at least 1.
+     * @see #getAnnounceInterval()
+     */
+    public void setAnnounceInterval(int announceInterval) {
+        if(announceInterval < 1)
+            throw new IllegalArgumentException("announceInterval must be at least 1");
+
+        this.announceInterval = announceInterval;
+    }
+
+    /**
+     * @return the time after which an endpoint that stopped responding is lost.
+     * @see #setEndpointTtl(int)
+     */
+    public int getEndpointTtl() {
+        return endpointTtl;
+    }
+
+    /**
+     * Used to set the time after which {@link #startContinuousDiscovery()} removes an endpoint that stopped responding
+     * from the {@link #getEndpointRegistry()} and calls {@link DiscoveryHandler#onLost(DiscoveredEndpoint)}. It should
+     * span several {@link #getAnnounceInterval()}s, so a single lost datagram does not expire an endpoint. It is
+     * optional since {@link #DEFAULT_ENDPOINT_TTL} is set by default.
+     * @param endpointTtl the time to live in milliseconds, at least 1. It must not be shorter than the
+     * {@link #getAnnounceInterval()} once {@link #startContinuousDiscovery()} is called.
+     * @see #getEndpointTtl()
+     */
+    public void setEndpointTtl(int endpointTtl) {
+        if(endpointTtl < 1)
+            throw new IllegalArgumentException("endpointTtl must be at least 1");
+
+        this.endpointTtl = endpointTtl;
+    }
+
+    /**
+     * @return how often a discovery request is sent again.
+     * @see #setRetransmissions(int)
+     */
+    public int getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * Used to set how often a discovery request is sent again, in case the request or the responses were lost. The
+     * first retransmission is sent {@link #getRetransmitInterval()} after the request, and the time doubles with
+     * every further retransmission. Every transmission carries its own request id, so a response is matched to the
+     * transmission it answers. It is optional since {@link #DEFAULT_RETRANSMISSIONS} is set by default.
+     * @param retransmissions the number of retransmissions, 0 to send every request once.
+     * @see #getRetransmissions()
+     */
+    public void setRetransmissions(int retransmissions) {
+        if(retransmissions < 0)
+            throw new IllegalArgumentException("retransmissions must not be negative");
+
+        this.retransmissions = retransmissions;
+    }
+
+    /**
+     * @return the time between a discovery request and its first retransmission.
+     * @see #setRetransmitInterval(int)
+     */
+    public int getRetransmitInterval() {
+        return retransmitInterval;
+    }
+
+    /**
+     * Used to set the time between a discovery request and its first retransmission. It is optional since
+     * {@link #DEFAULT_RETRANSMIT_INTERVAL} is set by default.
+     * @param retransmitInterval the interval in milliseconds, at least 1.
+     * @see #getRetransmitInterval()
+     */
+    public void setRetransmitInterval(int retransmitInterval) {
+        if(retransmitInterval < 1)
+            throw new IllegalArgumentException("retransmitInterval must be at least 1");
+
+        this.retransmitInterval = retransmitInterval;
+    }
+
+    /**
+     * @return true if {@link #startDiscovering()} finishes once the responses stopped arriving, false if it always
+     * runs for {@link #getDiscoveryTime()}.
+     * @see #setAdaptiveFinish(boolean)
+     */
+    public boolean isAdaptiveFinish() {
+        return adaptiveFinish;
+    }
+
+    /**
+     * Used to set whether {@link #startDiscovering()} finishes before {@link #getDiscoveryTime()} is reached. If
+     * enabled, the discovery finishes once every retransmission was sent, at least one server responded, and no new
+     * server responded for four times the slowest response time, but at least 50 milliseconds. A discovery without
+     * any response still runs for the whole discovery time. Enabled by default.
+     * @param adaptiveFinish true to finish early, false to always run for the discovery time.
+     * @see #isAdaptiveFinish()
+     */
+    public void setAdaptiveFinish(boolean adaptiveFinish) {
+        this.adaptiveFinish = adaptiveFinish;
+    }
+
+    /**
+     * @return where the discovery requests are sent to.
+     * @see #setDiscoveryMode(DiscoveryMode)
+     */
+    public DiscoveryMode getDiscoveryMode() {
+        return discoveryMode;
+    }
+
+    /**
+     * Used to set where the discovery requests are sent to. It is optional since
+     * {@link DiscoveryMode#SUBNET_BROADCAST} is set by default.
+     * @param discoveryMode the discovery mode to use.
+     * @see #getDiscoveryMode()
+     */
+    public void setDiscoveryMode(DiscoveryMode discoveryMode) {
+        this.discoveryMode = Objects.requireNonNull(discoveryMode);
+    }
+
+    /**
+     * @return the multicast group the requests of {@link DiscoveryMode#MULTICAST} are sent to.
+     * @throws IllegalStateException if {@link #DEFAULT_MULTICAST_GROUP} cannot be resolved, which does not happen for
+     * a literal address.
+     * @see #setMulticastGroup(InetAddress)
+     */
+    public InetAddress getMulticastGroup() {
+        if(multicastGroup == null){
+            try {
+                multicastGroup = InetAddress.getByName(DEFAULT_MULTICAST_GROUP);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return multicastGroup;
+    }
+
+    /**
+     * Used to set the IPv4 or IPv6 multicast group the requests of {@link DiscoveryMode#MULTICAST} are sent to. It is
+     * optional since {@link #DEFAULT_MULTICAST_GROUP} is set by default.
+     * @param multicastGroup the multicast address.
+     * @see #getMulticastGroup()
+     */
+    public void setMulticastGroup(InetAddress multicastGroup) {
+        if(!multicastGroup.isMulticastAddress())
+            throw new IllegalArgumentException(multicastGroup + " is not a multicast address");
+
+        this.multicastGroup = multicastGroup;
+    }
+
+    /**
+     * @return the network interfaces the requests are sent through, {@code null} if every interface that is up is used.
+     * @see #setNetworkInterfaces(List)
+     */
+    public List<NetworkInterface> getNetworkInterfaces() {
+        return networkInterfaces;
+    }
+
+    /**
+     * Used to restrict the network interfaces the requests of {@link DiscoveryMode#SUBNET_BROADCAST} and
+     * {@link DiscoveryMode#MULTICAST} are sent through, e.g. to the loopback interface in tests. Unlike the default,
+     * an interface in this list is used even if it is a loopback interface.
+     * @param networkInterfaces the interfaces to use, {@code null} to use every interface that is up.
+     * @see #getNetworkInterfaces()
+     */
+    public void setNetworkInterfaces(List<NetworkInterface> networkInterfaces) {
+        this.networkInterfaces = networkInterfaces == null ? null : List.copyOf(networkInterfaces);
+    }
+
     /**
      * @return the timeout after one UDP scan times out.
      * @see #setTimeout(int)
@@ -104,10 +323,11 @@ public class DiscoveryClient implements Client {
     }
 
     /**
-     * Used to set the timeout. If one UDP scan reach this amount of time, it closes and start a new scan with this
-     * timeout until {@link #getDiscoveryTime()} is reached. It is optional to set since {@link #DEFAULT_TIMEOUT} is set
-     * as the timeout by the constructor.
-     * @param timeout the length of time the client should scan in milliseconds.
+     * Used to set the timeout. The client waits at most this amount of time for a response before it checks whether
+     * the discovery was cancelled, {@link #getDiscoveryTime()} is reached or a new request is due. It is optional to
+     * set since {@link #DEFAULT_TIMEOUT} is set as the timeout by the constructor.
+     * @param timeout the length of time the client should wait in milliseconds, 0 or less to wait until the next
+     *                deadline.
      * @see #setTimeout(int)
      */
     public void setTimeout(int timeout) {
@@ -148,19 +368,120 @@ public class DiscoveryClient implements Client {
         this.errorOccurredHandler = errorOccurredHandler;
     }
 
+    /**
+     * @return the {@link ThreadFactory} that creates the discovery thread.
+     * @see #setThreadFactory(ThreadFactory)
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Used to set the {@link ThreadFactory} that creates the thread of {@link #startDiscovering()}. The default creates
+     * a platform thread. Use {@link ThreadFactories#virtual(String)} to discover on a virtual thread, which parks
+     * cheaply while waiting for responses.
+     * @param threadFactory the thread factory to use.
+     * @see #getThreadFactory()
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = Objects.requireNonNull(threadFactory);
+    }
+
+    /**
+     * @return the {@link Codec} the datagrams are encoded with.
+     * @see #setCodec(Codec)
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Used to set the {@link Codec} the discovery request is encoded with and the responses are decoded with. There is
+     * no negotiation, so the servers must use the same codec. It is optional since the {@link JsonCodec} of
+     * {@link GsonRegistry#getDefault()} is set by the constructor.
+     * @param codec the codec to use.
+     * @see #getCodec()
+     */
+    public void setCodec(Codec codec) {
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * @return the {@link ClientMetrics} the datagrams, errors and response times of this client are recorded into.
+     * @see #setMetrics(ClientMetrics)
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Used to set the {@link ClientMetrics} the sent and received datagrams, the errors and the time from the
+     * broadcast until each response are recorded into. It is optional since {@link ClientMetrics#getGlobal()} is
+     * recorded into by default, set {@code new ClientMetrics()} to get the metrics of this client on their own as
+     * well.
+     * @param metrics the metrics to record into.
+     * @see #getMetrics()
+     */
+    public void setMetrics(ClientMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * @return the {@link EndpointRegistry} every discovered endpoint is put into.
+     * @see #setEndpointRegistry(EndpointRegistry)
+     */
+    public EndpointRegistry getEndpointRegistry() {
+        return endpointRegistry;
+    }
+
+    /**
+     * Used to set the {@link EndpointRegistry} every discovered endpoint is put into, e.g. to share one registry
+     * between several clients. It is optional since an empty registry is set by the constructor. Endpoints are kept
+     * in the registry after the discovery finished.
+     * @param endpointRegistry the registry to use.
+     * @see #getEndpointRegistry()
+     */
+    public void setEndpointRegistry(EndpointRegistry endpointRegistry) {
+        this.endpointRegistry = Objects.requireNonNull(endpointRegistry);
+    }
+
     /**
      * Starts the discovering process. Please note that this method creates a new thread and any event called
-     * by the discovery process will be called within this new thread.
+     * by the discovery process will be called within this new thread. The discovery runs for
+     * {@link #getDiscoveryTime()}, or finishes earlier if {@link #isAdaptiveFinish()} is enabled.
      */
     public void startDiscovering() {
+        start(false);
+    }
+
+    /**
+     * Starts a discovery that runs until {@link #cancelDiscovering()} is called, on one thread and one socket. The
+     * discovery request is sent again every {@link #getAnnounceInterval()}, and every response refreshes its endpoint
+     * in the {@link #getEndpointRegistry()}, so the registry is a warm cache of the servers on the local network.
+     * {@link DiscoveryHandler#onDiscovered(DiscoveredEndpoint)} is called for new or renamed endpoints and
+     * {@link DiscoveryHandler#onLost(DiscoveredEndpoint)} for endpoints that did not respond within
+     * {@link #getEndpointTtl()}. {@link DiscoveryHandler#onFinish(List)} receives the endpoints of the registry once
+     * the discovery is cancelled.
+     * @throws IllegalStateException if the {@link #getEndpointTtl()} is shorter than the
+     * {@link #getAnnounceInterval()}, since every endpoint would be lost between two requests.
+     */
+    public void startContinuousDiscovery() {
+        if(endpointTtl < announceInterval)
+            throw new IllegalStateException("endpointTtl must not be shorter than announceInterval");
+
+        start(true);
+    }
+
+    private void start(boolean continuous){
         discovering = true;
-        DiscoveryThread discoveryThread = new DiscoveryThread();
+        Thread discoveryThread = threadFactory.newThread(new DiscoveryThread(getName(), continuous));
         discoveryThread.setName(getName());
         discoveryThread.start();
     }
 
     /**
-     * @return true if client is discovering and {@link #startDiscovering()} is running, false otherwise.
+     * @return true if client is discovering and {@link #startDiscovering()} or {@link #startContinuousDiscovery()} is
+     * running, false otherwise.
      */
     public boolean isDiscovering() {
         return discovering;
@@ -171,72 +492,423 @@ public class DiscoveryClient implements Client {
      */
     public void cancelDiscovering(){
         discovering = false;
-        if(udp == null)
-            return;
+        Selector current = selector;
+        if(current != null)
+            current.wakeup();
+    }
 
-        try{
-            if(!udp.isClosed())
-                udp.setSoTimeout(0);
-        }catch (SocketException e){
-            if(errorOccurredHandler != null)
-                errorOccurredHandler.onErrorOccurred(this, e, ErrorOccurredHandler.Type.UDP_CANCEL);
-        }
+    /**
+     * Records the error and calls the {@link ErrorOccurredHandler} if one is set.
+     * @param e the {@code Exception} that is thrown.
+     * @param type the error type.
+     */
+    private void callErrorOccurred(Exception e, ErrorOccurredHandler.Type type){
+        metrics.recordError(type);
+        if(errorOccurredHandler != null)
+            errorOccurredHandler.onErrorOccurred(this, e, type);
     }
 
-    private class DiscoveryThread extends Thread{
+    /**
+     * Encodes the discovery request once and sends it through every channel of the {@link DiscoveryMode}, and
+     * collects the responses. All channels are non-blocking and served by one {@link Selector}. A continuous discovery
+     * sends the request again every {@link #getAnnounceInterval()}, with a random jitter of 20 percent so several
+     * clients do not announce in lockstep, and expires the endpoints that stopped responding.
+     */
+    private class DiscoveryThread implements Runnable{
+
+        private final String name;
+        private final boolean continuous;
+        private final List<Probe> probes = new ArrayList<>();
+        private final Map<EndpointAddress, DiscoveredEndpoint> endpoints = new LinkedHashMap<>();
+
+        private final ResponseFilter responseFilter = codec instanceof JsonCodec ? new ResponseFilter() : null;
+        private final long[] transmitTimes = new long[TRANSMIT_HISTORY];
+        private final long firstRequestId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2);
+        private long nextRequestId = firstRequestId;
+
+        private long roundStart;
+        private int retransmissionsLeft;
+        private long nextTransmit;
+        private long lastTransmit;
+        private long lastResponse;
+        private long slowestResponse;
+        private boolean responded;
+
+        private DiscoveryThread(String name, boolean continuous) {
+            this.name = name;
+            this.continuous = continuous;
+        }
 
         @Override
         public void run() {
-            try{
-                udp = new DatagramSocket();
-                udp.setBroadcast(true);
-                udp.setSoTimeout(timeout);
+            ByteBuffer buffer = RECEIVE_BUFFERS.acquire(MAX_DATAGRAM_SIZE);
+            try (Selector selector = Selector.open()){
+                DiscoveryClient.this.selector = selector;
+                openProbes(selector);
+
+                startRound();
+                long nextAnnounce = roundStart + nextAnnounceDelay();
+                long endTime = roundStart + TimeUnit.MILLISECONDS.toNanos(discoveryTime);
+                while (discovering){
+                    long now = System.nanoTime();
+                    if(!continuous && (now - endTime >= 0 || isSettled(now)))
+                        break;
+
+                    if(continuous && now - nextAnnounce >= 0){
+                        expire();
+                        startRound();
+                        nextAnnounce = roundStart + nextAnnounceDelay();
+                    }else if(retransmissionsLeft > 0 && now - nextTransmit >= 0){
+                        retransmit();
+                    }
 
-                byte[] sendData = gson.toJson(new UdpModel(this.getName())).getBytes();
+                    long deadline = continuous ? nextAnnounce : earliest(endTime, getSettleTime());
+                    if(retransmissionsLeft > 0)
+                        deadline = earliest(deadline, nextTransmit);
+
+                    long wait = TimeUnit.NANOSECONDS.toMillis(deadline - now);
+                    if(timeout > 0)
+                        wait = Math.min(wait, timeout);
+                    if(selector.select(Math.max(wait, 1)) == 0)
+                        continue;
+
+                    for (SelectionKey key : selector.selectedKeys()){
+                        DatagramChannel channel = (DatagramChannel) key.channel();
+                        try {
+                            while (channel.receive(buffer.clear().limit(MAX_DATAGRAM_SIZE)) != null)
+                                onDatagram(buffer.flip());
+                        } catch (IOException e) {
+                            callErrorOccurred(e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            }catch (IOException e){
+                callErrorOccurred(e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+            }finally {
+                closeProbes();
+                RECEIVE_BUFFERS.release(buffer);
+                selector = null;
+                discovering = false;
+            }
 
-                DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, InetAddress.getByName(BROADCAST_IP), port);
-                udp.send(sendPacket);
+            if(discoveryHandler != null)
+                discoveryHandler.onFinish(continuous ? endpointRegistry.getEndpoints() : new ArrayList<>(endpoints.values()));
+        }
 
-                List<DiscoveredEndpoint> endpoints = new ArrayList<>();
+        /**
+         * Sends the first request of a round and schedules its retransmissions.
+         * @throws IOException if the request cannot be encoded.
+         */
+        private void startRound() throws IOException {
+            transmit();
+            roundStart = lastTransmit;
+            lastResponse = roundStart;
+            retransmissionsLeft = retransmissions;
+            nextTransmit = roundStart + TimeUnit.MILLISECONDS.toNanos(retransmitInterval);
+        }
 
-                long endTime = System.currentTimeMillis() + discoveryTime;
-                while (System.currentTimeMillis() < endTime && discovering){
-                    try {
-                        byte[] data = new byte[512];
-                        DatagramPacket receivePacket = new DatagramPacket(data, data.length);
-                        udp.receive(receivePacket);
+        /**
+         * Sends the request again and doubles the time until the next retransmission.
+         * @throws IOException if the request cannot be encoded.
+         */
+        private void retransmit() throws IOException {
+            transmit();
+            retransmissionsLeft--;
+            int sent = retransmissions - retransmissionsLeft;
+            nextTransmit = lastTransmit + (TimeUnit.MILLISECONDS.toNanos(retransmitInterval) << Math.min(sent, 30));
+        }
 
-                        String json = new String(receivePacket.getData(), receivePacket.getOffset(), receivePacket.getLength());
-                        UdpModel receivedModel = gson.fromJson(json, UdpModel.class);
-                        if(!receivedModel.isValidResponse())
-                            return;
+        /**
+         * @return true if the discovery can finish early: every retransmission was sent, at least one server
+         * responded, and no new server responded for several times the slowest response time.
+         */
+        private boolean isSettled(long now){
+            return adaptiveFinish && responded && retransmissionsLeft == 0 && now - getSettleTime() >= 0;
+        }
 
-                        if(endpoints.stream().anyMatch(e -> e.getAddress().getIp().equals(receivedModel.getAddress().getIp())))
-                            continue;
+        /**
+         * @return the {@link System#nanoTime()} the discovery settles at if no new server responds, far in the future
+         * if it cannot settle yet.
+         */
+        private long getSettleTime(){
+            if(!adaptiveFinish || !responded || retransmissionsLeft > 0)
+                return System.nanoTime() + Long.MAX_VALUE / 2;
+
+            long quietPeriod = Math.max(MIN_QUIET_PERIOD, QUIET_PERIOD_FACTOR * slowestResponse);
+            long lastActivity = lastResponse - lastTransmit > 0 ? lastResponse : lastTransmit;
+            return lastActivity + quietPeriod;
+        }
+
+        /**
+         * @return the earlier of two {@link System#nanoTime()}s.
+         */
+        private long earliest(long a, long b){
+            return a - b < 0 ? a : b;
+        }
+
+        /**
+         * Matches a response to the request it answers.
+         * @param requestId the request id of the response, {@code null} if the server does not copy request ids.
+         * @return the {@link System#nanoTime()} the request was sent at, the start of the round if the response has no
+         * request id, or -1 if the response does not answer one of the recent requests of this discovery.
+         */
+        private long getTransmitTime(Long requestId){
+            if(requestId == null)
+                return roundStart;
+
+            long id = requestId;
+            if(id < firstRequestId || id >= nextRequestId || nextRequestId - id > TRANSMIT_HISTORY)
+                return -1;
+
+            return transmitTimes[(int) Math.floorMod(id, (long) TRANSMIT_HISTORY)];
+        }
+
+        /**
+         * Handles a response. JSON responses are inspected in place first, so datagrams that are no response or do not
+         * answer a recent request are dropped, and responses that were seen before are not decoded again. Every other
+         * response is decoded and its endpoint is put into the registry.
+         * @param datagram the received datagram.
+         */
+        private void onDatagram(ByteBuffer datagram){
+            metrics.recordReceived(datagram.remaining());
+
+            if(responseFilter != null){
+                if(!responseFilter.test(datagram))
+                    return;
+
+                long transmitTime = responseFilter.hasRequestId() ? getTransmitTime(responseFilter.getRequestId()) : roundStart;
+                if(transmitTime == -1)
+                    return;
+
+                DiscoveredEndpoint known = responseFilter.getKnownEndpoint();
+                if(known != null){
+                    long now = onResponse(transmitTime);
+                    if(continuous){
+                        known.setLastSeen(now);
+                        if(endpointRegistry.get(known.getAddress()) != known)
+                            responseFilter.remember(onEndpoint(known, now));
+                    }
+                    return;
+                }
+            }
 
-                        DiscoveredEndpoint endpoint = new DiscoveredEndpoint(receivedModel.getName(), receivedModel.getAddress());
-                        endpoints.add(endpoint);
+            UdpModel receivedModel;
+            try {
+                receivedModel = codec.decode(datagram, UdpModel.class);
+            } catch (IOException | RuntimeException e) {
+                callErrorOccurred(e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+                return;
+            }
 
-                        if(discoveryHandler != null)
-                            discoveryHandler.onDiscovered(endpoint);
-                    }catch (Exception e){
-                        if((e instanceof SocketTimeoutException))
+            if(receivedModel == null || !receivedModel.isValidResponse())
+                return;
+
+            long transmitTime = getTransmitTime(receivedModel.getRequestId());
+            if(transmitTime == -1)
+                return;
+
+            long now = onResponse(transmitTime);
+            DiscoveredEndpoint endpoint = endpoints.get(receivedModel.getAddress());
+            if(!continuous && endpoint != null)
+                return;
+
+            if(endpoint == null || !Objects.equals(endpoint.getName(), receivedModel.getName()))
+                endpoint = new DiscoveredEndpoint(receivedModel.getName(), receivedModel.getAddress());
+
+            endpoint = onEndpoint(endpoint, now);
+            if(responseFilter != null)
+                responseFilter.remember(endpoint);
+        }
+
+        /**
+         * Records the response time of a response that answers a recent request.
+         * @param transmitTime the {@link System#nanoTime()} the request was sent at.
+         * @return the {@link System#nanoTime()} the response was handled at.
+         */
+        private long onResponse(long transmitTime){
+            long now = System.nanoTime();
+            long responseTime = now - transmitTime;
+            metrics.recordResponseTime(responseTime);
+            slowestResponse = Math.max(slowestResponse, responseTime);
+            responded = true;
+            return now;
+        }
+
+        /**
+         * Puts an endpoint into the registry and reports it, unless the registry already knew it by that name.
+         * @param endpoint the endpoint that responded.
+         * @param now the {@link System#nanoTime()} of the response.
+         * @return the endpoint kept by the registry.
+         */
+        private DiscoveredEndpoint onEndpoint(DiscoveredEndpoint endpoint, long now){
+            endpoint.setLastSeen(now);
+            DiscoveredEndpoint previous = endpointRegistry.put(endpoint);
+            if(continuous && previous != null && Objects.equals(previous.getName(), endpoint.getName()))
+                return previous;
+
+            lastResponse = now;
+            endpoints.put(endpoint.getAddress(), endpoint);
+            if(discoveryHandler != null)
+                discoveryHandler.onDiscovered(endpoint);
+
+            return endpoint;
+        }
+
+        /**
+         * Opens a channel for every destination of the {@link DiscoveryMode} and registers it with the selector.
+         * @param selector the selector the responses are received with.
+         * @throws IOException if no channel can be opened.
+         */
+        private void openProbes(Selector selector) throws IOException {
+            if(discoveryMode == DiscoveryMode.MULTICAST){
+                InetAddress group = getMulticastGroup();
+                ProtocolFamily family = group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+                for (NetworkInterface networkInterface : selectInterfaces()){
+                    if(!networkInterface.supportsMulticast() || !hasAddress(networkInterface, group.getClass()))
+                        continue;
+
+                    DatagramChannel channel = DatagramChannel.open(family);
+                    addProbe(selector, channel, new InetSocketAddress(group, port));
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                    channel.bind(null);
+                }
+
+                if(probes.isEmpty())
+                    addProbe(selector, DatagramChannel.open(family).bind(null), new InetSocketAddress(group, port));
+                return;
+            }
+
+            if(discoveryMode == DiscoveryMode.SUBNET_BROADCAST){
+                for (NetworkInterface networkInterface : selectInterfaces()){
+                    for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()){
+                        InetAddress broadcast = interfaceAddress.getBroadcast();
+                        if(broadcast == null)
                             continue;
 
-                        if(errorOccurredHandler != null)
-                            errorOccurredHandler.onErrorOccurred(DiscoveryClient.this, e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+                        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                        addProbe(selector, channel, new InetSocketAddress(broadcast, port));
+                        channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                        channel.bind(new InetSocketAddress(interfaceAddress.getAddress(), 0));
                     }
                 }
 
-                udp.close();
-                discovering = false;
+                if(!probes.isEmpty())
+                    return;
+            }
+
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            addProbe(selector, channel, new InetSocketAddress(InetAddress.getByName(BROADCAST_IP), port));
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            channel.bind(null);
+        }
+
+        /**
+         * Adds a channel to the probes before it is configured, so it is closed even if its configuration fails.
+         */
+        private void addProbe(Selector selector, DatagramChannel channel, InetSocketAddress destination) throws IOException {
+            probes.add(new Probe(channel, destination));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+
+        /**
+         * @return the configured network interfaces, or every interface that is up and not a loopback interface.
+         */
+        private List<NetworkInterface> selectInterfaces() throws IOException {
+            if(networkInterfaces != null)
+                return networkInterfaces;
+
+            List<NetworkInterface> selected = new ArrayList<>();
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()){
+                NetworkInterface networkInterface = interfaces.nextElement();
+                if(networkInterface.isUp() && !networkInterface.isLoopback())
+                    selected.add(networkInterface);
+            }
+
+            return selected;
+        }
 
+        private boolean hasAddress(NetworkInterface networkInterface, Class<? extends InetAddress> type){
+            for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()){
+                if(type.isInstance(interfaceAddress.getAddress()))
+                    return true;
+            }
+
+            return false;
+        }
+
+        private void closeProbes(){
+            for (Probe probe : probes){
+                try {
+                    probe.channel.close();
+                } catch (IOException ignored) {}
+            }
+            probes.clear();
+        }
+
+        /**
+         * Sends the discovery request with a new request id through every probe. A probe that fails is reported and
+         * skipped.
+         * @throws IOException if the request cannot be encoded.
+         */
+        private void transmit() throws IOException {
+            long requestId = nextRequestId++;
+            UdpModel model = new UdpModel(name);
+            model.setRequestId(requestId);
+
+            BufferOutputStream request = new BufferOutputStream(BufferPool.getDefault(), 0);
+            try {
+                codec.encode(model, request);
+                ByteBuffer sendData = request.ensureRemaining(0).duplicate().flip();
+
+                for (Probe probe : probes){
+                    try {
+                        int sent = probe.channel.send(sendData.duplicate(), probe.destination);
+                        metrics.recordSent(sent);
+                    } catch (IOException e) {
+                        callErrorOccurred(e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+                    }
+                }
+            } finally {
+                request.release();
+            }
+
+            lastTransmit = System.nanoTime();
+            transmitTimes[(int) Math.floorMod(requestId, (long) TRANSMIT_HISTORY)] = lastTransmit;
+        }
+
+        /**
+         * @return the time in nanoseconds until the next announcement, the announce interval with a random jitter.
+         */
+        private long nextAnnounceDelay(){
+            double jitter = 1 + ANNOUNCE_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            return (long) (TimeUnit.MILLISECONDS.toNanos(announceInterval) * jitter);
+        }
+
+        /**
+         * Removes the endpoints that did not respond within the {@link #getEndpointTtl()} from the registry.
+         */
+        private void expire(){
+            for (DiscoveredEndpoint lost : endpointRegistry.expire(endpointTtl)){
                 if(discoveryHandler != null)
-                    discoveryHandler.onFinish(endpoints);
-            }catch (IOException e){
-                if(errorOccurredHandler != null)
-                    errorOccurredHandler.onErrorOccurred(DiscoveryClient.this, e, ErrorOccurredHandler.Type.UDP_DISCOVERING);
+                    discoveryHandler.onLost(lost);
             }
         }
     }
+
+    /**
+     * Class that holds a channel the discovery request is sent through and the address it is sent to.
+     */
+    private static final class Probe{
+        private final DatagramChannel channel;
+        private final InetSocketAddress destination;
+
+        private Probe(DatagramChannel channel, InetSocketAddress destination) {
+            this.channel = channel;
+            this.destination = destination;
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package de.offrange.client.udp;
+
+/**
+ * Enum representing where a {@link DiscoveryClient} sends its discovery requests to.
+ * @see DiscoveryClient#setDiscoveryMode(DiscoveryMode)
+ */
+public enum DiscoveryMode {
+    /**
+     * The request is sent once to {@link DiscoveryClient#BROADCAST_IP}. The operating system sends it out through a
+     * single interface, so servers on the other networks of a multi-homed host are not found.
+     */
+    BROADCAST,
+
+    /**
+     * The request is sent to the broadcast address of every IPv4 network of every network interface that is up,
+     * from a channel bound to the address of the interface. Falls back to {@link #BROADCAST} if no interface has a
+     * broadcast address.
+     */
+    SUBNET_BROADCAST,
+
+    /**
+     * The request is sent to the {@link DiscoveryClient#getMulticastGroup()} through every network interface that
+     * is up and supports multicast. Works with IPv4 and IPv6 groups, and the servers must have joined the group.
+     */
+    MULTICAST
+}
@@ -0,0 +1,222 @@
+package de.offrange.client.udp;
+
+import de.offrange.client.udp.endpoint.EndpointAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that holds the endpoints found by one or more {@link DiscoveryClient}s, keyed by their
+ * {@link EndpointAddress}, i.e. ip address and port, so several services on one host are kept apart. Endpoints can be
+ * looked up by address or name in constant time, and {@link Listener}s are notified whenever an endpoint is added,
+ * changes its name or is removed. Endpoints that did not respond for a while can be removed with
+ * {@link #expire(long)}.
+ * <br>
+ * This class is thread-safe. Listeners are called by the thread that changed the registry, after the change.
+ */
+public class EndpointRegistry {
+
+    private final Map<EndpointAddress, DiscoveredEndpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, Set<DiscoveredEndpoint>> endpointsByName = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds an endpoint or replaces the endpoint with the same address. If the endpoint with the same address has the
+     * same name, it is kept and only its {@link DiscoveredEndpoint#getLastSeen()} is refreshed.
+     * @param endpoint the endpoint.
+     * @return the endpoint that was replaced or refreshed, {@code null} if the endpoint was added.
+     */
+    public DiscoveredEndpoint put(DiscoveredEndpoint endpoint){
+        Objects.requireNonNull(endpoint.getAddress());
+        DiscoveredEndpoint[] previous = new DiscoveredEndpoint[1];
+        endpoints.compute(endpoint.getAddress(), (address, current) -> {
+            previous[0] = current;
+            if(current != null && Objects.equals(current.getName(), endpoint.getName())){
+                current.setLastSeen(Math.max(current.getLastSeen(), endpoint.getLastSeen()));
+                return current;
+            }
+
+            if(current != null)
+                unindex(current);
+
+            index(endpoint);
+            return endpoint;
+        });
+
+        DiscoveredEndpoint replaced = previous[0];
+        if(replaced == null){
+            for (Listener listener : listeners)
+                listener.onAdded(endpoint);
+        }else if(!Objects.equals(replaced.getName(), endpoint.getName())){
+            for (Listener listener : listeners)
+                listener.onChanged(replaced, endpoint);
+        }
+
+        return replaced;
+    }
+
+    /**
+     * Removes the endpoint with an address.
+     * @param address the address of the endpoint.
+     * @return the removed endpoint, {@code null} if there was none.
+     */
+    public DiscoveredEndpoint remove(EndpointAddress address){
+        DiscoveredEndpoint[] removed = new DiscoveredEndpoint[1];
+        endpoints.computeIfPresent(address, (key, current) -> {
+            removed[0] = current;
+            unindex(current);
+            return null;
+        });
+
+        if(removed[0] != null){
+            for (Listener listener : listeners)
+                listener.onRemoved(removed[0]);
+        }
+
+        return removed[0];
+    }
+
+    /**
+     * Removes every endpoint that did not respond within a time, notifying the listeners about each one.
+     * @param maxAge the time in milliseconds since the last response after which an endpoint is removed.
+     * @return the removed endpoints.
+     */
+    public List<DiscoveredEndpoint> expire(long maxAge){
+        long now = System.nanoTime();
+        long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAge);
+        List<DiscoveredEndpoint> expired = new ArrayList<>();
+        for (DiscoveredEndpoint endpoint : endpoints.values()){
+            if(now - endpoint.getLastSeen() <= maxAgeNanos)
+                continue;
+
+            boolean[] removed = new boolean[1];
+            endpoints.computeIfPresent(endpoint.getAddress(), (address, current) -> {
+                if(current != endpoint || now - current.getLastSeen() <= maxAgeNanos)
+                    return current;
+
+                removed[0] = true;
+                unindex(current);
+                return null;
+            });
+
+            if(!removed[0])
+                continue;
+
+            expired.add(endpoint);
+            for (Listener listener : listeners)
+                listener.onRemoved(endpoint);
+        }
+
+        return expired;
+    }
+
+    /**
+     * @param address the address of the endpoint.
+     * @return the endpoint with the address, {@code null} if there is none.
+     */
+    public DiscoveredEndpoint get(EndpointAddress address){
+        return endpoints.get(address);
+    }
+
+    /**
+     * @param name the name of the endpoints.
+     * @return every endpoint with the name, empty if there is none.
+     */
+    public List<DiscoveredEndpoint> getByName(String name){
+        Set<DiscoveredEndpoint> named = endpointsByName.get(name);
+        return named == null ? Collections.emptyList() : List.copyOf(named);
+    }
+
+    /**
+     * @param address the address of the endpoint.
+     * @return true if the registry holds an endpoint with the address, false otherwise.
+     */
+    public boolean contains(EndpointAddress address){
+        return endpoints.containsKey(address);
+    }
+
+    /**
+     * @return every endpoint of the registry.
+     */
+    public List<DiscoveredEndpoint> getEndpoints(){
+        return new ArrayList<>(endpoints.values());
+    }
+
+    /**
+     * @return the number of endpoints.
+     */
+    public int size(){
+        return endpoints.size();
+    }
+
+    /**
+     * Removes every endpoint, notifying the listeners about each one.
+     */
+    public void clear(){
+        for (EndpointAddress address : endpoints.keySet())
+            remove(address);
+    }
+
+    /**
+     * Adds a listener that is notified about every change from now on.
+     * @param listener the listener.
+     */
+    public void addListener(Listener listener){
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener the listener.
+     */
+    public void removeListener(Listener listener){
+        listeners.remove(listener);
+    }
+
+    private void index(DiscoveredEndpoint endpoint){
+        if(endpoint.getName() != null)
+            endpointsByName.computeIfAbsent(endpoint.getName(), name -> ConcurrentHashMap.newKeySet()).add(endpoint);
+    }
+
+    private void unindex(DiscoveredEndpoint endpoint){
+        if(endpoint.getName() == null)
+            return;
+
+        endpointsByName.computeIfPresent(endpoint.getName(), (name, named) -> {
+            named.remove(endpoint);
+            return named.isEmpty() ? null : named;
+        });
+    }
+
+    /**
+     * Interface used to observe the changes of an {@link EndpointRegistry}.
+     */
+    public interface Listener{
+
+        /**
+         * Called if an endpoint with a new address was added.
+         * @param endpoint the added endpoint.
+         */
+        void onAdded(DiscoveredEndpoint endpoint);
+
+        /**
+         * Called if the endpoint of an address was replaced by one with a different name.
+         * @param previous the replaced endpoint.
+         * @param endpoint the new endpoint.
+         */
+        default void onChanged(DiscoveredEndpoint previous, DiscoveredEndpoint endpoint){}
+
+        /**
+         * Called if an endpoint was removed.
+         * @param endpoint the removed endpoint.
+         */
+        default void onRemoved(DiscoveredEndpoint endpoint){}
+    }
+}
@@ -0,0 +1,187 @@
+package de.offrange.client.udp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class that inspects JSON encoded discovery responses in place, before they are decoded. It rejects datagrams that
+ * cannot be a response, extracts the request id, and recognizes responses it has seen before, so a server that
+ * answers every retransmission and every announce is decoded only once.
+ * <br>
+ * Responses are recognized by a 64-bit hash of their bytes, without the value of the request id. The filter neither
+ * allocates nor changes the position of the inspected buffer. This class is not thread-safe.
+ */
+class ResponseFilter {
+
+    private static final byte[] RESPONSE_TYPE = "\"RESPONSE\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REQUEST_ID_KEY = "\"request_id\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int CAPACITY = 256;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] hashes = new long[CAPACITY];
+    private final DiscoveredEndpoint[] endpoints = new DiscoveredEndpoint[CAPACITY];
+    private int size;
+
+    private boolean hasRequestId;
+    private long requestId;
+    private long hash;
+
+    /**
+     * Inspects a datagram. The results are available through the getters until the next call.
+     * @param datagram the datagram, from its position to its limit.
+     * @return false if the datagram is not a JSON object that contains a response type, true if it has to be decoded
+     * or was recognized.
+     */
+    boolean test(ByteBuffer datagram){
+        hasRequestId = false;
+        hash = 0;
+
+        int start = datagram.position();
+        int end = datagram.limit();
+        while (start < end && isWhitespace(datagram.get(start)))
+            start++;
+
+        if(start == end || datagram.get(start) != '{' || indexOf(datagram, start, end, RESPONSE_TYPE) == -1)
+            return false;
+
+        int valueStart = end;
+        int valueEnd = end;
+        int key = indexOf(datagram, start, end, REQUEST_ID_KEY);
+        if(key != -1){
+            int i = skipWhitespace(datagram, key + REQUEST_ID_KEY.length, end);
+            if(i < end && datagram.get(i) == ':'){
+                valueStart = skipWhitespace(datagram, i + 1, end);
+                valueEnd = valueStart;
+                long value = 0;
+                while (valueEnd < end && isDigit(datagram.get(valueEnd))){
+                    int digit = datagram.get(valueEnd++) - '0';
+                    if(value > (Long.MAX_VALUE - digit) / 10)
+                        return true;
+
+                    value = value * 10 + digit;
+                }
+
+                // Not a plain number, e.g. null or a string, leave it to the codec and do not recognize it.
+                if(valueEnd == valueStart)
+                    return true;
+
+                hasRequestId = true;
+                requestId = value;
+            }
+        }
+
+        long h = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++){
+            if(i == valueStart){
+                i = valueEnd - 1;
+                continue;
+            }
+
+            h = (h ^ (datagram.get(i) & 0xFF)) * FNV_PRIME;
+        }
+
+        hash = h == 0 ? 1 : h;
+        return true;
+    }
+
+    /**
+     * @return true if the last inspected datagram carries a request id.
+     */
+    boolean hasRequestId(){
+        return hasRequestId;
+    }
+
+    /**
+     * @return the request id of the last inspected datagram, only valid if {@link #hasRequestId()} returns true.
+     */
+    long getRequestId(){
+        return requestId;
+    }
+
+    /**
+     * @return the endpoint that was {@link #remember(DiscoveredEndpoint) remembered} for a datagram with the same
+     * content as the last inspected datagram, {@code null} if there is none.
+     */
+    DiscoveredEndpoint getKnownEndpoint(){
+        if(hash == 0)
+            return null;
+
+        for (int i = slotOf(hash); hashes[i] != 0; i = (i + 1) & (CAPACITY - 1)){
+            if(hashes[i] == hash)
+                return endpoints[i];
+        }
+
+        return null;
+    }
+
+    /**
+     * Remembers the endpoint the last inspected datagram was decoded into. Once the filter is half full it forgets
+     * every endpoint, so responses of servers that changed are decoded again eventually.
+     * @param endpoint the endpoint.
+     */
+    void remember(DiscoveredEndpoint endpoint){
+        if(hash == 0)
+            return;
+
+        if(size >= CAPACITY / 2)
+            clear();
+
+        int i = slotOf(hash);
+        while (hashes[i] != 0 && hashes[i] != hash)
+            i = (i + 1) & (CAPACITY - 1);
+
+        if(hashes[i] == 0)
+            size++;
+
+        hashes[i] = hash;
+        endpoints[i] = endpoint;
+    }
+
+    /**
+     * Forgets every remembered endpoint.
+     */
+    void clear(){
+        Arrays.fill(hashes, 0);
+        Arrays.fill(endpoints, null);
+        size = 0;
+    }
+
+    private static int slotOf(long hash){
+        return (int) (hash ^ (hash >>> 32)) & (CAPACITY - 1);
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern between start and end, -1 if there is none.
+     */
+    private static int indexOf(ByteBuffer buffer, int start, int end, byte[] pattern){
+        outer:
+        for (int i = start; i <= end - pattern.length; i++){
+            for (int j = 0; j < pattern.length; j++){
+                if(buffer.get(i + j) != pattern[j])
+                    continue outer;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int start, int end){
+        while (start < end && isWhitespace(buffer.get(start)))
+            start++;
+
+        return start;
+    }
+
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+}
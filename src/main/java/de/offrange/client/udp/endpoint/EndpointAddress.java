@@ -1,5 +1,7 @@
 package de.offrange.client.udp.endpoint;
 
+import java.util.Objects;
+
 /**
  * Class that contains information about an endpoint.
  * This class is serialized and deserialized by {@link com.google.gson.Gson}
@@ -44,4 +46,26 @@ public class EndpointAddress {
     public boolean isValid(){
         return ip != null & port != 0;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+
+        if(!(o instanceof EndpointAddress))
+            return false;
+
+        EndpointAddress that = (EndpointAddress) o;
+        return port == that.port && Objects.equals(ip, that.ip);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ip, port);
+    }
+
+    @Override
+    public String toString() {
+        return ip + ":" + port;
+    }
 }